@@ -1,20 +1,65 @@
+import database.BackupTool;
+import database.RestoreTool;
+import config.AppConfig;
+import server.AppServer;
 import ui.LoginFrame;
+import ui.Session;
 import javax.swing.SwingUtilities;
-import javax.swing.UIManager;
+import java.io.File;
 
 public class Main {
     public static void main(String[] args) {
-        // Set Look and Feel to system default
+        // Command-line tools run without the GUI
+        if (args.length > 0) {
+            System.exit(runCommand(args));
+        }
+
+        // Set Look and Feel to system default, once for every session this JVM runs
+        Session.installLookAndFeel();
+
+        // Launch the Login Frame
+        SwingUtilities.invokeLater(LoginFrame::showLogin);
+    }
+
+    private static int runCommand(String[] args) {
         try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            switch (args[0]) {
+                case "backup" -> {
+                    File dir = new File(args.length > 1 ? args[1] : "backups");
+                    BackupTool.Report report = BackupTool.backup(dir, System.out);
+                    long rows = report.tables.stream().mapToLong(t -> t.rows).sum();
+                    System.out.printf("Backup of %d rows written to %s in %.1f s%n",
+                            rows, report.directory, report.elapsedMillis / 1000.0);
+                    return 0;
+                }
+                case "restore" -> {
+                    if (args.length < 2) {
+                        System.err.println("Usage: java Main restore <backup directory> [--replace]");
+                        return 2;
+                    }
+                    boolean replace = args.length > 2 && args[2].equals("--replace");
+                    RestoreTool.Report report = RestoreTool.restore(new File(args[1]), replace, System.out);
+                    long rows = report.rows.values().stream().mapToLong(Long::longValue).sum();
+                    System.out.printf("Restored %d rows into %d tables in %.1f s%n",
+                            rows, report.rows.size(), report.elapsedMillis / 1000.0);
+                    System.out.println("Rebuild the search index from the admin dashboard once the app is running.");
+                    return 0;
+                }
+                case "server" -> {
+                    int port = args.length > 1 ? Integer.parseInt(args[1]) : AppConfig.getInt("lms.server.port", 8080);
+                    AppServer server = AppServer.start(port);
+                    Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "server-shutdown"));
+                    server.awaitStop();
+                    return 0;
+                }
+                default -> {
+                    System.err.println("Usage: java Main [backup [directory] | restore <directory> [--replace] | server [port]]");
+                    return 2;
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
+            return 1;
         }
-        
-        // Launch the Login Frame
-        SwingUtilities.invokeLater(() -> {
-            LoginFrame loginFrame = new LoginFrame();
-            loginFrame.setVisible(true);
-        });
     }
-}
\ No newline at end of file
+}
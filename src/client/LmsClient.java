@@ -0,0 +1,356 @@
+package client;
+
+import server.Json;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Talks to an {@link server.AppServer} instead of the database. Set lms.server.url (for example
+ * http://lms.example.edu:8080) and the login screen signs in through the server; the client holds
+ * the session token from then on.
+ *
+ * Results come back as the server's JSON: lists of rows keyed by column name. The last responses
+ * to list reads are kept with their ETags; refreshing an unchanged list costs a 304 with no body,
+ * and the kept copy is returned.
+ */
+public class LmsClient {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int CACHED_RESPONSES = 64;
+
+    private static LmsClient current;
+
+    // A refused call; status is the HTTP status the server answered with
+    public static class ApiError extends IOException {
+        public final int status;
+
+        public ApiError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public static class Login {
+        public final int userId;
+        public final String fullName;
+        public final String role;
+
+        Login(int userId, String fullName, String role) {
+            this.userId = userId;
+            this.fullName = fullName;
+            this.role = role;
+        }
+    }
+
+    private final String baseUrl;
+    private final HttpClient http;
+    private volatile String token;
+    private volatile String[] deferredLogin;
+    private final Map<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > CACHED_RESPONSES;
+        }
+    };
+    private long notModified;
+
+    private static class Cached {
+        final String etag;
+        final String body;
+
+        Cached(String etag, String body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    public LmsClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    }
+
+    // The signed-in client of this desktop, or null when it talks to the database directly
+    public static synchronized LmsClient current() {
+        return current;
+    }
+
+    public static synchronized void setCurrent(LmsClient client) {
+        current = client;
+    }
+
+    // Whether the call never got an answer from the server, as opposed to being refused by it
+    public static boolean isUnreachable(IOException e) {
+        return !(e instanceof ApiError);
+    }
+
+    public Login login(String username, String password, String role) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("username", username);
+        body.put("password", password);
+        body.put("role", role);
+        Map<String, Object> result = asMap(execute(jsonRequest("POST", "/api/login", body)));
+        token = (String) result.get("token");
+        deferredLogin = null;
+        clearCache();
+        return new Login(((Number) result.get("userId")).intValue(), (String) result.get("fullName"),
+                (String) result.get("role"));
+    }
+
+    /**
+     * For a desktop opened offline: signs in with these credentials before the first call that
+     * reaches the server.
+     */
+    public void signInLater(String username, String password, String role) {
+        deferredLogin = new String[]{username, password, role};
+    }
+
+    private void signInIfDeferred() throws IOException {
+        String[] credentials = deferredLogin;
+        if (token == null && credentials != null) login(credentials[0], credentials[1], credentials[2]);
+    }
+
+    public void logout() throws IOException {
+        deferredLogin = null;
+        if (token == null) return;
+        try {
+            send("POST", "/api/logout", null);
+        } finally {
+            token = null;
+            clearCache();
+        }
+    }
+
+    // Reads answered from the kept copy since login
+    public synchronized long notModifiedCount() {
+        return notModified;
+    }
+
+    private synchronized void clearCache() {
+        cache.clear();
+        notModified = 0;
+    }
+
+    public List<Map<String, Object>> courses() throws IOException {
+        return asList(send("GET", "/api/courses", null));
+    }
+
+    public List<Map<String, Object>> availableCourses() throws IOException {
+        return asList(send("GET", "/api/courses/available", null));
+    }
+
+    public int enroll(int courseId) throws IOException {
+        return intField(send("POST", "/api/enrollments", Map.of("courseId", courseId)), "enrollmentId");
+    }
+
+    public void drop(int courseId) throws IOException {
+        send("DELETE", "/api/enrollments/" + courseId, null);
+    }
+
+    // 0 if a seat was free after all and the student is now enrolled
+    public int joinWaitlist(int courseId) throws IOException {
+        return intField(send("POST", "/api/waitlist", Map.of("courseId", courseId)), "position");
+    }
+
+    public List<String> readNotifications() throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (Object m : (List<?>) send("POST", "/api/notifications/read", null)) messages.add((String) m);
+        return messages;
+    }
+
+    public List<Map<String, Object>> assignments(Integer courseId) throws IOException {
+        return asList(send("GET", "/api/assignments" + query("courseId", courseId), null));
+    }
+
+    public int createAssignment(int courseId, String title, String description, String dueDate, int maxMarks)
+            throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("courseId", courseId);
+        body.put("title", title);
+        body.put("description", description);
+        body.put("dueDate", dueDate);
+        body.put("maxMarks", maxMarks);
+        return intField(send("POST", "/api/assignments", body), "assignmentId");
+    }
+
+    public Map<String, Object> submit(int assignmentId, String comments) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("comments", comments);
+        return asMap(send("POST", "/api/assignments/" + assignmentId + "/submission", body));
+    }
+
+    public Map<String, Object> submitFile(int assignmentId, File file, String comments) throws IOException {
+        signInIfDeferred();
+        String path = "/api/assignments/" + assignmentId + "/submission/file?name=" + encode(file.getName())
+                + (comments != null ? "&comments=" + encode(comments) : "");
+        HttpRequest request = request(path)
+                .header("Content-Type", "application/octet-stream")
+                .PUT(HttpRequest.BodyPublishers.ofFile(file.toPath()))
+                .timeout(Duration.ofMinutes(10))
+                .build();
+        return asMap(execute(request));
+    }
+
+    public List<Map<String, Object>> submissions(Integer assignmentId) throws IOException {
+        return asList(send("GET", "/api/submissions" + query("assignmentId", assignmentId), null));
+    }
+
+    public void grade(int submissionId, int marks) throws IOException {
+        send("PUT", "/api/submissions/" + submissionId + "/marks", Map.of("marks", marks));
+    }
+
+    public List<Map<String, Object>> materials(Integer courseId) throws IOException {
+        return asList(send("GET", "/api/materials" + query("courseId", courseId), null));
+    }
+
+    // Written next to target and renamed at the end, like desktop downloads
+    public void downloadMaterial(int materialId, File target) throws IOException {
+        signInIfDeferred();
+        File part = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".part");
+        HttpResponse<java.nio.file.Path> response;
+        try {
+            response = http.send(request("/api/materials/" + materialId + "/content").GET()
+                            .timeout(Duration.ofMinutes(10)).build(),
+                    HttpResponse.BodyHandlers.ofFile(part.toPath()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            part.delete();
+            throw new IOException("Download interrupted", e);
+        }
+        if (response.statusCode() != 200) {
+            String message = Files.readString(part.toPath(), StandardCharsets.UTF_8);
+            part.delete();
+            throw error(response.statusCode(), message);
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public List<Map<String, Object>> messages(Integer courseId) throws IOException {
+        return asList(send("GET", "/api/messages" + query("courseId", courseId), null));
+    }
+
+    public int sendMessage(int courseId, String subject, String text) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("courseId", courseId);
+        body.put("subject", subject);
+        body.put("text", text);
+        return intField(send("POST", "/api/messages", body), "messageId");
+    }
+
+    private Object send(String method, String path, Object body) throws IOException {
+        signInIfDeferred();
+        if ("GET".equals(method)) return get(path);
+        return execute(jsonRequest(method, path, body));
+    }
+
+    private HttpRequest jsonRequest(String method, String path, Object body) {
+        HttpRequest.BodyPublisher publisher = body == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(Json.write(body), StandardCharsets.UTF_8);
+        return request(path)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .method(method, publisher)
+                .build();
+    }
+
+    // A kept copy is revalidated with If-None-Match; on 304 it is parsed again, so callers never share objects
+    private Object get(String path) throws IOException {
+        Cached cached;
+        synchronized (this) {
+            cached = cache.get(path);
+        }
+        HttpRequest.Builder builder = request(path).GET();
+        if (cached != null) builder.header("If-None-Match", cached.etag);
+        HttpResponse<String> response = sendForString(builder.build());
+
+        int status = response.statusCode();
+        if (status == 304 && cached != null) {
+            synchronized (this) {
+                notModified++;
+            }
+            return Json.parse(cached.body);
+        }
+        if (status != 200) throw error(status, response.body());
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        synchronized (this) {
+            if (etag != null) cache.put(path, new Cached(etag, response.body()));
+            else cache.remove(path);
+        }
+        return parse(response.body());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(TIMEOUT);
+        if (token != null) builder.header("Authorization", "Bearer " + token);
+        return builder;
+    }
+
+    private Object execute(HttpRequest request) throws IOException {
+        HttpResponse<String> response = sendForString(request);
+        int status = response.statusCode();
+        if (status == 204) return null;
+        if (status != 200) throw error(status, response.body());
+        return parse(response.body());
+    }
+
+    private HttpResponse<String> sendForString(HttpRequest request) throws IOException {
+        try {
+            return http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Request interrupted", e);
+        }
+    }
+
+    private static Object parse(String body) throws IOException {
+        try {
+            return Json.parse(body);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unreadable server response: " + e.getMessage(), e);
+        }
+    }
+
+    private static ApiError error(int status, String body) {
+        String message = "Server returned " + status;
+        try {
+            Object error = Json.parseObject(body).get("error");
+            if (error != null) message = error.toString();
+        } catch (IllegalArgumentException e) {
+            // Not one of our JSON errors, keep the status line
+        }
+        return new ApiError(status, message);
+    }
+
+    private static String query(String name, Integer value) {
+        return value == null ? "" : "?" + name + "=" + value;
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> asList(Object value) {
+        return (List<Map<String, Object>>) value;
+    }
+
+    private static int intField(Object value, String field) {
+        return ((Number) asMap(value).get(field)).intValue();
+    }
+}
@@ -0,0 +1,244 @@
+package client;
+
+import config.AppConfig;
+import security.PasswordHasher;
+import server.Json;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * What a student's dashboard needs to keep working without a connection, kept in files under
+ * lms.offline.dir (default ~/.lms/offline):
+ *
+ *   &lt;userId&gt;/&lt;list&gt;.json          the rows last shown in each tab, rendered at startup
+ *   &lt;userId&gt;/outbox/&lt;entry&gt;/         submissions made while offline, uploaded on reconnect
+ *   logins.properties              {@link PasswordHasher} verifiers, so a student who has signed in on this
+ *                                  computer before can open their saved data offline
+ *
+ * Files are replaced atomically, so a crash mid-write leaves the previous copy in place.
+ */
+public class OfflineStore {
+    public static final String COURSES = "courses";
+    public static final String ASSIGNMENTS = "assignments";
+    public static final String MATERIALS = "materials";
+    public static final String MESSAGES = "messages";
+
+    private static final String LOGINS = "logins.properties";
+
+    // A submission waiting for the connection to come back
+    public static class Pending {
+        public final File dir;
+        public final int assignmentId;
+        public final int courseId;
+        public final String comments;
+        public final File file;
+        public final long queuedAt;
+
+        Pending(File dir, int assignmentId, int courseId, String comments, File file, long queuedAt) {
+            this.dir = dir;
+            this.assignmentId = assignmentId;
+            this.courseId = courseId;
+            this.comments = comments;
+            this.file = file;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    public static class Login {
+        public final int userId;
+        public final String fullName;
+
+        Login(int userId, String fullName) {
+            this.userId = userId;
+            this.fullName = fullName;
+        }
+    }
+
+    private final File dir;
+    private final File outbox;
+
+    public OfflineStore(int userId) {
+        this.dir = new File(root(), String.valueOf(userId));
+        this.outbox = new File(dir, "outbox");
+    }
+
+    private static File root() {
+        return new File(AppConfig.get("lms.offline.dir", System.getProperty("user.home") + File.separator + ".lms"
+                + File.separator + "offline"));
+    }
+
+    public synchronized void save(String list, List<Object[]> rows) {
+        List<List<Object>> json = new ArrayList<>();
+        for (Object[] row : rows) json.add(java.util.Arrays.asList(row));
+        try {
+            writeAtomically(new File(dir, list + ".json"), Json.write(json).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Only the offline copy is lost; the dashboard itself is unaffected
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The saved rows, or an empty list. Dates come back as their text; whole numbers as Integer,
+     * as the live tables hold them.
+     */
+    public synchronized List<Object[]> load(String list) {
+        List<Object[]> rows = new ArrayList<>();
+        File file = new File(dir, list + ".json");
+        if (!file.exists()) return rows;
+        try {
+            Object parsed = Json.parse(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+            for (Object row : (List<?>) parsed) {
+                List<?> cells = (List<?>) row;
+                Object[] values = new Object[cells.size()];
+                for (int i = 0; i < values.length; i++) {
+                    Object v = cells.get(i);
+                    values[i] = v instanceof Long l && l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? (Object) l.intValue() : v;
+                }
+                rows.add(values);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        return rows;
+    }
+
+    // Keeps the outbox, so submissions made offline are still uploaded at the student's next login
+    public synchronized void clearSavedLists() {
+        for (String list : new String[]{COURSES, ASSIGNMENTS, MATERIALS, MESSAGES}) {
+            new File(dir, list + ".json").delete();
+        }
+    }
+
+    // When the list was last saved, or null if it never was
+    public Date savedAt(String list) {
+        File file = new File(dir, list + ".json");
+        return file.exists() ? new Date(file.lastModified()) : null;
+    }
+
+    /** Copies the file (if any) into the outbox, so later edits to the original don't change what is sent. */
+    public synchronized Pending queue(int assignmentId, int courseId, String comments, File source) throws IOException {
+        long now = System.currentTimeMillis();
+        File entry = new File(outbox, now + "-" + assignmentId);
+        Files.createDirectories(entry.toPath());
+        File copy = null;
+        if (source != null) {
+            copy = new File(entry, source.getName());
+            Files.copy(source.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Properties props = new Properties();
+        props.setProperty("assignmentId", String.valueOf(assignmentId));
+        props.setProperty("courseId", String.valueOf(courseId));
+        props.setProperty("queuedAt", String.valueOf(now));
+        if (comments != null) props.setProperty("comments", comments);
+        if (copy != null) props.setProperty("file", copy.getName());
+        // Written last: an entry without it is incomplete and ignored
+        try (OutputStream out = new FileOutputStream(new File(entry, "entry.properties"))) {
+            props.store(out, "Queued submission");
+        }
+        return new Pending(entry, assignmentId, courseId, comments, copy, now);
+    }
+
+    // Oldest first, so a resubmission made offline still ends up as the latest
+    public synchronized List<Pending> pending() {
+        List<Pending> result = new ArrayList<>();
+        File[] entries = outbox.listFiles(File::isDirectory);
+        if (entries == null) return result;
+        for (File entry : entries) {
+            File meta = new File(entry, "entry.properties");
+            if (!meta.exists()) continue;
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(meta)) {
+                props.load(in);
+                String file = props.getProperty("file");
+                result.add(new Pending(entry, Integer.parseInt(props.getProperty("assignmentId")),
+                        Integer.parseInt(props.getProperty("courseId")), props.getProperty("comments"),
+                        file == null ? null : new File(entry, file), Long.parseLong(props.getProperty("queuedAt"))));
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        result.sort(Comparator.comparingLong(p -> p.queuedAt));
+        return result;
+    }
+
+    public synchronized int pendingCount() {
+        return pending().size();
+    }
+
+    public synchronized void remove(Pending pending) {
+        File[] files = pending.dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        pending.dir.delete();
+    }
+
+    /** Remembers a successful student login on this computer. */
+    public static synchronized void rememberLogin(String username, String password, int userId, String fullName) {
+        Properties logins = loadLogins();
+        String key = "login." + username + ".";
+        logins.setProperty(key + "verifier", PasswordHasher.hash(password));
+        // Written by earlier versions, replaced by the verifier
+        logins.remove(key + "salt");
+        logins.remove(key + "hash");
+        logins.remove(key + "iterations");
+        logins.setProperty(key + "userId", String.valueOf(userId));
+        logins.setProperty(key + "fullName", fullName);
+        try {
+            java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
+            logins.store(buffer, "Offline sign-in verifiers");
+            writeAtomically(new File(root(), LOGINS), buffer.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** The remembered student, if the password matches the one they last signed in with here. */
+    public static synchronized Login verifyLogin(String username, String password) {
+        Properties logins = loadLogins();
+        String key = "login." + username + ".";
+        String verifier = logins.getProperty(key + "verifier");
+        if (verifier == null && logins.getProperty(key + "hash") != null) {
+            verifier = PasswordHasher.format(Integer.parseInt(logins.getProperty(key + "iterations", "120000")),
+                    logins.getProperty(key + "salt"), logins.getProperty(key + "hash"));
+        }
+        // Never plaintext here, so a missing verifier can't be matched as one
+        if (verifier == null || !verifier.startsWith("pbkdf2$")) return null;
+        if (!PasswordHasher.verify(password, verifier)) return null;
+        return new Login(Integer.parseInt(logins.getProperty(key + "userId")), logins.getProperty(key + "fullName"));
+    }
+
+    private static Properties loadLogins() {
+        Properties logins = new Properties();
+        File file = new File(root(), LOGINS);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                logins.load(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return logins;
+    }
+
+    private static void writeAtomically(File target, byte[] data) throws IOException {
+        Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+        File part = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".part");
+        Files.write(part.toPath(), data);
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,59 @@
+package config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+// Optional settings. A -Dlms.xxx system property wins over lms.properties in the working
+// directory, which wins over the built-in default.
+public class AppConfig {
+    private static Properties fileProps;
+
+    // Fan course messages out to per-student inbox rows when they are sent
+    public static boolean inboxFanout() {
+        return getBoolean("lms.inbox.fanout", false);
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) value = fileProperties().getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, String.valueOf(defaultValue)));
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static synchronized Properties fileProperties() {
+        if (fileProps == null) {
+            fileProps = new Properties();
+            File file = new File("lms.properties");
+            if (file.exists()) {
+                try (InputStream in = new FileInputStream(file)) {
+                    fileProps.load(in);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return fileProps;
+    }
+}
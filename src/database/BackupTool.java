@@ -0,0 +1,313 @@
+package database;
+
+import config.AppConfig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Online logical backup of lms_db: one gzipped TSV file per table plus manifest.properties with
+ * row counts and SHA-256 checksums of the uncompressed data.
+ *
+ * All tables are read from the same point in time. In parallel mode a global read lock is held just
+ * long enough to start a consistent-snapshot transaction on each worker connection, which takes
+ * milliseconds; after that the dump runs alongside normal use without locks. When the lock can't be
+ * taken (missing RELOAD privilege, or a long query in the way) the tables are dumped one after the
+ * other inside a single snapshot transaction instead.
+ *
+ * The TSV uses the LOAD DATA defaults: tab separated, backslash escapes, \N for NULL.
+ */
+public class BackupTool {
+    public static final String MANIFEST = "manifest.properties";
+    public static final int FORMAT_VERSION = 1;
+
+    // Parents before children; derived tables (change_log, search index) are rebuilt, not backed up
+    public static final String[] TABLES = {
+            "users", "courses", "enrollments", "assignments", "submissions", "submission_files",
+            "messages", "inbox", "study_materials", "blobs", "waitlist", "notifications"
+    };
+
+    private static final int LOCK_WAIT_SECONDS = 10;
+
+    public static class TableResult {
+        public final String table;
+        public final long rows;
+        public final String sha256;
+        public final long bytes;
+
+        TableResult(String table, long rows, String sha256, long bytes) {
+            this.table = table;
+            this.rows = rows;
+            this.sha256 = sha256;
+            this.bytes = bytes;
+        }
+    }
+
+    public static class Report {
+        public File directory;
+        public boolean parallel;
+        public final List<TableResult> tables = new ArrayList<>();
+        public long elapsedMillis;
+    }
+
+    /**
+     * Writes a new backup into a timestamped directory under parent. The directory only gets its
+     * final name once every file and the manifest are complete.
+     */
+    public static Report backup(File parent, PrintStream log) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        String name = "lms-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(start));
+        File target = new File(parent, name);
+        File work = new File(parent, name + ".part");
+        Files.createDirectories(work.toPath());
+
+        int threads = Math.max(1, Math.min(AppConfig.getInt("lms.backup.threads", 4), TABLES.length));
+        Report report = new Report();
+        Properties binlog = new Properties();
+        List<Connection> connections = threads > 1 ? openSnapshots(threads, binlog, log) : null;
+        try {
+            if (connections != null) {
+                report.parallel = true;
+                log.println("Dumping " + TABLES.length + " tables on " + connections.size() + " connections");
+                report.tables.addAll(dumpParallel(connections, work, log));
+            } else {
+                log.println("Dumping " + TABLES.length + " tables in one transaction");
+                try (Connection conn = DatabaseConnection.openConnection()) {
+                    startSnapshot(conn);
+                    try {
+                        for (String table : TABLES) report.tables.add(dump(conn, table, work, log));
+                    } finally {
+                        conn.commit();
+                    }
+                }
+            }
+        } finally {
+            if (connections != null) {
+                for (Connection c : connections) close(c);
+            }
+        }
+
+        writeManifest(work, report, binlog, start);
+        Files.move(work.toPath(), target.toPath());
+        report.directory = target;
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    /**
+     * Opens one connection per worker, all with a snapshot of the same instant: writes are held off
+     * with FLUSH TABLES WITH READ LOCK while the transactions start. Returns null if the lock can't
+     * be taken, in which case the caller falls back to a serial dump.
+     */
+    private static List<Connection> openSnapshots(int count, Properties binlog, PrintStream log) throws SQLException {
+        List<Connection> connections = new ArrayList<>();
+        Connection locker = DatabaseConnection.openConnection();
+        try (Statement stmt = locker.createStatement()) {
+            stmt.execute("SET SESSION lock_wait_timeout = " + LOCK_WAIT_SECONDS);
+            try {
+                stmt.execute("FLUSH TABLES WITH READ LOCK");
+            } catch (SQLException e) {
+                log.println("Global read lock not available (" + e.getMessage() + "), dumping serially");
+                return null;
+            }
+            try {
+                for (int i = 0; i < count; i++) {
+                    Connection c = DatabaseConnection.openConnection();
+                    connections.add(c);
+                    startSnapshot(c);
+                }
+                readBinlogPosition(stmt, binlog);
+            } finally {
+                stmt.execute("UNLOCK TABLES");
+            }
+            return connections;
+        } catch (SQLException e) {
+            for (Connection c : connections) close(c);
+            throw e;
+        } finally {
+            close(locker);
+        }
+    }
+
+    private static void startSnapshot(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+        }
+    }
+
+    // Lets a restore be rolled forward from the binary log; skipped when binary logging is off
+    private static void readBinlogPosition(Statement stmt, Properties binlog) {
+        try (ResultSet rs = stmt.executeQuery("SHOW MASTER STATUS")) {
+            if (rs.next()) {
+                binlog.setProperty("binlog.file", rs.getString(1));
+                binlog.setProperty("binlog.position", rs.getString(2));
+            }
+        } catch (SQLException e) {
+            // Not having the privilege only loses the binlog coordinates
+        }
+    }
+
+    // Each connection takes the next table from a shared queue until none are left
+    private static List<TableResult> dumpParallel(List<Connection> connections, File dir, PrintStream log)
+            throws SQLException, IOException {
+        ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>(List.of(TABLES));
+        ExecutorService pool = Executors.newFixedThreadPool(connections.size());
+        List<Future<List<TableResult>>> futures = new ArrayList<>();
+        for (Connection conn : connections) {
+            futures.add(pool.submit(() -> {
+                List<TableResult> results = new ArrayList<>();
+                String table;
+                while ((table = queue.poll()) != null) results.add(dump(conn, table, dir, log));
+                return results;
+            }));
+        }
+        pool.shutdown();
+
+        List<TableResult> all = new ArrayList<>();
+        try {
+            for (Future<List<TableResult>> f : futures) all.addAll(f.get());
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Backup interrupted", e);
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+        // Manifest order follows TABLES, not completion order
+        all.sort((a, b) -> Integer.compare(indexOf(a.table), indexOf(b.table)));
+        return all;
+    }
+
+    private static TableResult dump(Connection conn, String table, File dir, PrintStream log)
+            throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        File file = new File(dir, table + ".tsv.gz");
+        MessageDigest sha = sha256();
+        long rows = 0;
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Streamed from the server row by row
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table);
+                 Writer out = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(
+                         new GZIPOutputStream(new FileOutputStream(file), 64 * 1024), sha), StandardCharsets.UTF_8), 64 * 1024)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columns = meta.getColumnCount();
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) out.write('\t');
+                    out.write(meta.getColumnName(i));
+                }
+                out.write('\n');
+                while (rs.next()) {
+                    for (int i = 1; i <= columns; i++) {
+                        if (i > 1) out.write('\t');
+                        writeValue(out, rs.getString(i));
+                    }
+                    out.write('\n');
+                    rows++;
+                }
+            }
+        }
+        log.println(String.format("  %-18s %,10d rows  %6.1f s", table, rows, (System.currentTimeMillis() - start) / 1000.0));
+        return new TableResult(table, rows, hex(sha.digest()), file.length());
+    }
+
+    static void writeValue(Writer out, String value) throws IOException {
+        if (value == null) {
+            out.write("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.write("\\\\");
+                case '\t' -> out.write("\\t");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\0' -> out.write("\\0");
+                default -> out.write(c);
+            }
+        }
+    }
+
+    private static void writeManifest(File dir, Report report, Properties binlog, long start) throws IOException {
+        Properties manifest = new Properties();
+        manifest.putAll(binlog);
+        manifest.setProperty("format", String.valueOf(FORMAT_VERSION));
+        manifest.setProperty("created", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date(start)));
+        manifest.setProperty("mode", report.parallel ? "parallel-snapshot" : "serial-snapshot");
+        manifest.setProperty("tables", String.join(",", TABLES));
+        for (TableResult t : report.tables) {
+            manifest.setProperty("table." + t.table + ".file", t.table + ".tsv.gz");
+            manifest.setProperty("table." + t.table + ".rows", String.valueOf(t.rows));
+            manifest.setProperty("table." + t.table + ".sha256", t.sha256);
+        }
+        try (OutputStream out = new FileOutputStream(new File(dir, MANIFEST))) {
+            manifest.store(out, "lms_db backup");
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static int indexOf(String table) {
+        for (int i = 0; i < TABLES.length; i++) {
+            if (TABLES[i].equals(table)) return i;
+        }
+        return TABLES.length;
+    }
+
+    private static void close(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
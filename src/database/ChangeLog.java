@@ -0,0 +1,75 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+// Append-only change_log rows, written in the same transaction as the change they describe.
+// Clients poll the log by sequence number instead of re-running their queries; rows older than any
+// poller still waits on are pruned, see ChangeFeed.
+public class ChangeLog {
+    public static final String MESSAGES = "messages";
+    public static final String STUDY_MATERIALS = "study_materials";
+    public static final String ASSIGNMENTS = "assignments";
+    public static final String SUBMISSIONS = "submissions";
+    public static final String ENROLLMENTS = "enrollments";
+    // Course catalogue changes (added, deleted); row_id is the course
+    public static final String COURSES = "courses";
+    // Written once a message's inbox rows exist for the whole course
+    public static final String INBOX = "inbox";
+    // A notification for user_id (waitlist promotion)
+    public static final String NOTIFICATIONS = "notifications";
+    // An account edited or deleted; row_id and user_id are the user
+    public static final String USERS = "users";
+
+    public static final String INSERT = "insert";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    /**
+     * @param rowId    primary key of the changed row, or null for a bulk change
+     * @param courseId course the row belongs to, if any
+     * @param userId   student the row belongs to (enrollments, submissions), if any
+     */
+    public static void record(Connection conn, String table, String op,
+                              Integer rowId, Integer courseId, Integer userId) throws SQLException {
+        String sql = "INSERT INTO change_log (table_name, op, row_id, course_id, user_id) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, table);
+            ps.setString(2, op);
+            setNullable(ps, 3, rowId);
+            setNullable(ps, 4, courseId);
+            setNullable(ps, 5, userId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes up to limit of the oldest rows written more than retentionSeconds ago and returns how
+     * many went. The cut-off is found as a sequence number first, so the delete is a primary key
+     * range and never locks rows that writers are adding at the end of the table.
+     */
+    public static int prune(Connection conn, long retentionSeconds, int limit) throws SQLException {
+        long firstKept;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT seq FROM change_log WHERE changed_at >= NOW() - INTERVAL ? SECOND ORDER BY seq LIMIT 1")) {
+            ps.setLong(1, retentionSeconds);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return 0;
+                firstKept = rs.getLong(1);
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM change_log WHERE seq < ? ORDER BY seq LIMIT ?")) {
+            ps.setLong(1, firstKept);
+            ps.setInt(2, limit);
+            return ps.executeUpdate();
+        }
+    }
+
+    private static void setNullable(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) ps.setNull(index, Types.INTEGER);
+        else ps.setInt(index, value);
+    }
+}
@@ -0,0 +1,134 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed number of connections shared by all request threads of the application server. The
+ * permit count is the real limit: however many threads are running, at most size() of them hold a
+ * connection and the rest wait up to the borrow timeout for one to come back.
+ *
+ * Connections are opened on first use and kept. One that has been idle for a while is checked
+ * with isValid() before it is handed out, so a connection dropped by the server's wait_timeout is
+ * replaced instead of failing the request.
+ */
+public class ConnectionPool {
+    private static final long VALIDATE_AFTER_MILLIS = 30_000;
+    private static final int VALIDATE_TIMEOUT_SECONDS = 2;
+
+    private static class Idle {
+        final Connection conn;
+        final long since;
+
+        Idle(Connection conn, long since) {
+            this.conn = conn;
+            this.since = since;
+        }
+    }
+
+    private final int size;
+    private final long borrowTimeoutMillis;
+    private final Semaphore permits;
+    // Most recently returned first, so a quiet pool keeps reusing the same few connections
+    private final LinkedBlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(int size, long borrowTimeoutMillis) {
+        this.size = size;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(size, true);
+    }
+
+    // Runs the work on a pooled connection with auto-commit on
+    public <T> T withConnection(DatabaseConnection.SqlWork<T> work) throws SQLException {
+        Connection conn = borrow();
+        boolean broken = false;
+        try {
+            return work.run(conn);
+        } catch (SQLException e) {
+            broken = isBroken(conn);
+            throw e;
+        } finally {
+            release(conn, broken);
+        }
+    }
+
+    public <T> T inTransaction(DatabaseConnection.SqlWork<T> work) throws SQLException {
+        return withConnection(conn -> DatabaseConnection.inTransaction(conn, work));
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("No database connection free after " + borrowTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            Idle candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - candidate.since < VALIDATE_AFTER_MILLIS
+                        || candidate.conn.isValid(VALIDATE_TIMEOUT_SECONDS)) {
+                    return candidate.conn;
+                }
+                close(candidate.conn);
+            }
+            return DatabaseConnection.openConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(Connection conn, boolean broken) {
+        try {
+            if (broken || closed || conn.isClosed()) {
+                close(conn);
+            } else {
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+                idle.offerFirst(new Idle(conn, System.currentTimeMillis()));
+            }
+        } catch (SQLException e) {
+            close(conn);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static boolean isBroken(Connection conn) {
+        try {
+            return !conn.isValid(VALIDATE_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    public int size() { return size; }
+    public int inUse() { return size - permits.availablePermits(); }
+    public int idleCount() { return idle.size(); }
+    public int waiting() { return permits.getQueueLength(); }
+
+    public void close() {
+        closed = true;
+        Idle i;
+        while ((i = idle.pollFirst()) != null) close(i.conn);
+    }
+
+    private static void close(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -3,6 +3,10 @@ package database;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
 
 public class DatabaseConnection {
     private static final String URL = "jdbc:mysql://127.0.0.1:3306/lms_db";
@@ -28,6 +32,66 @@ public class DatabaseConnection {
         return connection;
     }
     
+    // A separate connection for background threads, so they never share the UI's connection state
+    public static Connection openConnection() throws SQLException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("MySQL JDBC Driver not found!", e);
+        }
+        return DriverManager.getConnection(URL, USER, PASSWORD);
+    }
+
+    // For bulk loads: the driver rewrites JDBC batches into multi-row INSERT statements
+    public static Connection openBulkConnection() throws SQLException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("MySQL JDBC Driver not found!", e);
+        }
+        Properties props = new Properties();
+        props.setProperty("user", USER);
+        props.setProperty("password", PASSWORD);
+        props.setProperty("rewriteBatchedStatements", "true");
+        props.setProperty("useServerPrepStmts", "false");
+        return DriverManager.getConnection(URL, props);
+    }
+
+    // The database could not be reached or the connection dropped (SQLState class 08), as opposed
+    // to a statement being rejected
+    public static boolean isConnectionFailure(SQLException e) {
+        return e instanceof SQLRecoverableException
+                || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLTransientConnectionException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+
+    public interface SqlWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    // Runs the work on the shared connection as one transaction, rolling back on any failure
+    public static <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        Connection conn = getConnection();
+        if (conn == null) throw new SQLException("No database connection");
+        return inTransaction(conn, work);
+    }
+
+    public static <T> T inTransaction(Connection conn, SqlWork<T> work) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            T result = work.run(conn);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
     public static void closeConnection() {
         try {
             if (connection != null && !connection.isClosed()) {
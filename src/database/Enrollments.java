@@ -0,0 +1,139 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Enrollment with seat limits. courses.capacity (NULL for no limit) is checked while the course row
+ * is locked FOR UPDATE, so desktops, servers and batches of waiting requests all count the same
+ * seats and a course can never be oversubscribed. The unique key on (student_id, course_id) keeps
+ * a student from holding two seats.
+ */
+public class Enrollments {
+    public enum Outcome { ENROLLED, ALREADY_ENROLLED, FULL, NO_COURSE }
+
+    public static class Batch {
+        public final List<Outcome> outcomes = new ArrayList<>();
+        // Enrollment ids, null where the student wasn't enrolled by this batch
+        public final List<Integer> enrollmentIds = new ArrayList<>();
+        // Free seats once the batch commits; null for a course without a limit
+        public Integer seatsLeft;
+
+        public List<Integer> enrolled(List<Integer> studentIds) {
+            List<Integer> result = new ArrayList<>();
+            for (int i = 0; i < studentIds.size(); i++) {
+                if (outcomes.get(i) == Outcome.ENROLLED) result.add(studentIds.get(i));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Enrolls the students in order while seats last; call inside a transaction. The course row
+     * stays locked until the caller commits, which is what makes the seat count hold.
+     */
+    public static Batch enroll(Connection c, int courseId, List<Integer> studentIds) throws SQLException {
+        Batch batch = new Batch();
+        Integer capacity;
+        try (PreparedStatement ps = c.prepareStatement("SELECT capacity FROM courses WHERE course_id = ? FOR UPDATE")) {
+            ps.setInt(1, courseId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    for (int i = 0; i < studentIds.size(); i++) {
+                        batch.outcomes.add(Outcome.NO_COURSE);
+                        batch.enrollmentIds.add(null);
+                    }
+                    return batch;
+                }
+                capacity = (Integer) rs.getObject("capacity");
+            }
+        }
+
+        int taken = capacity == null ? 0 : count(c, courseId);
+        Set<Integer> enrolled = alreadyEnrolled(c, courseId, studentIds);
+        try (PreparedStatement insert = c.prepareStatement(
+                "INSERT INTO enrollments (student_id, course_id) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            for (Integer studentId : studentIds) {
+                if (!enrolled.add(studentId)) {
+                    batch.outcomes.add(Outcome.ALREADY_ENROLLED);
+                    batch.enrollmentIds.add(null);
+                } else if (capacity != null && taken >= capacity) {
+                    batch.outcomes.add(Outcome.FULL);
+                    batch.enrollmentIds.add(null);
+                } else {
+                    insert.setInt(1, studentId);
+                    insert.setInt(2, courseId);
+                    insert.executeUpdate();
+                    int id;
+                    try (ResultSet keys = insert.getGeneratedKeys()) {
+                        keys.next();
+                        id = keys.getInt(1);
+                    }
+                    ChangeLog.record(c, ChangeLog.ENROLLMENTS, ChangeLog.INSERT, id, courseId, studentId);
+                    batch.outcomes.add(Outcome.ENROLLED);
+                    batch.enrollmentIds.add(id);
+                    taken++;
+                }
+            }
+        }
+        batch.seatsLeft = capacity == null ? null : Math.max(0, capacity - taken);
+        return batch;
+    }
+
+    public static Outcome enroll(Connection c, int courseId, int studentId) throws SQLException {
+        return enroll(c, courseId, List.of(studentId)).outcomes.get(0);
+    }
+
+    /** Removes the student's enrollment; false if they weren't enrolled. Call {@link Waitlist#promote} after it. */
+    public static boolean drop(Connection c, int courseId, int studentId) throws SQLException {
+        Integer enrollmentId = null;
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT enrollment_id FROM enrollments WHERE course_id = ? AND student_id = ? FOR UPDATE")) {
+            ps.setInt(1, courseId);
+            ps.setInt(2, studentId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) enrollmentId = rs.getInt(1);
+            }
+        }
+        if (enrollmentId == null) return false;
+        try (PreparedStatement ps = c.prepareStatement("DELETE FROM enrollments WHERE enrollment_id = ?")) {
+            ps.setInt(1, enrollmentId);
+            ps.executeUpdate();
+        }
+        ChangeLog.record(c, ChangeLog.ENROLLMENTS, ChangeLog.DELETE, enrollmentId, courseId, studentId);
+        return true;
+    }
+
+    private static int count(Connection c, int courseId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM enrollments WHERE course_id = ?")) {
+            ps.setInt(1, courseId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static Set<Integer> alreadyEnrolled(Connection c, int courseId, List<Integer> studentIds) throws SQLException {
+        Set<Integer> result = new HashSet<>();
+        if (studentIds.isEmpty()) return result;
+        StringBuilder sql = new StringBuilder("SELECT student_id FROM enrollments WHERE course_id = ? AND student_id IN (");
+        for (int i = 0; i < studentIds.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+        sql.append(')');
+        try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            ps.setInt(1, courseId);
+            for (int i = 0; i < studentIds.size(); i++) ps.setInt(i + 2, studentIds.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) result.add(rs.getInt(1));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Short messages for one user about something that happened to them (a waitlist promotion),
+ * shown once the next time their dashboard looks.
+ */
+public class Notifications {
+
+    // Within the caller's transaction, so the notice commits with what it announces
+    public static void add(Connection c, List<Integer> userIds, int courseId, String message) throws SQLException {
+        if (userIds.isEmpty()) return;
+        StringBuilder sql = new StringBuilder("INSERT INTO notifications (user_id, course_id, message) VALUES ");
+        for (int i = 0; i < userIds.size(); i++) sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+        try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (Integer userId : userIds) {
+                ps.setInt(p++, userId);
+                ps.setInt(p++, courseId);
+                ps.setString(p++, message);
+            }
+            ps.executeUpdate();
+        }
+        for (Integer userId : userIds) {
+            ChangeLog.record(c, ChangeLog.NOTIFICATIONS, ChangeLog.INSERT, null, courseId, userId);
+        }
+    }
+
+    /** The user's unread notifications, oldest first, marked read in the same call. */
+    public static List<String> take(Connection c, int userId) throws SQLException {
+        List<String> messages = new ArrayList<>();
+        long last = 0;
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT notification_id, message FROM notifications WHERE user_id = ? AND is_read = FALSE " +
+                "ORDER BY notification_id")) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    messages.add(rs.getString(2));
+                }
+            }
+        }
+        if (messages.isEmpty()) return messages;
+        try (PreparedStatement ps = c.prepareStatement(
+                "UPDATE notifications SET is_read = TRUE WHERE user_id = ? AND is_read = FALSE AND notification_id <= ?")) {
+            ps.setInt(1, userId);
+            ps.setLong(2, last);
+            ps.executeUpdate();
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,380 @@
+package database;
+
+import config.AppConfig;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads a {@link BackupTool} backup, or a directory of seed TSV files in the same format, into
+ * lms_db.
+ *
+ * Tables are loaded level by level in dependency order (users, then courses, then the tables that
+ * hang off courses, and so on), with the tables of one level loading in parallel on their own
+ * connections. Secondary indexes are dropped before the load and built again afterwards in one
+ * ALTER per table, and rows go in through JDBC batches that the driver rewrites into multi-row
+ * INSERTs. Each table's checksum and row count are checked against the manifest when there is one.
+ */
+public class RestoreTool {
+    private static final int BATCH_ROWS = 2000;
+    private static final int COMMIT_ROWS = 50000;
+
+    // Load order; tables on the same level don't depend on each other
+    private static final String[][] LEVELS = {
+            {"users", "blobs"},
+            {"courses"},
+            {"enrollments", "waitlist", "notifications", "assignments", "messages", "study_materials"},
+            {"submissions", "inbox"},
+            {"submission_files"}
+    };
+
+    public static class Report {
+        public final Map<String, Long> rows = new LinkedHashMap<>();
+        public long elapsedMillis;
+    }
+
+    // An index as it was before the load, so it can be created again afterwards
+    private static class IndexDef {
+        final String name;
+        final boolean unique;
+        final List<String> columns = new ArrayList<>();
+
+        IndexDef(String name, boolean unique) {
+            this.name = name;
+            this.unique = unique;
+        }
+
+        String addClause() {
+            return "ADD " + (unique ? "UNIQUE " : "") + "INDEX `" + name + "` (" + String.join(", ", columns) + ")";
+        }
+    }
+
+    /**
+     * @param replace empty the tables first; otherwise the restore refuses to load into tables
+     *                that already hold rows
+     */
+    public static Report restore(File dir, boolean replace, PrintStream log) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        Properties manifest = readManifest(dir);
+        Map<String, File> files = findFiles(dir, manifest);
+        if (files.isEmpty()) throw new IOException("No table files found in " + dir);
+
+        Report report = new Report();
+        Map<String, List<IndexDef>> dropped = new LinkedHashMap<>();
+        try (Connection admin = DatabaseConnection.openConnection()) {
+            prepareTables(admin, files, replace, log);
+            for (String table : files.keySet()) dropped.put(table, dropSecondaryIndexes(admin, table, log));
+        }
+
+        int threads = Math.max(1, AppConfig.getInt("lms.restore.threads", 4));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            try {
+                for (String[] level : LEVELS) {
+                    List<Future<Long>> futures = new ArrayList<>();
+                    List<String> tables = new ArrayList<>();
+                    for (String table : level) {
+                        if (!files.containsKey(table)) continue;
+                        tables.add(table);
+                        futures.add(pool.submit(() -> load(table, files.get(table), manifest, log)));
+                    }
+                    for (int i = 0; i < futures.size(); i++) report.rows.put(tables.get(i), await(futures.get(i)));
+                }
+            } finally {
+                // Also after a failed load, so the schema is never left without its indexes
+                rebuildAll(pool, dropped, log);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        verifyCounts(report, manifest, log);
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    // A plain directory of seed files has no manifest; then nothing is checked against one
+    private static Properties readManifest(File dir) throws IOException {
+        Properties manifest = new Properties();
+        File file = new File(dir, BackupTool.MANIFEST);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                manifest.load(in);
+            }
+            int format = Integer.parseInt(manifest.getProperty("format", "0"));
+            if (format != BackupTool.FORMAT_VERSION) {
+                throw new IOException("Unsupported backup format " + format + " in " + file);
+            }
+        }
+        return manifest;
+    }
+
+    private static Map<String, File> findFiles(File dir, Properties manifest) throws IOException {
+        Map<String, File> files = new LinkedHashMap<>();
+        for (String[] level : LEVELS) {
+            for (String table : level) {
+                String listed = manifest.getProperty("table." + table + ".file");
+                File file = listed != null ? new File(dir, listed) : null;
+                if (file == null) {
+                    File gz = new File(dir, table + ".tsv.gz");
+                    File plain = new File(dir, table + ".tsv");
+                    file = gz.exists() ? gz : plain.exists() ? plain : null;
+                }
+                if (file != null && !file.exists()) throw new IOException("Missing " + file + " listed in the manifest");
+                if (file != null) files.put(table, file);
+            }
+        }
+        return files;
+    }
+
+    private static void prepareTables(Connection conn, Map<String, File> files, boolean replace, PrintStream log)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (replace) {
+                List<String> emptied = tablesToEmpty(files);
+                stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+                try {
+                    for (String table : emptied) stmt.execute("TRUNCATE TABLE " + table);
+                } finally {
+                    stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+                }
+                log.println("Emptied " + emptied.size() + " tables");
+                return;
+            }
+            for (String table : files.keySet()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+                    if (rs.next()) {
+                        throw new SQLException("Table " + table + " is not empty; restore with --replace to overwrite it");
+                    }
+                }
+            }
+        }
+    }
+
+    // The restored tables, plus any later table the backup has no file for (backups made before
+    // waitlist and notifications existed): its rows would point at users and courses replaced here
+    private static List<String> tablesToEmpty(Map<String, File> files) {
+        List<String> tables = new ArrayList<>();
+        boolean parentReplaced = false;
+        for (String[] level : LEVELS) {
+            boolean replacedHere = false;
+            for (String table : level) {
+                if (files.containsKey(table)) {
+                    tables.add(table);
+                    replacedHere = true;
+                } else if (parentReplaced) {
+                    tables.add(table);
+                }
+            }
+            parentReplaced |= replacedHere;
+        }
+        return tables;
+    }
+
+    /**
+     * Drops every secondary B-tree index the table has and returns their definitions. Indexes the
+     * server won't drop (those backing a foreign key or an AUTO_INCREMENT column) stay in place.
+     */
+    private static List<IndexDef> dropSecondaryIndexes(Connection conn, String table, PrintStream log) throws SQLException {
+        Map<String, IndexDef> indexes = new LinkedHashMap<>();
+        String sql = "SELECT INDEX_NAME, NON_UNIQUE, COLUMN_NAME, SUB_PART FROM information_schema.STATISTICS " +
+                     "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME <> 'PRIMARY' AND INDEX_TYPE = 'BTREE' " +
+                     "ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String column = rs.getString("COLUMN_NAME");
+                    IndexDef def = indexes.get(rs.getString("INDEX_NAME"));
+                    if (def == null) {
+                        def = new IndexDef(rs.getString("INDEX_NAME"), rs.getInt("NON_UNIQUE") == 0);
+                        indexes.put(def.name, def);
+                    }
+                    if (column == null) {
+                        // Functional index; left alone
+                        def.columns.clear();
+                        def.columns.add(null);
+                        continue;
+                    }
+                    int subPart = rs.getInt("SUB_PART");
+                    def.columns.add("`" + column + "`" + (rs.wasNull() ? "" : "(" + subPart + ")"));
+                }
+            }
+        }
+
+        List<IndexDef> dropped = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            for (IndexDef def : indexes.values()) {
+                if (def.columns.contains(null)) continue;
+                try {
+                    stmt.execute("ALTER TABLE " + table + " DROP INDEX `" + def.name + "`");
+                    dropped.add(def);
+                } catch (SQLException e) {
+                    // Needed by a constraint; it is maintained during the load instead
+                }
+            }
+        }
+        if (!dropped.isEmpty()) log.println("  " + table + ": dropped " + dropped.size() + " secondary indexes for the load");
+        return dropped;
+    }
+
+    private static long load(String table, File file, Properties manifest, PrintStream log) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        MessageDigest sha = BackupTool.sha256();
+        long rows = 0;
+        InputStream raw = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) raw = new GZIPInputStream(raw, 64 * 1024);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new DigestInputStream(raw, sha),
+                     StandardCharsets.UTF_8), 64 * 1024);
+             Connection conn = DatabaseConnection.openBulkConnection()) {
+            String header = in.readLine();
+            if (header == null) throw new IOException(file + " is empty");
+            String[] columns = header.split("\t", -1);
+
+            try (Statement stmt = conn.createStatement()) {
+                // The data comes from a consistent backup; checking every row again only slows the load
+                stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+                stmt.execute("SET UNIQUE_CHECKS = 0");
+            }
+            conn.setAutoCommit(false);
+
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+            for (int i = 0; i < columns.length; i++) sql.append(i == 0 ? "`" : ", `").append(columns[i]).append('`');
+            sql.append(") VALUES (");
+            for (int i = 0; i < columns.length; i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(')');
+
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != columns.length) {
+                        throw new IOException(file.getName() + " line " + (rows + 2) + ": expected " + columns.length +
+                                " fields, found " + fields.length);
+                    }
+                    for (int i = 0; i < fields.length; i++) ps.setString(i + 1, unescape(fields[i]));
+                    ps.addBatch();
+                    rows++;
+                    if (rows % BATCH_ROWS == 0) ps.executeBatch();
+                    if (rows % COMMIT_ROWS == 0) conn.commit();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException | IOException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        String expected = manifest.getProperty("table." + table + ".sha256");
+        if (expected != null && !expected.equals(BackupTool.hex(sha.digest()))) {
+            throw new IOException("Checksum mismatch for " + file.getName() + "; the backup is damaged");
+        }
+        log.println(String.format("  %-18s %,10d rows  %6.1f s", table, rows, (System.currentTimeMillis() - start) / 1000.0));
+        return rows;
+    }
+
+    // Reverses BackupTool.writeValue
+    static String unescape(String field) {
+        if (field.equals("\\N")) return null;
+        if (field.indexOf('\\') < 0) return field;
+        StringBuilder sb = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\' || i + 1 == field.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = field.charAt(++i);
+            switch (next) {
+                case 't' -> sb.append('\t');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case '0' -> sb.append('\0');
+                default -> sb.append(next);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Sorted index builds over the full tables, one ALTER per table, tables in parallel
+    private static void rebuildAll(ExecutorService pool, Map<String, List<IndexDef>> dropped, PrintStream log)
+            throws SQLException, IOException {
+        List<Future<Long>> rebuilds = new ArrayList<>();
+        for (Map.Entry<String, List<IndexDef>> e : dropped.entrySet()) {
+            if (e.getValue().isEmpty()) continue;
+            rebuilds.add(pool.submit(() -> {
+                rebuildIndexes(e.getKey(), e.getValue(), log);
+                return 0L;
+            }));
+        }
+        for (Future<Long> f : rebuilds) await(f);
+    }
+
+    private static void rebuildIndexes(String table, List<IndexDef> indexes, PrintStream log) throws SQLException {
+        long start = System.currentTimeMillis();
+        List<String> clauses = new ArrayList<>();
+        for (IndexDef def : indexes) clauses.add(def.addClause());
+        try (Connection conn = DatabaseConnection.openConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " " + String.join(", ", clauses));
+        }
+        log.println(String.format("  %-18s %d indexes rebuilt  %6.1f s", table, indexes.size(),
+                (System.currentTimeMillis() - start) / 1000.0));
+    }
+
+    private static void verifyCounts(Report report, Properties manifest, PrintStream log) throws SQLException {
+        try (Connection conn = DatabaseConnection.openConnection(); Statement stmt = conn.createStatement()) {
+            for (Map.Entry<String, Long> e : report.rows.entrySet()) {
+                long actual;
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + e.getKey())) {
+                    rs.next();
+                    actual = rs.getLong(1);
+                }
+                String listed = manifest.getProperty("table." + e.getKey() + ".rows");
+                long expected = listed != null ? Long.parseLong(listed) : e.getValue();
+                if (actual != expected || actual != e.getValue()) {
+                    throw new SQLException("Row count mismatch for " + e.getKey() + ": expected " + expected +
+                            ", loaded " + e.getValue() + ", table has " + actual);
+                }
+            }
+        }
+        log.println("Row counts verified for " + report.rows.size() + " tables");
+    }
+
+    private static long await(Future<Long> future) throws SQLException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Restore interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package database;
+
+import security.PasswordHasher;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Password checks for the login screen and the application server. The user is found by the
+ * unique username index and only the columns a login needs are read; the password is then checked
+ * with {@link PasswordHasher}. A plaintext or outdated stored password is replaced by a fresh
+ * hash on its first successful login.
+ */
+public class UserAccounts {
+
+    public static class Account {
+        public final int userId;
+        public final String fullName;
+        // As stored: a hash, or plaintext from before hashing
+        public final String password;
+
+        Account(int userId, String fullName, String password) {
+            this.userId = userId;
+            this.fullName = fullName;
+            this.password = password;
+        }
+    }
+
+    /** The account, or null if the username, role or password doesn't match. */
+    public static Account authenticate(Connection conn, String username, String password, String role) throws SQLException {
+        Account account = find(conn, username, role);
+        if (!PasswordHasher.verify(password, account != null ? account.password : null)) return null;
+        if (PasswordHasher.needsRehash(account.password)) upgrade(conn, account, PasswordHasher.hash(password));
+        return account;
+    }
+
+    public static Account find(Connection conn, String username, String role) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT user_id, full_name, password FROM users WHERE username = ? AND role = ?")) {
+            ps.setString(1, username);
+            ps.setString(2, role);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return new Account(rs.getInt("user_id"), rs.getString("full_name"), rs.getString("password"));
+            }
+        }
+    }
+
+    // After a successful check, with a hash computed beforehand so no connection is held while
+    // hashing; replaces a plaintext or outdated stored password
+    public static void upgrade(Connection conn, Account account, String newHash) throws SQLException {
+        // Only if nobody changed the password in the meantime
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE users SET password = ? WHERE user_id = ? AND password = ?")) {
+            ps.setString(1, newHash);
+            ps.setInt(2, account.userId);
+            ps.setString(3, account.password);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Students waiting for a seat in a full course, served first come, first served.
+ *
+ * Whatever frees seats ({@link Enrollments#drop}, an admin raising the capacity) calls
+ * {@link #promote} in the same transaction, so a seat never sits free while someone is waiting.
+ * Promotion reads the queue front through the (course_id, waitlist_id) index a batch at a time;
+ * the rest of a long waitlist is never touched. Promoted students get a {@link Notifications} entry.
+ */
+public class Waitlist {
+    private static final int BATCH_SIZE = 500;
+
+    /** What {@link #join} did: FULL means the student is queued at {@link #position}. */
+    public static class Joined {
+        public final Enrollments.Outcome outcome;
+        public final int position;
+
+        Joined(Enrollments.Outcome outcome, int position) {
+            this.outcome = outcome;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Adds the student at the back of the queue (or leaves them where they are). A seat freed
+     * since the student saw the course full is taken instead (ENROLLED). A student already
+     * enrolled, or a course that doesn't exist, is reported as such and nothing is queued.
+     */
+    public static Joined join(Connection c, int courseId, int studentId) throws SQLException {
+        Enrollments.Outcome outcome = Enrollments.enroll(c, courseId, studentId);
+        if (outcome != Enrollments.Outcome.FULL) return new Joined(outcome, 0);
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT IGNORE INTO waitlist (course_id, student_id) VALUES (?, ?)")) {
+            ps.setInt(1, courseId);
+            ps.setInt(2, studentId);
+            ps.executeUpdate();
+        }
+        return new Joined(outcome, position(c, courseId, studentId));
+    }
+
+    // 1 for the front of the queue, 0 if the student isn't waiting
+    public static int position(Connection c, int courseId, int studentId) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM waitlist w JOIN waitlist mine " +
+                     "ON mine.course_id = w.course_id AND mine.student_id = ? " +
+                     "WHERE w.course_id = ? AND w.waitlist_id <= mine.waitlist_id";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, studentId);
+            ps.setInt(2, courseId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Enrolls waiting students, oldest first, into whatever seats the course has free; call inside
+     * the transaction that freed them. Returns the students enrolled, for the caller's follow-up
+     * work (inbox backfill).
+     */
+    public static List<Integer> promote(Connection c, int courseId) throws SQLException {
+        List<Integer> promoted = new ArrayList<>();
+        while (true) {
+            // Locks the course row; Enrollments does the counting under the same lock
+            String courseName;
+            Integer seats;
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT course_name, capacity - (SELECT COUNT(*) FROM enrollments WHERE course_id = ?) AS seats_left " +
+                    "FROM courses WHERE course_id = ? FOR UPDATE")) {
+                ps.setInt(1, courseId);
+                ps.setInt(2, courseId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return promoted;
+                    courseName = rs.getString("course_name");
+                    Number left = (Number) rs.getObject("seats_left");
+                    seats = left == null ? null : left.intValue();
+                }
+            }
+            if (seats != null && seats <= 0) return promoted;
+
+            int limit = seats == null ? BATCH_SIZE : Math.min(seats, BATCH_SIZE);
+            List<Long> entryIds = new ArrayList<>();
+            List<Integer> studentIds = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT waitlist_id, student_id FROM waitlist WHERE course_id = ? ORDER BY waitlist_id LIMIT " + limit)) {
+                ps.setInt(1, courseId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        entryIds.add(rs.getLong(1));
+                        studentIds.add(rs.getInt(2));
+                    }
+                }
+            }
+            if (studentIds.isEmpty()) return promoted;
+
+            Enrollments.Batch batch = Enrollments.enroll(c, courseId, studentIds);
+            List<Integer> enrolled = batch.enrolled(studentIds);
+            // Students already enrolled some other way leave the queue too; the course can't be
+            // full here, so nobody in this batch is turned away
+            deleteEntries(c, entryIds);
+            Notifications.add(c, enrolled, courseId,
+                    "A seat opened up in " + courseName + " and you have been enrolled from the waitlist.");
+            promoted.addAll(enrolled);
+            if (studentIds.size() < limit) return promoted;
+        }
+    }
+
+    private static void deleteEntries(Connection c, List<Long> entryIds) throws SQLException {
+        StringBuilder sql = new StringBuilder("DELETE FROM waitlist WHERE waitlist_id IN (");
+        for (int i = 0; i < entryIds.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+        sql.append(')');
+        try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            for (int i = 0; i < entryIds.size(); i++) ps.setLong(i + 1, entryIds.get(i));
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package search;
+
+import storage.Compression;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Full-text index over the contents of uploaded material files, kept in materials/.index.
+ *
+ * New files are queued with {@link #submit}, read and tokenized on a background thread, and
+ * written as small immutable segments. Once enough segments pile up they are merged into one
+ * on a second background thread. Queries only touch the segments, never the material files.
+ *
+ * Writers (the indexer's flush and the merger) take an in-process lock and then the lock file,
+ * which keeps out other desktops sharing the directory. Searches hold the read side of a
+ * read/write lock whose write side a merge takes to retire the segments it replaced, and each
+ * search also retains the segments it reads, so none is closed under it.
+ */
+public class ContentIndex {
+    private static final int FLUSH_EVERY_DOCS = 32;
+    private static final int MERGE_FACTOR = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static ContentIndex instance;
+
+    private final File indexDir;
+    private final File pendingDir;
+    private final File lockFile;
+    private final ThreadPoolExecutor indexer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), daemon("content-indexer"));
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(daemon("segment-merger"));
+    private final Map<String, IndexSegment> openSegments = new ConcurrentHashMap<>();
+    // The lock file is held per JVM, so flush and merge must also exclude each other in here
+    private final ReentrantLock writer = new ReentrantLock();
+    private final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+    // Postings collected since the last flush, only touched by the indexer thread
+    private final SortedMap<String, List<IndexSegment.Posting>> buffer = new TreeMap<>();
+    private final List<File> bufferedJobs = new ArrayList<>();
+
+    public static synchronized ContentIndex get() {
+        if (instance == null) {
+            instance = new ContentIndex(new File("materials", ".index"));
+        }
+        return instance;
+    }
+
+    ContentIndex(File indexDir) {
+        this.indexDir = indexDir;
+        this.pendingDir = new File(indexDir, "pending");
+        this.lockFile = new File(indexDir, "write.lock");
+        pendingDir.mkdirs();
+        resumePendingJobs();
+    }
+
+    public void submit(int materialId, int courseId, File file) {
+        submit(materialId, courseId, file, file.getName());
+    }
+
+    // Queues a stored material file for indexing; the job is persisted so it survives an app exit.
+    // The file type is taken from fileName, since blobs are stored under their digest.
+    public void submit(int materialId, int courseId, File file, String fileName) {
+        if (!TextExtractor.isSupported(fileName)) return;
+
+        File job = new File(pendingDir, materialId + ".job");
+        Properties props = new Properties();
+        props.setProperty("materialId", String.valueOf(materialId));
+        props.setProperty("courseId", String.valueOf(courseId));
+        props.setProperty("path", file.getAbsolutePath());
+        props.setProperty("name", fileName);
+        try (OutputStream out = new FileOutputStream(job)) {
+            props.store(out, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        schedule(job);
+    }
+
+    /**
+     * Ranks materials whose file contents match the query, restricted to the given courses.
+     * Returns material ids ordered by number of matched terms, then total term frequency.
+     */
+    public List<Integer> search(String query, Collection<Integer> courseIds, int limit) throws IOException {
+        Set<String> terms = Tokenizer.termFrequencies(query).keySet();
+        if (terms.isEmpty() || courseIds.isEmpty()) return Collections.emptyList();
+        Set<Integer> courses = new HashSet<>(courseIds);
+
+        Map<Integer, int[]> scores = new HashMap<>(); // materialId -> {matched terms, total frequency}
+        segmentsLock.readLock().lock();
+        List<IndexSegment> segments = Collections.emptyList();
+        try {
+            segments = liveSegments();
+            for (String term : terms) {
+                Set<Integer> seenForTerm = new HashSet<>();
+                for (IndexSegment segment : segments) {
+                    for (IndexSegment.Posting p : segment.postings(term)) {
+                        if (!courses.contains(p.courseId) || !seenForTerm.add(p.materialId)) continue;
+                        int[] score = scores.computeIfAbsent(p.materialId, id -> new int[2]);
+                        score[0]++;
+                        score[1] += p.frequency;
+                    }
+                }
+            }
+        } finally {
+            release(segments);
+            segmentsLock.readLock().unlock();
+        }
+
+        List<Integer> ids = new ArrayList<>(scores.keySet());
+        ids.sort((a, b) -> {
+            int[] sa = scores.get(a), sb = scores.get(b);
+            if (sa[0] != sb[0]) return Integer.compare(sb[0], sa[0]);
+            if (sa[1] != sb[1]) return Integer.compare(sb[1], sa[1]);
+            return Integer.compare(b, a);
+        });
+        return ids.size() > limit ? ids.subList(0, limit) : ids;
+    }
+
+    private void resumePendingJobs() {
+        File[] jobs = pendingDir.listFiles((dir, name) -> name.endsWith(".job"));
+        if (jobs == null) return;
+        Arrays.sort(jobs);
+        for (File job : jobs) schedule(job);
+    }
+
+    private void schedule(File job) {
+        indexer.submit(() -> {
+            try {
+                indexJob(job);
+                if (bufferedJobs.size() >= FLUSH_EVERY_DOCS || indexer.getQueue().isEmpty()) {
+                    flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void indexJob(File job) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(job)) {
+            props.load(in);
+        }
+        int materialId = Integer.parseInt(props.getProperty("materialId"));
+        int courseId = Integer.parseInt(props.getProperty("courseId"));
+        File file = new File(props.getProperty("path"));
+        String fileName = props.getProperty("name", Compression.logicalName(file));
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (Compression.resolve(file).exists()) {
+            try (InputStream in = new BufferedInputStream(Compression.open(file))) {
+                TextExtractor.extract(fileName, in, term -> frequencies.merge(term, 1, Integer::sum));
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            buffer.computeIfAbsent(entry.getKey(), t -> new ArrayList<>())
+                  .add(new IndexSegment.Posting(materialId, courseId, entry.getValue()));
+        }
+        bufferedJobs.add(job);
+    }
+
+    private void flush() throws IOException {
+        if (bufferedJobs.isEmpty()) return;
+
+        if (!buffer.isEmpty()) {
+            withWriteLock(() -> writeSegment(buffer, Collections.emptyList()));
+        }
+        // Jobs are only forgotten once their postings are safely on disk
+        for (File job : bufferedJobs) job.delete();
+        buffer.clear();
+        bufferedJobs.clear();
+
+        List<IndexSegment> segments = liveSegments();
+        release(segments);
+        if (segments.size() >= MERGE_FACTOR) {
+            merger.submit(this::mergeSegments);
+        }
+    }
+
+    private void mergeSegments() {
+        try {
+            withWriteLock(() -> {
+                List<IndexSegment> segments = liveSegments();
+                try {
+                    if (segments.size() < MERGE_FACTOR) return;
+
+                    // Sources that could not be deleted last time stay listed so they remain hidden
+                    List<String> sources = new ArrayList<>();
+                    for (IndexSegment segment : segments) {
+                        sources.add(segment.file().getName());
+                        for (String older : segment.mergedFrom()) {
+                            File olderFile = new File(indexDir, older);
+                            if (olderFile.exists() && !olderFile.delete()) sources.add(older);
+                        }
+                    }
+                    File merged = newSegmentFile();
+                    File tmp = new File(indexDir, merged.getName() + ".tmp");
+                    try (IndexSegment.Writer out = new IndexSegment.Writer(tmp, sources)) {
+                        mergeTerms(segments, out);
+                        out.finish();
+                    } catch (IOException | RuntimeException e) {
+                        tmp.delete();
+                        throw e;
+                    }
+                    Files.move(tmp.toPath(), merged.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+                    segmentsLock.writeLock().lock();
+                    try {
+                        for (IndexSegment segment : segments) {
+                            IndexSegment open = openSegments.remove(segment.file().getName());
+                            if (open != null) open.close();
+                        }
+                    } finally {
+                        segmentsLock.writeLock().unlock();
+                    }
+                    // Closes the files, so they can be deleted on Windows too
+                    release(segments);
+                    segments = Collections.emptyList();
+                    for (String name : sources) {
+                        // Another process may still have it open; it is skipped via mergedFrom until deleted
+                        new File(indexDir, name).delete();
+                    }
+                } finally {
+                    release(segments);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * K-way merge over the segments' sorted term dictionaries: one term's postings are in memory
+     * at a time. Segments are oldest first, so the newest one wins if a material was indexed more
+     * than once.
+     */
+    private static void mergeTerms(List<IndexSegment> segments, IndexSegment.Writer out) throws IOException {
+        // {segment, position in its dictionary}, smallest term first, then oldest segment
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int c = segments.get(a[0]).terms()[a[1]].compareTo(segments.get(b[0]).terms()[b[1]]);
+            return c != 0 ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).terms().length > 0) heads.add(new int[]{i, 0});
+        }
+        while (!heads.isEmpty()) {
+            String term = segments.get(heads.peek()[0]).terms()[heads.peek()[1]];
+            Map<Integer, IndexSegment.Posting> byMaterial = new LinkedHashMap<>();
+            while (!heads.isEmpty() && segments.get(heads.peek()[0]).terms()[heads.peek()[1]].equals(term)) {
+                int[] head = heads.poll();
+                IndexSegment segment = segments.get(head[0]);
+                for (IndexSegment.Posting p : segment.postings(term)) byMaterial.put(p.materialId, p);
+                if (++head[1] < segment.terms().length) heads.add(head);
+            }
+            out.add(term, byMaterial.values());
+        }
+    }
+
+    private void writeSegment(SortedMap<String, List<IndexSegment.Posting>> postings, List<String> sources) throws IOException {
+        File segment = newSegmentFile();
+        File tmp = new File(indexDir, segment.getName() + ".tmp");
+        IndexSegment.write(tmp, postings, sources);
+        Files.move(tmp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File newSegmentFile() {
+        return new File(indexDir, "seg_" + System.currentTimeMillis() + "_" + Long.toHexString(System.nanoTime()) + SEGMENT_SUFFIX);
+    }
+
+    private static void release(List<IndexSegment> segments) throws IOException {
+        for (IndexSegment segment : segments) segment.release();
+    }
+
+    // Segments currently on disk, minus those that a newer merged segment already covers. Each is
+    // retained for the caller, who must release() them.
+    private List<IndexSegment> liveSegments() throws IOException {
+        File[] files = indexDir.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return Collections.emptyList();
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        List<IndexSegment> segments = new ArrayList<>();
+        Set<String> superseded = new HashSet<>();
+        Set<String> present = new HashSet<>();
+        for (File file : files) {
+            present.add(file.getName());
+            IndexSegment segment = openSegments.get(file.getName());
+            if (segment == null) {
+                try {
+                    segment = IndexSegment.open(file);
+                } catch (IOException | RuntimeException e) {
+                    continue; // deleted by a concurrent merge
+                }
+                // Another search may have opened it at the same time
+                IndexSegment existing = openSegments.putIfAbsent(file.getName(), segment);
+                if (existing != null) {
+                    segment.close();
+                    segment = existing;
+                }
+            }
+            if (!segment.retain()) continue; // closed by a concurrent merge or clean-up
+            superseded.addAll(segment.mergedFrom());
+            segments.add(segment);
+        }
+
+        // Drop handles to segments another process merged away; only whoever removes one closes it
+        for (String name : new ArrayList<>(openSegments.keySet())) {
+            if (present.contains(name)) continue;
+            IndexSegment gone = openSegments.remove(name);
+            if (gone != null) gone.close();
+        }
+
+        List<IndexSegment> live = new ArrayList<>();
+        for (IndexSegment segment : segments) {
+            if (superseded.contains(segment.file().getName())) segment.release();
+            else live.add(segment);
+        }
+        return live;
+    }
+
+    // Several desktops may write to the same shared materials directory; the file lock is per JVM
+    // and throws if taken twice, so this process's writers queue on the in-process lock first
+    private void withWriteLock(IndexWork work) throws IOException {
+        writer.lock();
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                work.run();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    private interface IndexWork {
+        void run() throws IOException;
+    }
+
+    private static java.util.concurrent.ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,221 @@
+package search;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable on-disk piece of the material content index.
+ *
+ * Layout: header (magic, source segment names), one postings block per term in sorted order,
+ * then the term dictionary (term, block offset) and finally the dictionary offset. Only the
+ * dictionary is held in memory; postings are read with positional reads when a term is queried.
+ *
+ * The index holds one reference to an open segment and each search in progress one more
+ * ({@link #retain}/{@link #release}); the file is only closed when the last one is let go, so a
+ * merge can retire a segment while a search is still reading it.
+ */
+public class IndexSegment implements Closeable {
+    private static final int MAGIC = 0x4C4D5331; // "LMS1"
+    private static final int POSTING_BYTES = 12;
+
+    // One material's occurrences of a term
+    public static class Posting {
+        public final int materialId;
+        public final int courseId;
+        public final int frequency;
+
+        public Posting(int materialId, int courseId, int frequency) {
+            this.materialId = materialId;
+            this.courseId = courseId;
+            this.frequency = frequency;
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final List<String> mergedFrom;
+    private final String[] terms;
+    private final long[] offsets;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    private IndexSegment(File file, FileChannel channel, List<String> mergedFrom, String[] terms, long[] offsets) {
+        this.file = file;
+        this.channel = channel;
+        this.mergedFrom = mergedFrom;
+        this.terms = terms;
+        this.offsets = offsets;
+    }
+
+    public static IndexSegment open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer tail = ByteBuffer.allocate(8);
+            channel.read(tail, channel.size() - 8);
+            long dictionaryOffset = tail.flip().getLong();
+
+            DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            List<String> mergedFrom = new ArrayList<>();
+            try {
+                if (header.readInt() != MAGIC) throw new IOException("Not an index segment: " + file);
+                int sources = header.readInt();
+                for (int i = 0; i < sources; i++) mergedFrom.add(header.readUTF());
+            } finally {
+                header.close();
+            }
+
+            DataInputStream dict = new DataInputStream(new BufferedInputStream(
+                    java.nio.channels.Channels.newInputStream(channel.position(dictionaryOffset))));
+            int termCount = dict.readInt();
+            String[] terms = new String[termCount];
+            long[] offsets = new long[termCount];
+            for (int i = 0; i < termCount; i++) {
+                terms[i] = dict.readUTF();
+                offsets[i] = dict.readLong();
+            }
+            return new IndexSegment(file, channel, mergedFrom, terms, offsets);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Writes a segment from term -> postings; the map must be sorted by term
+    public static void write(File file, SortedMap<String, List<Posting>> postings, List<String> mergedFrom) throws IOException {
+        try (Writer writer = new Writer(file, mergedFrom)) {
+            for (Map.Entry<String, List<Posting>> entry : postings.entrySet()) writer.add(entry.getKey(), entry.getValue());
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes a segment one term at a time, so a merge never holds more than one term's postings;
+     * only the dictionary (term, offset) is kept until {@link #finish}. Terms must be added in
+     * sorted order. A writer closed without finish() leaves an incomplete file for the caller to delete.
+     */
+    public static class Writer implements Closeable {
+        private final CountingOutputStream counter;
+        private final DataOutputStream out;
+        private final List<String> terms = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+
+        public Writer(File file, List<String> mergedFrom) throws IOException {
+            // DataOutputStream is unbuffered, so the counter below it sees every byte immediately
+            counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            out = new DataOutputStream(counter);
+            out.writeInt(MAGIC);
+            out.writeInt(mergedFrom.size());
+            for (String name : mergedFrom) out.writeUTF(name);
+        }
+
+        public void add(String term, Collection<Posting> postings) throws IOException {
+            terms.add(term);
+            offsets.add(counter.count);
+            out.writeInt(postings.size());
+            for (Posting p : postings) {
+                out.writeInt(p.materialId);
+                out.writeInt(p.courseId);
+                out.writeInt(p.frequency);
+            }
+        }
+
+        public void finish() throws IOException {
+            long dictionaryOffset = counter.count;
+            out.writeInt(terms.size());
+            for (int i = 0; i < terms.size(); i++) {
+                out.writeUTF(terms.get(i));
+                out.writeLong(offsets.get(i));
+            }
+            out.writeLong(dictionaryOffset);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public List<Posting> postings(String term) throws IOException {
+        int idx = Arrays.binarySearch(terms, term);
+        if (idx < 0) return Collections.emptyList();
+
+        ByteBuffer countBuf = ByteBuffer.allocate(4);
+        readFully(countBuf, offsets[idx]);
+        int count = countBuf.flip().getInt();
+
+        ByteBuffer buf = ByteBuffer.allocate(count * POSTING_BYTES);
+        readFully(buf, offsets[idx] + 4);
+        buf.flip();
+        List<Posting> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new Posting(buf.getInt(), buf.getInt(), buf.getInt()));
+        }
+        return list;
+    }
+
+    public String[] terms() {
+        return terms;
+    }
+
+    public List<String> mergedFrom() {
+        return mergedFrom;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public long sizeBytes() {
+        return file.length();
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) throw new EOFException("Truncated index segment: " + file);
+            position += n;
+        }
+    }
+
+    // False if the segment was already closed; the caller must release() a retained segment
+    public boolean retain() {
+        while (true) {
+            int n = refs.get();
+            if (n == 0) return false;
+            if (refs.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    public void release() throws IOException {
+        if (refs.decrementAndGet() == 0) channel.close();
+    }
+
+    // Drops the index's own reference; searches still reading keep the file open until they finish
+    @Override
+    public void close() throws IOException {
+        release();
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package search;
+
+import database.DatabaseConnection;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Inverted index over study_materials (title, description) and messages (subject, message_text).
+// Postings are written as soon as the row they describe is committed, and removed once its delete is,
+// so the index stays current without re-scanning.
+public class SearchIndex {
+    public static final String MATERIAL = "material";
+    public static final String MESSAGE = "message";
+
+    // Matches in titles/subjects rank above matches in the body text
+    private static final int TITLE_WEIGHT = 3;
+    private static final int BODY_WEIGHT = 1;
+
+    public static void indexMaterial(Connection conn, int materialId, int courseId,
+                                     String title, String description) throws SQLException {
+        indexDocument(conn, MATERIAL, materialId, courseId, weigh(title, description));
+    }
+
+    public static void indexMessage(Connection conn, int messageId, int courseId,
+                                    String subject, String messageText) throws SQLException {
+        indexDocument(conn, MESSAGE, messageId, courseId, weigh(subject, messageText));
+    }
+
+    /** A material or message to index once its row is committed, see {@link #indexCommitted}. */
+    public static class Document {
+        final String docType;
+        final int docId;
+        final int courseId;
+        final String title;
+        final String body;
+
+        public Document(String docType, int docId, int courseId, String title, String body) {
+            this.docType = docType;
+            this.docId = docId;
+            this.courseId = courseId;
+            this.title = title;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Indexes rows that are already committed, each in a transaction of its own. Every upload and
+     * message updates the same hot search_terms rows, so deadlocks and lock timeouts happen here;
+     * MySQL rolls back the whole transaction for those, which is why this never shares one with
+     * the rows themselves. Those errors are retried; anything else, or a third failure, only costs
+     * search entries and is logged for the admin "Rebuild Search Index" action to repair.
+     */
+    public static void indexCommitted(Connection conn, List<Document> documents) {
+        for (Document doc : documents) {
+            retrying(conn, "index", doc.docType, doc.docId,
+                    c -> indexDocument(c, doc.docType, doc.docId, doc.courseId, weigh(doc.title, doc.body)));
+        }
+    }
+
+    /**
+     * Removes the postings of deleted rows and takes them off their terms' doc_freq, each document
+     * in a transaction of its own after the delete has committed, for the same reason as
+     * {@link #indexCommitted}. Searches skip ids whose row is gone, so a document this misses
+     * (a failure, or a delete made some other way) is only counted in doc_freq until a rebuild.
+     */
+    public static void removeCommitted(Connection conn, String docType, List<Integer> docIds) {
+        for (int docId : docIds) {
+            retrying(conn, "unindex", docType, docId, c -> removeDocument(c, docType, docId));
+        }
+    }
+
+    private interface IndexWork {
+        void run(Connection conn) throws SQLException;
+    }
+
+    // Lock conflicts are retried; anything else, or a third failure, is logged and left for a rebuild
+    private static void retrying(Connection conn, String action, String docType, int docId, IndexWork work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                DatabaseConnection.inTransaction(conn, c -> {
+                    work.run(c);
+                    return null;
+                });
+                return;
+            } catch (SQLException e) {
+                if (attempt < 3 && isLockConflict(e)) continue;
+                System.err.println("Could not " + action + " " + docType + " " + docId + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Deadlock (1213) or lock wait timeout (1205)
+    static boolean isLockConflict(SQLException e) {
+        return e.getErrorCode() == 1213 || e.getErrorCode() == 1205 || "40001".equals(e.getSQLState());
+    }
+
+    /**
+     * Returns the ids of matching documents, best match first. Only postings for the given
+     * courses are considered, so callers pass the student's cached enrolled course ids. Ids whose
+     * row no longer exists are left out even if their postings were never removed.
+     */
+    public static List<Integer> search(Connection conn, String docType, String query,
+                                       Collection<Integer> courseIds, int limit, int offset) throws SQLException {
+        List<String> terms = new ArrayList<>(Tokenizer.termFrequencies(query).keySet());
+        if (terms.isEmpty() || courseIds.isEmpty()) return Collections.emptyList();
+
+        // Documents matching more of the query terms come first, then rarer terms weigh more
+        String sql = "SELECT p.doc_id, COUNT(*) AS matched, " +
+                     "SUM(p.weight / LOG(2 + t.doc_freq)) AS score " +
+                     "FROM search_postings p " +
+                     "JOIN search_terms t ON t.term = p.term " +
+                     "WHERE p.term IN (" + placeholders(terms.size()) + ") " +
+                     "AND p.doc_type = ? " +
+                     "AND p.course_id IN (" + placeholders(courseIds.size()) + ") " +
+                     "AND EXISTS (SELECT 1 FROM " + sourceTable(docType) + " d WHERE d." + sourceKey(docType) + " = p.doc_id) " +
+                     "GROUP BY p.doc_id " +
+                     "ORDER BY matched DESC, score DESC, p.doc_id DESC " +
+                     "LIMIT ? OFFSET ?";
+
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            for (String term : terms) ps.setString(i++, term);
+            ps.setString(i++, docType);
+            for (Integer courseId : courseIds) ps.setInt(i++, courseId);
+            ps.setInt(i++, limit);
+            ps.setInt(i, offset);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt("doc_id"));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Re-creates the whole index from the source tables, e.g. for rows written before indexing
+     * existed. The new index is built in staging copies of the two tables while searches keep using
+     * the old one, then swapped in with a single RENAME TABLE; a failure part way leaves the old
+     * index untouched. Documents indexed into the old tables during the build are indexed again
+     * afterwards. Material files are re-queued for the background content index as well.
+     */
+    public static void rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // A crashed rebuild may have left its staging or old tables behind
+            stmt.execute("DROP TABLE IF EXISTS search_postings_staging, search_terms_staging, search_postings_old, search_terms_old");
+            stmt.execute("CREATE TABLE search_postings_staging LIKE search_postings");
+            stmt.execute("CREATE TABLE search_terms_staging LIKE search_terms");
+        }
+
+        Tables staging = new Tables("search_postings_staging", "search_terms_staging");
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT material_id, course_id, title, description, file_path, file_name FROM study_materials")) {
+            while (rs.next()) {
+                indexDocument(conn, staging, MATERIAL, rs.getInt("material_id"), rs.getInt("course_id"),
+                        weigh(rs.getString("title"), rs.getString("description")));
+                if (rs.getString("file_path") != null) {
+                    java.io.File file = new java.io.File(rs.getString("file_path"));
+                    String fileName = rs.getString("file_name") != null ? rs.getString("file_name")
+                                                                      : storage.Compression.logicalName(file);
+                    ContentIndex.get().submit(rs.getInt("material_id"), rs.getInt("course_id"), file, fileName);
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT message_id, course_id, subject, message_text FROM messages")) {
+            while (rs.next()) {
+                indexDocument(conn, staging, MESSAGE, rs.getInt("message_id"), rs.getInt("course_id"),
+                        weigh(rs.getString("subject"), rs.getString("message_text")));
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("RENAME TABLE search_postings TO search_postings_old, search_postings_staging TO search_postings, " +
+                         "search_terms TO search_terms_old, search_terms_staging TO search_terms");
+            stmt.execute("DROP TABLE search_postings_old, search_terms_old");
+        }
+        indexMissing(conn);
+    }
+
+    // Rows with no postings in the live index: those committed while a rebuild was reading, whose
+    // postings went to the tables it replaced (and rows without any terms, which stay without)
+    private static void indexMissing(Connection conn) throws SQLException {
+        List<Document> documents = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT m.material_id, m.course_id, m.title, m.description FROM study_materials m " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM search_postings p WHERE p.doc_type = 'material' AND p.doc_id = m.material_id)")) {
+            while (rs.next()) {
+                documents.add(new Document(MATERIAL, rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4)));
+            }
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT m.message_id, m.course_id, m.subject, m.message_text FROM messages m " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM search_postings p WHERE p.doc_type = 'message' AND p.doc_id = m.message_id)")) {
+            while (rs.next()) {
+                documents.add(new Document(MESSAGE, rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4)));
+            }
+        }
+        indexCommitted(conn, documents);
+    }
+
+    private static String sourceTable(String docType) {
+        return MATERIAL.equals(docType) ? "study_materials" : "messages";
+    }
+
+    private static String sourceKey(String docType) {
+        return MATERIAL.equals(docType) ? "material_id" : "message_id";
+    }
+
+    private static Map<String, Integer> weigh(String title, String body) {
+        Map<String, Integer> weights = new HashMap<>();
+        Tokenizer.termFrequencies(title).forEach((term, tf) -> weights.merge(term, tf * TITLE_WEIGHT, Integer::sum));
+        Tokenizer.termFrequencies(body).forEach((term, tf) -> weights.merge(term, tf * BODY_WEIGHT, Integer::sum));
+        return weights;
+    }
+
+    // The live index, or the staging copy a rebuild fills
+    private static class Tables {
+        final String postings;
+        final String terms;
+
+        Tables(String postings, String terms) {
+            this.postings = postings;
+            this.terms = terms;
+        }
+    }
+
+    private static final Tables LIVE = new Tables("search_postings", "search_terms");
+
+    private static void indexDocument(Connection conn, String docType, int docId, int courseId,
+                                      Map<String, Integer> weights) throws SQLException {
+        indexDocument(conn, LIVE, docType, docId, courseId, weights);
+    }
+
+    private static void indexDocument(Connection conn, Tables tables, String docType, int docId, int courseId,
+                                      Map<String, Integer> weights) throws SQLException {
+        if (weights.isEmpty()) return;
+
+        String postingSql = "INSERT INTO " + tables.postings + " (term, doc_type, doc_id, course_id, weight) VALUES (?, ?, ?, ?, ?)";
+        String termSql = "INSERT INTO " + tables.terms + " (term, doc_freq) VALUES (?, 1) " +
+                         "ON DUPLICATE KEY UPDATE doc_freq = doc_freq + 1";
+
+        // Terms in sorted order, so two writers lock shared search_terms rows in the same order
+        try (PreparedStatement postings = conn.prepareStatement(postingSql);
+             PreparedStatement terms = conn.prepareStatement(termSql)) {
+            for (Map.Entry<String, Integer> entry : new TreeMap<>(weights).entrySet()) {
+                postings.setString(1, entry.getKey());
+                postings.setString(2, docType);
+                postings.setInt(3, docId);
+                postings.setInt(4, courseId);
+                postings.setInt(5, entry.getValue());
+                postings.addBatch();
+
+                terms.setString(1, entry.getKey());
+                terms.addBatch();
+            }
+            postings.executeBatch();
+            terms.executeBatch();
+        }
+    }
+
+    private static void removeDocument(Connection conn, String docType, int docId) throws SQLException {
+        List<String> terms = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT term FROM search_postings WHERE doc_type = ? AND doc_id = ? ORDER BY term")) {
+            ps.setString(1, docType);
+            ps.setInt(2, docId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) terms.add(rs.getString(1));
+            }
+        }
+
+        // By primary key, so only this document's rows are locked, and sorted like indexDocument so
+        // the two take search_terms rows in the same order. A term counts down only for a posting
+        // this transaction actually deleted.
+        try (PreparedStatement posting = conn.prepareStatement(
+                     "DELETE FROM search_postings WHERE term = ? AND doc_type = ? AND doc_id = ?");
+             PreparedStatement freq = conn.prepareStatement(
+                     "UPDATE search_terms SET doc_freq = GREATEST(doc_freq - 1, 0) WHERE term = ?")) {
+            for (String term : terms) {
+                posting.setString(1, term);
+                posting.setString(2, docType);
+                posting.setInt(3, docId);
+                if (posting.executeUpdate() == 0) continue;
+                freq.setString(1, term);
+                freq.executeUpdate();
+            }
+        }
+    }
+
+    static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package search;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Streams the text of a material file into the tokenizer without loading the file into memory.
+// Plain text formats are read directly; Office Open XML and OpenDocument files are ZIP archives
+// whose text lives in XML parts, so those parts are streamed with the markup stripped.
+// PDF and legacy binary Office formats need a third-party parser and are skipped.
+public class TextExtractor {
+    private static final Set<String> PLAIN_TEXT = Set.of(
+            "txt", "md", "csv", "tsv", "log", "java", "py", "c", "cpp", "h", "js", "sql", "xml", "html", "htm", "json");
+    private static final Set<String> ZIPPED_XML = Set.of("docx", "pptx", "xlsx", "odt", "odp", "ods");
+
+    public static boolean isSupported(String fileName) {
+        String ext = extension(fileName);
+        return PLAIN_TEXT.contains(ext) || ZIPPED_XML.contains(ext);
+    }
+
+    public static void extract(String fileName, InputStream in, Consumer<String> sink) throws IOException {
+        String ext = extension(fileName);
+        if (PLAIN_TEXT.contains(ext)) {
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            if (ext.equals("xml") || ext.startsWith("htm")) reader = new MarkupStrippingReader(reader);
+            Tokenizer.tokenize(reader, sink);
+        } else if (ZIPPED_XML.contains(ext)) {
+            ZipInputStream zip = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (isTextPart(entry.getName())) {
+                    // The reader must not close the zip stream, only the current entry is consumed
+                    Reader reader = new InputStreamReader(new FilterInputStream(zip) {
+                        @Override public void close() { }
+                    }, StandardCharsets.UTF_8);
+                    Tokenizer.tokenize(new MarkupStrippingReader(reader), sink);
+                }
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static boolean isTextPart(String name) {
+        return name.equals("word/document.xml")
+                || (name.startsWith("ppt/slides/slide") && name.endsWith(".xml"))
+                || name.equals("xl/sharedStrings.xml")
+                || name.equals("content.xml");
+    }
+
+    static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // Drops everything between '<' and '>'. Paragraph/line/tab tags become spaces so words from
+    // adjacent paragraphs don't run together; other tags (e.g. Word text runs) join seamlessly.
+    private static class MarkupStrippingReader extends FilterReader {
+        private final StringBuilder tag = new StringBuilder();
+        private boolean inTag = false;
+
+        MarkupStrippingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            while (true) {
+                int n = in.read(cbuf, off, len);
+                if (n < 0) return -1;
+
+                int out = off;
+                for (int i = off; i < off + n; i++) {
+                    char ch = cbuf[i];
+                    if (inTag) {
+                        if (ch == '>') {
+                            inTag = false;
+                            if (isBreakTag(tag)) cbuf[out++] = ' ';
+                            tag.setLength(0);
+                        } else if (tag.length() < 32) {
+                            tag.append(ch);
+                        }
+                    } else if (ch == '<') {
+                        inTag = true;
+                    } else {
+                        cbuf[out++] = ch;
+                    }
+                }
+                // Only return once something survived, 0 would look like "no progress" to callers
+                if (out > off) return out - off;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] one = new char[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0];
+        }
+
+        private static boolean isBreakTag(StringBuilder tag) {
+            String name = tag.toString().replace("/", "").trim();
+            int space = name.indexOf(' ');
+            if (space >= 0) name = name.substring(0, space);
+            return name.equals("w:p") || name.equals("a:p") || name.equals("text:p") || name.equals("text:h")
+                    || name.equals("w:tab") || name.equals("w:br") || name.equals("si") || name.equals("p")
+                    || name.equals("br") || name.equals("div") || name.equals("li") || name.equals("td");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package search;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class Tokenizer {
+    public static final int MIN_TERM_LENGTH = 2;
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "have",
+            "in", "is", "it", "its", "of", "on", "or", "that", "the", "this", "to", "was",
+            "were", "will", "with");
+
+    // Splits text into lower-case terms on anything that is not a letter or digit
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isLetterOrDigit(ch)) {
+                current.append(ch);
+            } else {
+                emit(current, terms::add);
+            }
+        }
+        emit(current, terms::add);
+        return terms;
+    }
+
+    // Streaming variant for file contents: terms are handed to the sink as they are read
+    public static void tokenize(Reader reader, Consumer<String> sink) throws IOException {
+        char[] buf = new char[8192];
+        StringBuilder current = new StringBuilder();
+        int n;
+        while ((n = reader.read(buf)) > 0) {
+            for (int i = 0; i < n; i++) {
+                char ch = buf[i];
+                if (Character.isLetterOrDigit(ch)) {
+                    // Overlong runs (base64 blobs, hashes) are never useful terms
+                    if (current.length() <= MAX_TERM_LENGTH) current.append(ch);
+                } else {
+                    emit(current, sink);
+                }
+            }
+        }
+        emit(current, sink);
+    }
+
+    // Term -> number of occurrences, used as the posting weight
+    public static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : tokenize(text)) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    private static void emit(StringBuilder current, Consumer<String> sink) {
+        if (current.length() == 0) return;
+        String term = normalize(current);
+        current.setLength(0);
+        if (term != null) sink.accept(term);
+    }
+
+    static String normalize(CharSequence raw) {
+        if (raw.length() < MIN_TERM_LENGTH || raw.length() > MAX_TERM_LENGTH) return null;
+        String term = raw.toString().toLowerCase(Locale.ROOT);
+        return STOP_WORDS.contains(term) ? null : term;
+    }
+}
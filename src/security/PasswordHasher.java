@@ -0,0 +1,125 @@
+package security;
+
+import config.AppConfig;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes, stored as
+ *
+ *   pbkdf2$&lt;iterations&gt;$&lt;base64 salt&gt;$&lt;base64 hash&gt;
+ *
+ * New hashes use lms.password.iterations (default 120000); older ones keep working at their own
+ * cost and report {@link #needsRehash}. A stored value without the prefix is a plaintext password
+ * from before hashing; it still verifies, so the caller can replace it on that login.
+ *
+ * Hashing is deliberately slow, so it runs on a pool with one thread per core and a bounded queue
+ * (lms.password.queue, default 256): a login storm waits its turn there instead of taking every
+ * request thread, and a full queue refuses with {@link java.util.concurrent.RejectedExecutionException}.
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final byte[] DUMMY_SALT = new byte[SALT_BYTES];
+    private static ThreadPoolExecutor pool;
+
+    private static int iterations() {
+        return Math.max(10_000, AppConfig.getInt("lms.password.iterations", 120_000));
+    }
+
+    private static synchronized ThreadPoolExecutor pool() {
+        if (pool == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            AtomicInteger n = new AtomicInteger();
+            pool = new ThreadPoolExecutor(cores, cores, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, AppConfig.getInt("lms.password.queue", 256))), r -> {
+                        Thread t = new Thread(r, "password-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        int iterations = iterations();
+        byte[] hash = run(() -> pbkdf2(password, salt, iterations));
+        Base64.Encoder b64 = Base64.getEncoder();
+        return PREFIX + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
+
+    /**
+     * A null stored value (no such user) still costs a full hash at the current setting, so the
+     * response time doesn't tell which usernames exist.
+     */
+    public static boolean verify(String password, String stored) {
+        if (stored == null) {
+            int iterations = iterations();
+            run(() -> pbkdf2(password, DUMMY_SALT, iterations));
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        int iterations = Integer.parseInt(parts[1]);
+        byte[] salt = Base64.getDecoder().decode(parts[2]);
+        byte[] expected = Base64.getDecoder().decode(parts[3]);
+        byte[] actual = run(() -> pbkdf2(password, salt, iterations));
+        return MessageDigest.isEqual(actual, expected);
+    }
+
+    // True for plaintext and for hashes made at a lower cost than the current setting
+    public static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return true;
+        String[] parts = stored.split("\\$");
+        return parts.length != 4 || Integer.parseInt(parts[1]) < iterations();
+    }
+
+    /** A stored value in the format above, from the parts of a hash kept elsewhere. */
+    public static String format(int iterations, String base64Salt, String base64Hash) {
+        return PREFIX + iterations + "$" + base64Salt + "$" + base64Hash;
+    }
+
+    private interface Work {
+        byte[] compute() throws GeneralSecurityException;
+    }
+
+    private static byte[] run(Work work) {
+        try {
+            return pool().submit(work::compute).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
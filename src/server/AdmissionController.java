@@ -0,0 +1,168 @@
+package server;
+
+import config.AppConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets in front of an expensive route (login, enrollment), so a rush is admitted at a
+ * rate the database can take instead of all at once.
+ *
+ * Each caller (username or user id) has a small bucket of its own, starting full, and is refused
+ * straight away when it is empty; a request refused as busy gives its token back. All callers share one bucket refilled at lms.admission.&lt;name&gt;.rate per
+ * second. When it is empty a request is given the next free slot, in arrival order, and waits for
+ * it; a request whose slot is more than lms.admission.&lt;name&gt;.maxWaitMs away, or that would
+ * make more than lms.admission.&lt;name&gt;.maxQueue waiters, is refused with 429 and a
+ * Retry-After instead of joining a queue that would time out anyway.
+ *
+ * Waiting parks the request thread. On a bounded thread pool only the server's waiter permits
+ * (a quarter of lms.server.threads, shared by all routes) may be parked at once, and a request
+ * running on the accepting thread is never parked; both are refused with 429 instead, so a rush
+ * can't take the threads every other route needs.
+ */
+class AdmissionController {
+    // Global bucket, kept as the time its next token is due (GCRA): each admission moves it on by
+    // one interval, and it never lags now by more than the burst
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long maxWaitNanos;
+    private final int maxQueue;
+    // Null when request threads are virtual
+    private final Semaphore threadPermits;
+    private long nextFree;
+    private int waiting;
+
+    private final long userIntervalNanos;
+    private final long userBurstNanos;
+    private final Map<String, long[]> users = new ConcurrentHashMap<>();
+    private long lastSwept = System.nanoTime();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong refusedUser = new AtomicLong();
+    private final AtomicLong refusedBusy = new AtomicLong();
+    private int maxWaiting;
+
+    /**
+     * @param rate        default requests per second admitted overall
+     * @param userPerMinute default requests per minute from one caller
+     * @param threadPermits request threads that may be parked waiting, or null for no limit
+     */
+    AdmissionController(String name, int rate, int userPerMinute, Semaphore threadPermits) {
+        this.threadPermits = threadPermits;
+        String prefix = "lms.admission." + name + ".";
+        int r = Math.max(1, AppConfig.getInt(prefix + "rate", rate));
+        intervalNanos = TimeUnit.SECONDS.toNanos(1) / r;
+        burstNanos = intervalNanos * Math.max(1, AppConfig.getInt(prefix + "burst", r));
+        // Starts full
+        nextFree = System.nanoTime() - burstNanos;
+        maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong(prefix + "maxWaitMs", 3000));
+        maxQueue = AppConfig.getInt(prefix + "maxQueue", 1000);
+        int perUser = Math.max(1, AppConfig.getInt(prefix + "userPerMinute", userPerMinute));
+        userIntervalNanos = TimeUnit.MINUTES.toNanos(1) / perUser;
+        // A caller may use a quarter of its minute at once, at least one request
+        userBurstNanos = userIntervalNanos * Math.max(1, perUser / 4);
+    }
+
+    /** Returns once the request may run; throws 429 if it may not. */
+    void admit(String caller) throws ApiException {
+        long now = System.nanoTime();
+        long userWait = takeUserToken(caller, now);
+        if (userWait > 0) {
+            refusedUser.incrementAndGet();
+            throw busy("Too many attempts. Please try again in ", userWait);
+        }
+
+        long slot;
+        synchronized (this) {
+            slot = Math.max(nextFree, now - burstNanos);
+            long wait = slot - now;
+            if (wait > maxWaitNanos || (wait > 0 && (waiting >= maxQueue || !mayPark()))) {
+                refusedBusy.incrementAndGet();
+                returnUserToken(caller);
+                throw busy("The LMS is busy right now. Please try again in ", wait);
+            }
+            nextFree = slot + intervalNanos;
+            if (wait > 0) {
+                waiting++;
+                maxWaiting = Math.max(maxWaiting, waiting);
+            }
+        }
+
+        if (slot > now) {
+            queued.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(slot - now);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                returnUserToken(caller);
+                throw new ApiException(503, "Interrupted");
+            } finally {
+                if (threadPermits != null) threadPermits.release();
+                synchronized (this) {
+                    waiting--;
+                }
+            }
+        }
+        admitted.incrementAndGet();
+    }
+
+    // Takes a waiter permit if this thread may be parked
+    private boolean mayPark() {
+        return threadPermits == null || (AppServer.onRequestWorker() && threadPermits.tryAcquire());
+    }
+
+    // 0 if the caller had a token, otherwise how long until it has one
+    private long takeUserToken(String caller, long now) {
+        sweep(now);
+        // A new caller starts with a full bucket, the same as one the sweep forgot
+        long[] next = users.computeIfAbsent(caller, k -> new long[]{now - userBurstNanos});
+        synchronized (next) {
+            long due = Math.max(next[0], now - userBurstNanos);
+            if (due - now > 0) return due - now;
+            next[0] = due + userIntervalNanos;
+            return 0;
+        }
+    }
+
+    // Gives back the token of a request that was not admitted after all
+    private void returnUserToken(String caller) {
+        long[] next = users.get(caller);
+        if (next == null) return;
+        synchronized (next) {
+            next[0] -= userIntervalNanos;
+        }
+    }
+
+    // Forgets callers whose buckets are full again, so the map stays the size of the current rush
+    private void sweep(long now) {
+        synchronized (users) {
+            if (now - lastSwept < TimeUnit.MINUTES.toNanos(1)) return;
+            lastSwept = now;
+        }
+        users.values().removeIf(next -> next[0] <= now - userBurstNanos);
+    }
+
+    private ApiException busy(String message, long waitNanos) {
+        int seconds = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        return new ApiException(429, message + seconds + (seconds == 1 ? " second." : " seconds."), seconds);
+    }
+
+    Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        synchronized (this) {
+            status.put("waiting", waiting);
+            status.put("maxWaiting", maxWaiting);
+        }
+        status.put("admitted", admitted.get());
+        status.put("queued", queued.get());
+        status.put("refusedPerUser", refusedUser.get());
+        status.put("refusedBusy", refusedBusy.get());
+        return status;
+    }
+}
@@ -0,0 +1,18 @@
+package server;
+
+// A request the API refuses; the status and message are sent back to the client as they are
+public class ApiException extends Exception {
+    public final int status;
+    // Sent as Retry-After when above 0
+    public final int retryAfterSeconds;
+
+    public ApiException(int status, String message) {
+        this(status, message, 0);
+    }
+
+    public ApiException(int status, String message, int retryAfterSeconds) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,507 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import config.AppConfig;
+import database.ChangeLog;
+import database.ConnectionPool;
+import sync.ChangeFeed;
+import sync.ClusterBus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless mode: the operations of the dashboards as a JSON API on the JDK's built-in HTTP
+ * server, so desktops talk to one server instead of each holding a MySQL connection.
+ *
+ * Every request runs on its own virtual thread where the JVM has them (Java 21+); on older JVMs a
+ * bounded thread pool is used instead. Either way the database sees at most lms.db.poolSize
+ * connections, because all requests share one {@link ConnectionPool}.
+ *
+ * Clients log in with POST /api/login and send the returned token as "Authorization: Bearer ..."
+ * on every other call. Sessions live in memory and end on logout or after lms.server.sessionHours
+ * without use.
+ *
+ * List reads carry an ETag built from {@link VersionStamps}. A client that sends it back in
+ * If-None-Match gets 304 Not Modified while nothing behind the list has changed, decided from
+ * memory without a database query.
+ *
+ * Several servers can share one database behind a load balancer (lms.cluster.enabled=true). They
+ * tell each other about their writes through a {@link ClusterBus}. Sessions stay on the server
+ * that created them, so the load balancer has to keep each client on one server.
+ */
+public class AppServer {
+    private static final int MAX_JSON_BODY = 1 << 20;
+    static final Object STREAMED = new Object();
+
+    public interface Handler {
+        // Returns the response body as JSON-able values, null for 204, or STREAMED if already sent
+        Object handle(Request request) throws Exception;
+    }
+
+    public interface Tagger {
+        // The ETag the response would have right now
+        String etag(Request request) throws Exception;
+    }
+
+    public static class Session {
+        public final String token;
+        public final int userId;
+        public final String fullName;
+        public final String role;
+        volatile long lastSeen = System.currentTimeMillis();
+
+        Session(String token, int userId, String fullName, String role) {
+            this.token = token;
+            this.userId = userId;
+            this.fullName = fullName;
+            this.role = role;
+        }
+    }
+
+    private static class Route {
+        final String method;
+        final String[] segments;
+        final String role;
+        final Tagger tagger;
+        final Handler handler;
+
+        Route(String method, String path, String role, Tagger tagger, Handler handler) {
+            this.method = method;
+            this.segments = path.substring(1).split("/");
+            this.role = role;
+            this.tagger = tagger;
+            this.handler = handler;
+        }
+
+        // Fills in {name} segments; null if the path doesn't match
+        Map<String, String> match(String[] path) {
+            if (path.length != segments.length) return null;
+            Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < segments.length; i++) {
+                String s = segments[i];
+                if (s.startsWith("{")) {
+                    params.put(s.substring(1, s.length() - 1), path[i]);
+                } else if (!s.equals(path[i])) {
+                    return null;
+                }
+            }
+            return params;
+        }
+    }
+
+    public static class Request {
+        private final HttpExchange exchange;
+        private final Session session;
+        private final Map<String, String> params;
+        private Map<String, Object> body;
+
+        Request(HttpExchange exchange, Session session, Map<String, String> params) {
+            this.exchange = exchange;
+            this.session = session;
+            this.params = params;
+        }
+
+        public Session session() { return session; }
+        public HttpExchange exchange() { return exchange; }
+        public InputStream input() { return exchange.getRequestBody(); }
+
+        // Path and query parameters
+        public String param(String name) {
+            return params.get(name);
+        }
+
+        public int intParam(String name) throws ApiException {
+            Integer value = optionalIntParam(name);
+            if (value == null) throw new ApiException(400, "Missing parameter " + name);
+            return value;
+        }
+
+        public Integer optionalIntParam(String name) throws ApiException {
+            String value = params.get(name);
+            if (value == null || value.isEmpty()) return null;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Parameter " + name + " must be a number");
+            }
+        }
+
+        public Map<String, Object> body() throws ApiException, IOException {
+            if (body == null) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                int n;
+                InputStream in = exchange.getRequestBody();
+                while ((n = in.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, n);
+                    if (buffer.size() > MAX_JSON_BODY) throw new ApiException(413, "Request body too large");
+                }
+                String text = buffer.toString(StandardCharsets.UTF_8);
+                try {
+                    body = text.isBlank() ? new LinkedHashMap<>() : Json.parseObject(text);
+                } catch (IllegalArgumentException e) {
+                    throw new ApiException(400, "Malformed JSON: " + e.getMessage());
+                }
+            }
+            return body;
+        }
+
+        public String string(String field) throws ApiException, IOException {
+            String value = optionalString(field);
+            if (value == null || value.isBlank()) throw new ApiException(400, "Missing field " + field);
+            return value;
+        }
+
+        public String optionalString(String field) throws ApiException, IOException {
+            Object value = body().get(field);
+            return value == null ? null : value.toString();
+        }
+
+        public int integer(String field) throws ApiException, IOException {
+            Object value = body().get(field);
+            if (value instanceof Number n) return n.intValue();
+            if (value instanceof String s) {
+                try {
+                    return Integer.parseInt(s.trim());
+                } catch (NumberFormatException e) {
+                    // Reported below
+                }
+            }
+            throw new ApiException(400, "Field " + field + " must be a number");
+        }
+    }
+
+    private final HttpServer http;
+    private final ExecutorService executor;
+    private final ConnectionPool pool;
+    private final VersionStamps stamps = new VersionStamps();
+    private final ClusterBus bus;
+    private final SeatReservations seats;
+    private final Map<String, AdmissionController> admission = new ConcurrentHashMap<>();
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ChangeFeed.Listener userChanges = this::endSessionsOfChangedUsers;
+    private final long sessionTimeoutMillis;
+    private final ScheduledExecutorService sweeper;
+    private final SecureRandom random = new SecureRandom();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final boolean virtualThreads;
+    // Request threads an admission queue may park at once; null on virtual threads, where parking is cheap
+    private final Semaphore admissionWaiters;
+    private static final ThreadLocal<Boolean> requestWorker = ThreadLocal.withInitial(() -> false);
+
+    private AppServer(int port) throws IOException {
+        pool = new ConnectionPool(AppConfig.getInt("lms.db.poolSize", 20), AppConfig.getLong("lms.db.poolTimeoutMs", 5000));
+        sessionTimeoutMillis = TimeUnit.HOURS.toMillis(AppConfig.getInt("lms.server.sessionHours", 8));
+
+        ExecutorService virtual = virtualThreadExecutor();
+        virtualThreads = virtual != null;
+        int threads = AppConfig.getInt("lms.server.threads", 200);
+        executor = virtual != null ? virtual : boundedExecutor(threads);
+        // Most of the pool stays free for other routes while a rush queues for admission
+        admissionWaiters = virtual != null ? null : new Semaphore(Math.max(1, threads / 4));
+
+        http = HttpServer.create(new InetSocketAddress(port), AppConfig.getInt("lms.server.backlog", 256));
+        http.setExecutor(executor);
+        http.createContext("/api/", this::dispatch);
+        seats = new SeatReservations(pool);
+        new LmsApi(pool, stamps, seats).register(this);
+        // Writes made by desktops and other servers reach the stamps through the change log
+        ChangeFeed.get().addDirectListener(stamps);
+        ChangeFeed.get().addDirectListener(seats);
+        ChangeFeed.get().addDirectListener(userChanges);
+        if (ClusterBus.enabled()) {
+            bus = new ClusterBus(AppConfig.get("lms.cluster.node", defaultNodeId(port)));
+            stamps.attach(bus);
+            bus.subscribe(ClusterBus.SESSIONS, this::endSessionsOf);
+            bus.start();
+        } else {
+            bus = null;
+        }
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireSessions, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public static AppServer start(int port) throws IOException {
+        AppServer server = new AppServer(port);
+        server.http.start();
+        System.out.println("LMS server listening on port " + port + " ("
+                + (server.virtualThreads ? "virtual threads" : "thread pool") + ", "
+                + server.pool.size() + " database connections"
+                + (server.bus != null ? ", cluster node " + server.bus.nodeId() : "") + ")");
+        return server;
+    }
+
+    public void stop() {
+        http.stop(2);
+        ChangeFeed.get().removeListener(stamps);
+        ChangeFeed.get().removeListener(seats);
+        ChangeFeed.get().removeListener(userChanges);
+        if (bus != null) bus.stop();
+        sweeper.shutdownNow();
+        executor.shutdown();
+        pool.close();
+        stopped.countDown();
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    // Host and port tell apart two servers started on one machine
+    private static String defaultNodeId(int port) {
+        try {
+            return InetAddress.getLocalHost().getHostName() + ":" + port;
+        } catch (IOException e) {
+            return "localhost:" + port;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() only exists from Java 21 on, so it is looked up at run time
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // When the queue is full the accepting thread runs the request itself, which slows accepting down
+    private static ExecutorService boundedExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+                    Thread t = new Thread(() -> {
+                        requestWorker.set(true);
+                        r.run();
+                    }, "http-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    // role is "student", "teacher" or "admin"; null means any logged-in user
+    void route(String method, String path, String role, Handler handler) {
+        routes.add(new Route(method, path, role, null, handler));
+    }
+
+    // A GET whose response can be revalidated with its ETag
+    void taggedRoute(String path, String role, Tagger tagger, Handler handler) {
+        routes.add(new Route("GET", path, role, tagger, handler));
+    }
+
+    // Login is the one route that runs without a session
+    void publicRoute(String method, String path, Handler handler) {
+        routes.add(new Route(method, path, "*", null, handler));
+    }
+
+    // Shared by the routes that name it; rate and userPerMinute are defaults for lms.admission.<name>.*
+    AdmissionController admission(String name, int rate, int userPerMinute) {
+        return admission.computeIfAbsent(name, n -> new AdmissionController(n, rate, userPerMinute, admissionWaiters));
+    }
+
+    // False on the accepting thread, which runs requests itself when the pool is full (CallerRunsPolicy)
+    static boolean onRequestWorker() {
+        return requestWorker.get();
+    }
+
+    Session createSession(int userId, String fullName, String role) {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) token.append(String.format("%02x", b));
+        Session session = new Session(token.toString(), userId, fullName, role);
+        sessions.put(session.token, session);
+        return session;
+    }
+
+    void endSession(Session session) {
+        sessions.remove(session.token);
+    }
+
+    // A user was deleted or changed on another server or desktop. A full flush (key null) keeps the
+    // sessions: a deleted user's requests find nothing in the database anyway.
+    private void endSessionsOf(String userId) {
+        if (userId == null) return;
+        endSessionsOf(Integer.parseInt(userId));
+    }
+
+    private void endSessionsOf(int userId) {
+        sessions.values().removeIf(s -> s.userId == userId);
+    }
+
+    // The change log reaches every server, clustered or not, within a poll interval. Desktops from
+    // before the users entry record a deletion only as the user's enrollments going (course null).
+    private void endSessionsOfChangedUsers(List<ChangeFeed.Change> changes) {
+        for (ChangeFeed.Change c : changes) {
+            if (c.userId == null) continue;
+            boolean accountChanged = ChangeLog.USERS.equals(c.table) && !ChangeLog.INSERT.equals(c.op);
+            boolean userDeleted = ChangeLog.ENROLLMENTS.equals(c.table) && ChangeLog.DELETE.equals(c.op) && c.courseId == null;
+            if (accountChanged || userDeleted) endSessionsOf(c.userId);
+        }
+    }
+
+    ConnectionPool pool() {
+        return pool;
+    }
+
+    Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("virtualThreads", virtualThreads);
+        status.put("sessions", sessions.size());
+        status.put("poolSize", pool.size());
+        status.put("poolInUse", pool.inUse());
+        status.put("poolWaiting", pool.waiting());
+        status.put("enrollment", seats.status());
+        Map<String, Object> limits = new LinkedHashMap<>();
+        admission.forEach((name, controller) -> limits.put(name, controller.status()));
+        status.put("admission", limits);
+        if (bus != null) status.put("cluster", bus.status());
+        return status;
+    }
+
+    private void expireSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTimeoutMillis;
+        sessions.values().removeIf(s -> s.lastSeen < cutoff);
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+            Route matched = null;
+            Map<String, String> params = null;
+            boolean pathKnown = false;
+            for (Route r : routes) {
+                Map<String, String> p = r.match(path);
+                if (p == null) continue;
+                pathKnown = true;
+                if (r.method.equals(exchange.getRequestMethod())) {
+                    matched = r;
+                    params = p;
+                    break;
+                }
+            }
+            if (matched == null) {
+                throw new ApiException(pathKnown ? 405 : 404, pathKnown ? "Method not allowed" : "Not found");
+            }
+            parseQuery(exchange.getRequestURI().getRawQuery(), params);
+
+            Session session = null;
+            if (!"*".equals(matched.role)) {
+                session = authenticate(exchange);
+                if (matched.role != null && !matched.role.equals(session.role)) {
+                    throw new ApiException(403, "Not allowed for role " + session.role);
+                }
+            }
+
+            Request request = new Request(exchange, session, params);
+            if (matched.tagger != null) {
+                // Computed before the handler runs: a write landing in between changes the next
+                // tag, so a response is never labelled newer than it is
+                String etag = matched.tagger.etag(request);
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Cache-Control", "private, no-cache");
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+
+            Object result = matched.handler.handle(request);
+            if (result == STREAMED) return;
+            if (result == null) {
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                sendJson(exchange, 200, result);
+            }
+        } catch (ApiException e) {
+            if (e.retryAfterSeconds > 0) exchange.getResponseHeaders().set("Retry-After", String.valueOf(e.retryAfterSeconds));
+            sendError(exchange, e.status, e.getMessage());
+        } catch (SQLException e) {
+            // The driver's message names tables and constraints; it stays in the server log
+            System.err.println(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " failed:");
+            e.printStackTrace();
+            sendError(exchange, 500, "Database error");
+        } catch (IOException e) {
+            // Usually the client went away mid-response
+            e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Session authenticate(HttpExchange exchange) throws ApiException {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) throw new ApiException(401, "Login required");
+        Session session = sessions.get(header.substring(7).trim());
+        if (session == null || System.currentTimeMillis() - session.lastSeen > sessionTimeoutMillis) {
+            throw new ApiException(401, "Session expired, please log in again");
+        }
+        session.lastSeen = System.currentTimeMillis();
+        return session;
+    }
+
+    private static void parseQuery(String query, Map<String, String> params) {
+        if (query == null) return;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.putIfAbsent(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+    }
+
+    static void sendJson(HttpExchange exchange, int status, Object value) throws IOException {
+        byte[] bytes = Json.write(value).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            sendJson(exchange, status, Map.of("error", message == null ? "Error" : message));
+        } catch (IOException e) {
+            // Headers were already sent, or the client is gone
+        }
+    }
+}
@@ -0,0 +1,694 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import config.AppConfig;
+import database.ChangeLog;
+import database.ConnectionPool;
+import database.Enrollments;
+import database.Notifications;
+import database.UserAccounts;
+import database.Waitlist;
+import search.SearchIndex;
+import security.PasswordHasher;
+import storage.BlobCache;
+import storage.Compression;
+import storage.SubmissionStore;
+import sync.InboxFanout;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The endpoints of {@link AppServer}. Each one does what the matching dashboard action does, with
+ * the same queries and the same change-log, search index and inbox side effects, but checks that
+ * the caller may touch the course it names instead of trusting the client. Every write also bumps
+ * the {@link VersionStamps} of what it changed, and the list reads are tagged from them.
+ *
+ *   POST /api/login                            username, password, role
+ *   POST /api/logout
+ *   GET  /api/courses                          the caller's courses (all of them for admins)
+ *   GET  /api/courses/available                student: courses not enrolled in
+ *   POST /api/enrollments                      student: courseId; 409 when the course is full
+ *   DELETE /api/enrollments/{courseId}         student: drop the course
+ *   POST /api/waitlist                         student: courseId; position 0 means enrolled
+ *   POST /api/notifications/read               unread notifications, marked read
+ *   GET  /api/assignments[?courseId=]
+ *   POST /api/assignments                      teacher: courseId, title, description, dueDate, maxMarks
+ *   POST /api/assignments/{id}/submission      student: comments
+ *   PUT  /api/assignments/{id}/submission/file student: raw file body, ?name=&amp;comments=
+ *   GET  /api/submissions[?assignmentId=]      teacher
+ *   PUT  /api/submissions/{id}/marks           teacher: marks
+ *   GET  /api/materials[?courseId=]
+ *   GET  /api/materials/{id}/content           the file itself
+ *   GET  /api/messages[?courseId=]
+ *   POST /api/messages                         teacher: courseId, subject, text
+ *   GET  /api/status                           admin: sessions and pool use
+ */
+class LmsApi {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ConnectionPool pool;
+    private final VersionStamps stamps;
+    private final SeatReservations seats;
+    // Course ids per user, re-read only when the stamps they were read under change
+    private final Map<Integer, Scope> scopes = new ConcurrentHashMap<>();
+    private AppServer server;
+    private AdmissionController loginAdmission;
+    private AdmissionController enrollAdmission;
+
+    private static class Scope {
+        final String version;
+        final List<Integer> courseIds;
+
+        Scope(String version, List<Integer> courseIds) {
+            this.version = version;
+            this.courseIds = courseIds;
+        }
+    }
+
+    LmsApi(ConnectionPool pool, VersionStamps stamps, SeatReservations seats) {
+        this.pool = pool;
+        this.stamps = stamps;
+        this.seats = seats;
+    }
+
+    void register(AppServer server) {
+        this.server = server;
+        // Login and enrollment are what everyone does at once when registration opens
+        loginAdmission = server.admission("login", 50, 10);
+        enrollAdmission = server.admission("enroll", 100, 30);
+        server.publicRoute("POST", "/api/login", this::login);
+        server.route("POST", "/api/logout", null, this::logout);
+        server.route("GET", "/api/status", "admin", r -> server.status());
+
+        server.taggedRoute("/api/courses", null,
+                r -> tag(r, ChangeLog.COURSES, ChangeLog.ENROLLMENTS), this::courses);
+        server.taggedRoute("/api/courses/available", "student",
+                r -> tag(r, ChangeLog.COURSES, ChangeLog.ENROLLMENTS), this::availableCourses);
+        server.route("POST", "/api/enrollments", "student", this::enroll);
+        server.route("DELETE", "/api/enrollments/{id}", "student", this::drop);
+        server.route("POST", "/api/waitlist", "student", this::joinWaitlist);
+        server.route("POST", "/api/notifications/read", null, this::readNotifications);
+
+        server.taggedRoute("/api/assignments", null,
+                r -> tag(r, ChangeLog.ENROLLMENTS, ChangeLog.ASSIGNMENTS, ChangeLog.SUBMISSIONS), this::assignments);
+        server.route("POST", "/api/assignments", "teacher", this::createAssignment);
+        server.route("POST", "/api/assignments/{id}/submission", "student", this::submit);
+        server.route("PUT", "/api/assignments/{id}/submission/file", "student", this::submitFile);
+        server.taggedRoute("/api/submissions", "teacher",
+                r -> tag(r, ChangeLog.ASSIGNMENTS, ChangeLog.SUBMISSIONS), this::submissions);
+        server.route("PUT", "/api/submissions/{id}/marks", "teacher", this::grade);
+
+        server.taggedRoute("/api/materials", null,
+                r -> tag(r, ChangeLog.ENROLLMENTS, ChangeLog.STUDY_MATERIALS), this::materials);
+        server.route("GET", "/api/materials/{id}/content", null, this::materialContent);
+
+        server.taggedRoute("/api/messages", null,
+                r -> tag(r, ChangeLog.ENROLLMENTS, ChangeLog.MESSAGES), this::messages);
+        server.route("POST", "/api/messages", "teacher", this::sendMessage);
+    }
+
+    private Object login(AppServer.Request req) throws Exception {
+        String username = req.string("username");
+        String password = req.string("password");
+        String role = req.string("role");
+        loginAdmission.admit(username.toLowerCase(Locale.ROOT));
+        UserAccounts.Account account = pool.withConnection(c -> UserAccounts.find(c, username, role));
+        // Hashes are computed with no database connection held; an unknown username costs a hash too
+        boolean valid;
+        try {
+            valid = PasswordHasher.verify(password, account != null ? account.password : null);
+        } catch (RejectedExecutionException e) {
+            throw new ApiException(503, "The LMS is busy right now. Please try again in a few seconds.", 5);
+        }
+        if (!valid) throw new ApiException(401, "Invalid credentials!");
+        if (PasswordHasher.needsRehash(account.password)) {
+            try {
+                String newHash = PasswordHasher.hash(password);
+                pool.withConnection(c -> {
+                    UserAccounts.upgrade(c, account, newHash);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                // Left for a later login
+            }
+        }
+
+        AppServer.Session session = server.createSession(account.userId, account.fullName, role);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("token", session.token);
+        result.put("userId", session.userId);
+        result.put("fullName", session.fullName);
+        result.put("role", session.role);
+        return result;
+    }
+
+    private Object logout(AppServer.Request req) {
+        server.endSession(req.session());
+        scopes.remove(req.session().userId);
+        return null;
+    }
+
+    /**
+     * The ETag of a list read: the caller's course scope and the stamps of the tables the list is
+     * built from. Course and user names shown in the lists aren't tracked; they change rarely and
+     * are picked up with the next change to the list itself.
+     */
+    private String tag(AppServer.Request req, String... tables) throws SQLException {
+        AppServer.Session s = req.session();
+        String query = req.exchange().getRequestURI().getRawQuery();
+        VersionStamps.Tag tag = stamps.tag(req.exchange().getRequestURI().getPath()
+                + (query != null ? "?" + query : "") + "|" + s.role + s.userId);
+        return switch (s.role) {
+            case "student" -> tag.student(s.userId, courseScope(s), tables).etag();
+            case "teacher" -> tag.courses(courseScope(s), tables).etag();
+            default -> tag.everything(tables).etag();
+        };
+    }
+
+    // A student's enrolled courses or a teacher's own courses
+    private List<Integer> courseScope(AppServer.Session s) throws SQLException {
+        boolean student = "student".equals(s.role);
+        String version = stamps.get(ChangeLog.COURSES + ":*") + "/" + (student
+                ? stamps.get(ChangeLog.ENROLLMENTS + ":*") + "/" + stamps.get(ChangeLog.ENROLLMENTS + ":u" + s.userId)
+                : "teacher");
+        Scope cached = scopes.get(s.userId);
+        if (cached != null && cached.version.equals(version)) return cached.courseIds;
+
+        List<Integer> ids = new ArrayList<>();
+        for (Map<String, Object> row : query(student
+                ? "SELECT course_id FROM enrollments WHERE student_id = ? ORDER BY course_id"
+                : "SELECT course_id FROM courses WHERE teacher_id = ? ORDER BY course_id", s.userId)) {
+            ids.add(((Number) row.get("course_id")).intValue());
+        }
+        scopes.put(s.userId, new Scope(version, ids));
+        return ids;
+    }
+
+    private Object courses(AppServer.Request req) throws Exception {
+        AppServer.Session s = req.session();
+        switch (s.role) {
+            case "student":
+                return query("SELECT c.course_id, c.course_code, c.course_name, u.full_name AS teacher, c.credits, e.grade " +
+                             "FROM enrollments e " +
+                             "JOIN courses c ON e.course_id = c.course_id " +
+                             "JOIN users u ON c.teacher_id = u.user_id " +
+                             "WHERE e.student_id = ?", s.userId);
+            case "teacher":
+                return query("SELECT c.course_id, c.course_code, c.course_name, c.credits, " +
+                             "COUNT(e.student_id) AS student_count " +
+                             "FROM courses c " +
+                             "LEFT JOIN enrollments e ON c.course_id = e.course_id " +
+                             "WHERE c.teacher_id = ? " +
+                             "GROUP BY c.course_id", s.userId);
+            default:
+                return query("SELECT c.course_id, c.course_code, c.course_name, u.full_name AS teacher, c.credits " +
+                             "FROM courses c LEFT JOIN users u ON c.teacher_id = u.user_id ORDER BY c.course_id");
+        }
+    }
+
+    private Object availableCourses(AppServer.Request req) throws Exception {
+        // seats_left is null for a course without a limit
+        return query("SELECT c.course_id, c.course_code, c.course_name, " +
+                     "c.capacity - (SELECT COUNT(*) FROM enrollments e WHERE e.course_id = c.course_id) AS seats_left " +
+                     "FROM courses c " +
+                     "WHERE c.course_id NOT IN (SELECT course_id FROM enrollments WHERE student_id = ?)",
+                     req.session().userId);
+    }
+
+    private Object enroll(AppServer.Request req) throws Exception {
+        int studentId = req.session().userId;
+        int courseId = req.integer("courseId");
+        enrollAdmission.admit(String.valueOf(studentId));
+        SeatReservations.Result result = seats.enroll(courseId, studentId);
+        switch (result.outcome) {
+            case NO_COURSE -> throw new ApiException(404, "Course not found");
+            case ALREADY_ENROLLED -> throw new ApiException(409, "Already enrolled in this course");
+            case FULL -> throw new ApiException(409, "Course is full");
+            default -> { }
+        }
+        stamps.changed(ChangeLog.ENROLLMENTS, courseId, studentId);
+        return Map.of("enrollmentId", result.enrollmentId);
+    }
+
+    private Object drop(AppServer.Request req) throws Exception {
+        int studentId = req.session().userId;
+        int courseId = req.intParam("id");
+        List<Integer> promoted = pool.inTransaction(c -> {
+            if (!Enrollments.drop(c, courseId, studentId)) return null;
+            List<Integer> p = Waitlist.promote(c, courseId);
+            if (AppConfig.inboxFanout()) {
+                for (Integer id : p) InboxFanout.backfill(c, id, courseId);
+            }
+            return p;
+        });
+        if (promoted == null) throw new ApiException(404, "Not enrolled in this course");
+        stamps.changed(ChangeLog.ENROLLMENTS, courseId, studentId);
+        for (Integer id : promoted) stamps.changed(ChangeLog.ENROLLMENTS, courseId, id);
+        return Map.of("promoted", promoted.size());
+    }
+
+    private Object joinWaitlist(AppServer.Request req) throws Exception {
+        int studentId = req.session().userId;
+        int courseId = req.integer("courseId");
+        enrollAdmission.admit(String.valueOf(studentId));
+        if (!exists("SELECT 1 FROM courses WHERE course_id = ?", courseId)) throw new ApiException(404, "Course not found");
+        Waitlist.Joined joined = pool.inTransaction(c -> {
+            Waitlist.Joined j = Waitlist.join(c, courseId, studentId);
+            if (j.outcome == Enrollments.Outcome.ENROLLED && AppConfig.inboxFanout()) InboxFanout.backfill(c, studentId, courseId);
+            return j;
+        });
+        switch (joined.outcome) {
+            case NO_COURSE -> throw new ApiException(404, "Course not found");
+            case ALREADY_ENROLLED -> throw new ApiException(409, "Already enrolled in this course");
+            case ENROLLED -> stamps.changed(ChangeLog.ENROLLMENTS, courseId, studentId);
+            default -> { }
+        }
+        return Map.of("position", joined.position);
+    }
+
+    private Object readNotifications(AppServer.Request req) throws Exception {
+        int userId = req.session().userId;
+        return pool.inTransaction(c -> Notifications.take(c, userId));
+    }
+
+    private Object assignments(AppServer.Request req) throws Exception {
+        AppServer.Session s = req.session();
+        Integer courseId = req.optionalIntParam("courseId");
+        String courseFilter = courseId != null ? " AND a.course_id = " + courseId : "";
+        switch (s.role) {
+            case "student":
+                return query("SELECT a.assignment_id, a.course_id, a.title, c.course_name, a.description, a.due_date, " +
+                             "a.max_marks, s.submission_id, s.submission_date, s.marks_obtained " +
+                             "FROM assignments a " +
+                             "JOIN courses c ON a.course_id = c.course_id " +
+                             "JOIN enrollments e ON c.course_id = e.course_id " +
+                             "LEFT JOIN submissions s ON a.assignment_id = s.assignment_id AND s.student_id = ? " +
+                             "WHERE e.student_id = ?" + courseFilter, s.userId, s.userId);
+            case "teacher":
+                return query("SELECT a.assignment_id, a.course_id, a.title, c.course_name, a.description, a.due_date, " +
+                             "a.max_marks, COUNT(s.submission_id) AS submission_count " +
+                             "FROM assignments a " +
+                             "JOIN courses c ON a.course_id = c.course_id " +
+                             "LEFT JOIN submissions s ON s.assignment_id = a.assignment_id " +
+                             "WHERE c.teacher_id = ?" + courseFilter + " GROUP BY a.assignment_id", s.userId);
+            default:
+                return query("SELECT a.assignment_id, a.course_id, a.title, c.course_name, a.due_date, a.max_marks " +
+                             "FROM assignments a JOIN courses c ON a.course_id = c.course_id WHERE 1 = 1" + courseFilter);
+        }
+    }
+
+    private Object createAssignment(AppServer.Request req) throws Exception {
+        int teacherId = req.session().userId;
+        int courseId = req.integer("courseId");
+        String title = req.string("title");
+        String description = req.optionalString("description");
+        int maxMarks = req.integer("maxMarks");
+        java.sql.Date dueDate;
+        try {
+            dueDate = java.sql.Date.valueOf(req.string("dueDate"));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "dueDate must be YYYY-MM-DD");
+        }
+        if (maxMarks <= 0) throw new ApiException(400, "maxMarks must be positive");
+        requireTeacherOf(teacherId, courseId);
+
+        int assignmentId = pool.inTransaction(c -> {
+            PreparedStatement insertPst = c.prepareStatement(
+                    "INSERT INTO assignments (course_id, title, description, due_date, max_marks) VALUES (?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            insertPst.setInt(1, courseId);
+            insertPst.setString(2, title);
+            insertPst.setString(3, description);
+            insertPst.setDate(4, dueDate);
+            insertPst.setInt(5, maxMarks);
+            insertPst.executeUpdate();
+
+            ResultSet keys = insertPst.getGeneratedKeys();
+            keys.next();
+            int id = keys.getInt(1);
+            ChangeLog.record(c, ChangeLog.ASSIGNMENTS, ChangeLog.INSERT, id, courseId, null);
+            keys.close();
+            insertPst.close();
+            return id;
+        });
+        stamps.changed(ChangeLog.ASSIGNMENTS, courseId, null);
+        return Map.of("assignmentId", assignmentId);
+    }
+
+    private Object submit(AppServer.Request req) throws Exception {
+        int studentId = req.session().userId;
+        int assignmentId = req.intParam("id");
+        String comments = req.optionalString("comments");
+        int courseId = requireEnrolledForAssignment(studentId, assignmentId);
+
+        SavedSubmission saved = pool.inTransaction(c -> saveSubmission(c, assignmentId, courseId, studentId, comments));
+        stamps.changed(ChangeLog.SUBMISSIONS, courseId, studentId);
+        return saved.toJson();
+    }
+
+    /**
+     * The body is spooled to a temporary file first and only then streamed into the submission
+     * store, so a slow upload never holds one of the pooled connections.
+     */
+    private Object submitFile(AppServer.Request req) throws Exception {
+        int studentId = req.session().userId;
+        int assignmentId = req.intParam("id");
+        String fileName = req.param("name");
+        if (fileName == null || fileName.isBlank()) throw new ApiException(400, "Missing parameter name");
+        String comments = req.param("comments");
+        int courseId = requireEnrolledForAssignment(studentId, assignmentId);
+
+        long maxBytes = AppConfig.getLong("lms.quota.submissionFileMB", 50) << 20;
+        File spool = Files.createTempFile("lms-upload-", ".part").toFile();
+        try {
+            long size = copy(req.input(), spool, maxBytes);
+            if (size < 0) throw new ApiException(413, "File is larger than the " + (maxBytes >> 20) + " MB limit.");
+
+            SavedSubmission saved;
+            List<File> replaced = new ArrayList<>();
+            SubmissionStore.Staged staged;
+            try (InputStream in = new FileInputStream(spool)) {
+                staged = pool.withConnection(c -> {
+                    try {
+                        return SubmissionStore.get().stage(c, assignmentId, studentId, fileName, in);
+                    } catch (IOException e) {
+                        throw new SQLException(e.getMessage(), e);
+                    }
+                });
+            } catch (SQLException e) {
+                if (e.getCause() instanceof SubmissionStore.QuotaExceededException) {
+                    throw new ApiException(413, e.getCause().getMessage());
+                }
+                throw e;
+            }
+            try {
+                saved = pool.inTransaction(c -> {
+                    SavedSubmission s = saveSubmission(c, assignmentId, courseId, studentId, comments);
+                    replaced.addAll(SubmissionStore.get().attach(c, s.id, staged));
+                    return s;
+                });
+            } catch (SQLException e) {
+                staged.discard();
+                throw e;
+            }
+            for (File old : replaced) old.delete();
+            stamps.changed(ChangeLog.SUBMISSIONS, courseId, studentId);
+
+            Map<String, Object> result = saved.toJson();
+            result.put("size", staged.size);
+            result.put("digest", staged.digest);
+            return result;
+        } finally {
+            spool.delete();
+        }
+    }
+
+    private Object submissions(AppServer.Request req) throws Exception {
+        Integer assignmentId = req.optionalIntParam("assignmentId");
+        return query("SELECT s.submission_id, s.assignment_id, a.title, c.course_name, s.student_id, u.full_name, " +
+                     "s.submission_date, a.max_marks, s.marks_obtained, s.feedback " +
+                     "FROM submissions s " +
+                     "JOIN assignments a ON s.assignment_id = a.assignment_id " +
+                     "JOIN courses c ON a.course_id = c.course_id " +
+                     "JOIN users u ON s.student_id = u.user_id " +
+                     "WHERE c.teacher_id = ?" + (assignmentId != null ? " AND s.assignment_id = " + assignmentId : ""),
+                     req.session().userId);
+    }
+
+    private Object grade(AppServer.Request req) throws Exception {
+        int teacherId = req.session().userId;
+        int submissionId = req.intParam("id");
+        int marks = req.integer("marks");
+
+        List<Map<String, Object>> rows = query(
+                "SELECT s.student_id, a.course_id, a.max_marks, c.teacher_id FROM submissions s " +
+                "JOIN assignments a ON s.assignment_id = a.assignment_id " +
+                "JOIN courses c ON a.course_id = c.course_id WHERE s.submission_id = ?", submissionId);
+        if (rows.isEmpty()) throw new ApiException(404, "Submission not found");
+        Map<String, Object> row = rows.get(0);
+        if (((Number) row.get("teacher_id")).intValue() != teacherId) throw new ApiException(403, "Not your course");
+        int maxMarks = ((Number) row.get("max_marks")).intValue();
+        if (marks < 0 || marks > maxMarks) throw new ApiException(400, "Marks must be between 0 and " + maxMarks);
+
+        pool.inTransaction(c -> {
+            PreparedStatement updatePst = c.prepareStatement("UPDATE submissions SET marks_obtained = ? WHERE submission_id = ?");
+            updatePst.setInt(1, marks);
+            updatePst.setInt(2, submissionId);
+            updatePst.executeUpdate();
+            updatePst.close();
+            ChangeLog.record(c, ChangeLog.SUBMISSIONS, ChangeLog.UPDATE, submissionId,
+                    ((Number) row.get("course_id")).intValue(), ((Number) row.get("student_id")).intValue());
+            return null;
+        });
+        stamps.changed(ChangeLog.SUBMISSIONS, ((Number) row.get("course_id")).intValue(),
+                ((Number) row.get("student_id")).intValue());
+        return null;
+    }
+
+    private Object materials(AppServer.Request req) throws Exception {
+        AppServer.Session s = req.session();
+        Integer courseId = req.optionalIntParam("courseId");
+        String select = "SELECT sm.material_id, sm.course_id, c.course_name, sm.title, sm.description, " +
+                        "sm.file_name, sm.file_path, sm.upload_date FROM study_materials sm " +
+                        "JOIN courses c ON sm.course_id = c.course_id ";
+        String order = (courseId != null ? " AND sm.course_id = " + courseId : "") +
+                       " ORDER BY sm.upload_date DESC, sm.material_id DESC";
+        List<Map<String, Object>> rows;
+        switch (s.role) {
+            case "student" -> rows = query(select + "JOIN enrollments e ON e.course_id = c.course_id WHERE e.student_id = ?" + order, s.userId);
+            case "teacher" -> rows = query(select + "WHERE c.teacher_id = ?" + order, s.userId);
+            default -> rows = query(select + "WHERE 1 = 1" + order);
+        }
+        // Stored paths are server-side detail; clients fetch the file through /content
+        for (Map<String, Object> row : rows) {
+            Object path = row.remove("file_path");
+            if (row.get("file_name") == null && path != null) {
+                row.put("file_name", Compression.logicalName(new File(path.toString())));
+            }
+        }
+        return rows;
+    }
+
+    // Served through the same off-heap cache as desktop downloads; compressed files are inflated on the way out
+    private Object materialContent(AppServer.Request req) throws Exception {
+        AppServer.Session s = req.session();
+        int materialId = req.intParam("id");
+        List<Map<String, Object>> rows = query(
+                "SELECT sm.course_id, sm.file_name, sm.file_path, c.teacher_id FROM study_materials sm " +
+                "JOIN courses c ON sm.course_id = c.course_id WHERE sm.material_id = ?", materialId);
+        if (rows.isEmpty() || rows.get(0).get("file_path") == null) throw new ApiException(404, "Material not found");
+        Map<String, Object> row = rows.get(0);
+        int courseId = ((Number) row.get("course_id")).intValue();
+        boolean allowed = switch (s.role) {
+            case "student" -> exists("SELECT 1 FROM enrollments WHERE student_id = ? AND course_id = ?", s.userId, courseId);
+            case "teacher" -> ((Number) row.get("teacher_id")).intValue() == s.userId;
+            default -> true;
+        };
+        if (!allowed) throw new ApiException(403, "Not enrolled in this course");
+
+        File stored = Compression.resolve(new File(row.get("file_path").toString()));
+        if (!stored.exists()) throw new ApiException(404, "The stored file is missing");
+        String fileName = row.get("file_name") != null ? row.get("file_name").toString() : Compression.logicalName(stored);
+
+        HttpExchange exchange = req.exchange();
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("Content-Disposition",
+                "attachment; filename=\"" + fileName.replaceAll("[\"\\\\\r\n]", "_") + "\"");
+        ByteBuffer cached = BlobCache.get().lookup(stored);
+        boolean compressed = Compression.isCompressed(stored);
+        // The inflated length isn't known up front, so compressed files go out chunked
+        exchange.sendResponseHeaders(200, compressed ? 0 : stored.length());
+        try (InputStream source = cached != null ? BlobCache.stream(cached) : new FileInputStream(stored);
+             InputStream in = compressed ? Compression.decompressing(source) : source;
+             OutputStream out = exchange.getResponseBody()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        }
+        return AppServer.STREAMED;
+    }
+
+    private Object messages(AppServer.Request req) throws Exception {
+        AppServer.Session s = req.session();
+        Integer courseId = req.optionalIntParam("courseId");
+        String select = "SELECT m.message_id, m.course_id, c.course_name, m.subject, m.message_text, m.sent_date " +
+                        "FROM messages m JOIN courses c ON m.course_id = c.course_id ";
+        String order = (courseId != null ? " AND m.course_id = " + courseId : "") +
+                       " ORDER BY m.sent_date DESC, m.message_id DESC";
+        return switch (s.role) {
+            case "student" -> query(select + "JOIN enrollments e ON e.course_id = c.course_id WHERE e.student_id = ?" + order, s.userId);
+            case "teacher" -> query(select + "WHERE c.teacher_id = ?" + order, s.userId);
+            default -> query(select + "WHERE 1 = 1" + order);
+        };
+    }
+
+    private Object sendMessage(AppServer.Request req) throws Exception {
+        int teacherId = req.session().userId;
+        int courseId = req.integer("courseId");
+        String subject = req.string("subject").trim();
+        String text = req.string("text").trim();
+        requireTeacherOf(teacherId, courseId);
+
+        int messageId = pool.inTransaction(conn -> {
+            PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO messages (course_id, sender_id, subject, message_text, sent_date) VALUES (?, ?, ?, ?, NOW())",
+                    Statement.RETURN_GENERATED_KEYS);
+            ps.setInt(1, courseId);
+            ps.setInt(2, teacherId);
+            ps.setString(3, subject);
+            ps.setString(4, text);
+            ps.executeUpdate();
+
+            ResultSet keys = ps.getGeneratedKeys();
+            keys.next();
+            int id = keys.getInt(1);
+            keys.close();
+            ps.close();
+
+            ChangeLog.record(conn, ChangeLog.MESSAGES, ChangeLog.INSERT, id, courseId, null);
+            return id;
+        });
+        pool.withConnection(conn -> {
+            SearchIndex.indexCommitted(conn, List.of(new SearchIndex.Document(SearchIndex.MESSAGE, messageId, courseId, subject, text)));
+            return null;
+        });
+        stamps.changed(ChangeLog.MESSAGES, courseId, null);
+        if (AppConfig.inboxFanout()) InboxFanout.get().submit(messageId);
+        return Map.of("messageId", messageId);
+    }
+
+    private static class SavedSubmission {
+        final int id;
+        final boolean resubmitted;
+
+        SavedSubmission(int id, boolean resubmitted) {
+            this.id = id;
+            this.resubmitted = resubmitted;
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("submissionId", id);
+            json.put("resubmitted", resubmitted);
+            return json;
+        }
+    }
+
+    // Same as StudentDashboard.saveSubmission; call inside a transaction
+    private static SavedSubmission saveSubmission(Connection c, int assignmentId, int courseId, int studentId,
+                                                  String comments) throws SQLException {
+        PreparedStatement checkPst = c.prepareStatement(
+                "SELECT submission_id FROM submissions WHERE assignment_id = ? AND student_id = ?");
+        checkPst.setInt(1, assignmentId);
+        checkPst.setInt(2, studentId);
+        ResultSet checkRs = checkPst.executeQuery();
+        boolean exists = checkRs.next();
+        int submissionId;
+
+        if (exists) {
+            submissionId = checkRs.getInt("submission_id");
+            PreparedStatement updatePst = c.prepareStatement(
+                    "UPDATE submissions SET submission_date = NOW(), feedback = ? WHERE submission_id = ?");
+            updatePst.setString(1, comments);
+            updatePst.setInt(2, submissionId);
+            updatePst.executeUpdate();
+            updatePst.close();
+            ChangeLog.record(c, ChangeLog.SUBMISSIONS, ChangeLog.UPDATE, submissionId, courseId, studentId);
+        } else {
+            PreparedStatement insertPst = c.prepareStatement(
+                    "INSERT INTO submissions (assignment_id, student_id, feedback) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            insertPst.setInt(1, assignmentId);
+            insertPst.setInt(2, studentId);
+            insertPst.setString(3, comments);
+            insertPst.executeUpdate();
+
+            ResultSet keys = insertPst.getGeneratedKeys();
+            keys.next();
+            submissionId = keys.getInt(1);
+            ChangeLog.record(c, ChangeLog.SUBMISSIONS, ChangeLog.INSERT, submissionId, courseId, studentId);
+            keys.close();
+            insertPst.close();
+        }
+
+        checkRs.close();
+        checkPst.close();
+        return new SavedSubmission(submissionId, exists);
+    }
+
+    private void requireTeacherOf(int teacherId, int courseId) throws ApiException, SQLException {
+        List<Map<String, Object>> rows = query("SELECT teacher_id FROM courses WHERE course_id = ?", courseId);
+        if (rows.isEmpty()) throw new ApiException(404, "Course not found");
+        Object owner = rows.get(0).get("teacher_id");
+        if (owner == null || ((Number) owner).intValue() != teacherId) throw new ApiException(403, "Not your course");
+    }
+
+    // Returns the assignment's course
+    private int requireEnrolledForAssignment(int studentId, int assignmentId) throws ApiException, SQLException {
+        List<Map<String, Object>> rows = query(
+                "SELECT a.course_id, e.student_id FROM assignments a " +
+                "LEFT JOIN enrollments e ON e.course_id = a.course_id AND e.student_id = ? " +
+                "WHERE a.assignment_id = ?", studentId, assignmentId);
+        if (rows.isEmpty()) throw new ApiException(404, "Assignment not found");
+        if (rows.get(0).get("student_id") == null) throw new ApiException(403, "Not enrolled in this course");
+        return ((Number) rows.get(0).get("course_id")).intValue();
+    }
+
+    private boolean exists(String sql, Object... args) throws SQLException {
+        return !query(sql, args).isEmpty();
+    }
+
+    // Every row as a column-label map, read on a pooled connection
+    private List<Map<String, Object>> query(String sql, Object... args) throws SQLException {
+        return pool.withConnection(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < args.length; i++) ps.setObject(i + 1, args[i]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int columns = meta.getColumnCount();
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    while (rs.next()) {
+                        Map<String, Object> row = new LinkedHashMap<>();
+                        for (int i = 1; i <= columns; i++) row.put(meta.getColumnLabel(i), rs.getObject(i));
+                        rows.add(row);
+                    }
+                    return rows;
+                }
+            }
+        });
+    }
+
+    // Returns the number of bytes copied, or -1 once more than max arrive
+    private static long copy(InputStream in, File target, long max) throws IOException {
+        long total = 0;
+        try (OutputStream out = Files.newOutputStream(target.toPath())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+                if (total > max) return -1;
+                out.write(buffer, 0, n);
+            }
+        }
+        return total;
+    }
+}
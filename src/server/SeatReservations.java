@@ -0,0 +1,192 @@
+package server;
+
+import config.AppConfig;
+import database.ChangeLog;
+import database.ConnectionPool;
+import database.Enrollments;
+import sync.ChangeFeed;
+import sync.InboxFanout;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server's way into {@link Enrollments} when registration opens and thousands of students try
+ * the same course at once.
+ *
+ * Requests for one course are combined: whichever request finds no commit running for the course
+ * enrolls everyone queued so far (up to lms.enroll.batchSize) in one transaction on one pooled
+ * connection, while the others wait for their result. The seat count is only ever decided in the
+ * database, under the course row lock, so nothing here can oversubscribe a course.
+ *
+ * A course found full is refused from memory after that, without a database round trip. The
+ * knowledge is dropped when an enrollment in the course is removed or the course changes (through
+ * the change feed), and in any case after lms.enroll.fullRecheckSeconds. A request that has waited
+ * lms.enroll.waitMs without being taken into a batch gives up with a 503; once taken, it waits for
+ * that batch's commit, so a student who was enrolled is never told to try again.
+ */
+class SeatReservations implements ChangeFeed.Listener {
+    private final ConnectionPool pool;
+    private final int batchSize = Math.max(1, AppConfig.getInt("lms.enroll.batchSize", 200));
+    private final long fullRecheckMillis = TimeUnit.SECONDS.toMillis(AppConfig.getInt("lms.enroll.fullRecheckSeconds", 5));
+    private final long waitMillis = AppConfig.getLong("lms.enroll.waitMs", 10_000);
+    private final Map<Integer, Course> courses = new ConcurrentHashMap<>();
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong enrolled = new AtomicLong();
+    private final AtomicLong refusedFromMemory = new AtomicLong();
+
+    private static class Course {
+        final ConcurrentLinkedQueue<Waiting> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean committing = new AtomicBoolean();
+        // When the course was last seen full, 0 if it wasn't
+        volatile long fullSince;
+    }
+
+    private static class Waiting {
+        final int studentId;
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        // Set by whichever comes first: a batch taking the request, or the request giving up
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        Waiting(int studentId) {
+            this.studentId = studentId;
+        }
+    }
+
+    static class Result {
+        final Enrollments.Outcome outcome;
+        final Integer enrollmentId;
+
+        Result(Enrollments.Outcome outcome, Integer enrollmentId) {
+            this.outcome = outcome;
+            this.enrollmentId = enrollmentId;
+        }
+    }
+
+    SeatReservations(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    Result enroll(int courseId, int studentId) throws SQLException, ApiException {
+        Course course = courses.computeIfAbsent(courseId, id -> new Course());
+        if (knownFull(course)) {
+            refusedFromMemory.incrementAndGet();
+            return new Result(Enrollments.Outcome.FULL, null);
+        }
+
+        Waiting waiting = new Waiting(studentId);
+        course.queue.add(waiting);
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            if (course.committing.compareAndSet(false, true)) {
+                try {
+                    commitQueued(courseId, course);
+                } finally {
+                    course.committing.set(false);
+                }
+                // Picks up requests queued between the last drain and the release above
+                if (!course.queue.isEmpty()) continue;
+            }
+            try {
+                return waiting.result.get(20, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Only a request no batch has taken may give up; a taken one waits for the commit
+                if (System.currentTimeMillis() > deadline && waiting.claimed.compareAndSet(false, true)) {
+                    course.queue.remove(waiting);
+                    throw new ApiException(503, "Enrollment is busy right now, please try again");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApiException(503, "Interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException sql) throw sql;
+                if (e.getCause() instanceof ApiException api) throw api;
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private boolean knownFull(Course course) {
+        long since = course.fullSince;
+        return since != 0 && System.currentTimeMillis() - since < fullRecheckMillis;
+    }
+
+    private void commitQueued(int courseId, Course course) {
+        List<Waiting> batch = new ArrayList<>();
+        while (!course.queue.isEmpty()) {
+            batch.clear();
+            Waiting w;
+            while (batch.size() < batchSize && (w = course.queue.poll()) != null) {
+                // Skips requests that gave up waiting
+                if (w.claimed.compareAndSet(false, true)) batch.add(w);
+            }
+            if (batch.isEmpty()) return;
+            if (knownFull(course)) {
+                refusedFromMemory.addAndGet(batch.size());
+                for (Waiting waiting : batch) waiting.result.complete(new Result(Enrollments.Outcome.FULL, null));
+                continue;
+            }
+
+            List<Integer> studentIds = new ArrayList<>();
+            for (Waiting waiting : batch) studentIds.add(waiting.studentId);
+            try {
+                Enrollments.Batch result = pool.inTransaction(c -> {
+                    Enrollments.Batch b = Enrollments.enroll(c, courseId, studentIds);
+                    if (AppConfig.inboxFanout()) {
+                        for (Integer studentId : b.enrolled(studentIds)) InboxFanout.backfill(c, studentId, courseId);
+                    }
+                    return b;
+                });
+                batches.incrementAndGet();
+                course.fullSince = result.seatsLeft != null && result.seatsLeft == 0 ? System.currentTimeMillis() : 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (result.outcomes.get(i) == Enrollments.Outcome.ENROLLED) enrolled.incrementAndGet();
+                    batch.get(i).result.complete(new Result(result.outcomes.get(i), result.enrollmentIds.get(i)));
+                }
+            } catch (SQLException | RuntimeException e) {
+                for (Waiting waiting : batch) waiting.result.completeExceptionally(e);
+            } finally {
+                // Taken requests can no longer give up, so none may be left without an answer
+                for (Waiting waiting : batch) {
+                    waiting.result.completeExceptionally(new IllegalStateException("Enrollment batch failed"));
+                }
+            }
+        }
+    }
+
+    // A freed seat or a changed course makes a full course worth asking the database about again
+    @Override
+    public void onChanges(List<ChangeFeed.Change> changes) {
+        for (ChangeFeed.Change c : changes) {
+            boolean seatsMayFree = ChangeLog.ENROLLMENTS.equals(c.table) && ChangeLog.DELETE.equals(c.op)
+                    || ChangeLog.COURSES.equals(c.table);
+            if (!seatsMayFree) continue;
+            if (c.courseId == null) {
+                for (Course course : courses.values()) course.fullSince = 0;
+            } else {
+                Course course = courses.get(c.courseId);
+                if (course != null) course.fullSince = 0;
+            }
+        }
+    }
+
+    Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("batches", batches.get());
+        status.put("enrolled", enrolled.get());
+        status.put("refusedFromMemory", refusedFromMemory.get());
+        return status;
+    }
+}
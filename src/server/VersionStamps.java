@@ -0,0 +1,145 @@
+package server;
+
+import database.ChangeLog;
+import sync.ChangeFeed;
+import sync.ClusterBus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version counters for what the API serves, bumped by every change to the data behind
+ * them. A response's ETag is a hash of the counters it depends on, so whether a client's copy is
+ * still current can be decided without touching the database.
+ *
+ * Counters are bumped straight from the server's own write paths and, for writes made by desktops
+ * or other servers, from the change_log through {@link ChangeFeed}. For each table there are:
+ *   table:any       every change
+ *   table:*         changes whose course is unknown (bulk deletes, deleted users)
+ *   table:c&lt;id&gt;    every change in one course (what a teacher sees)
+ *   table:s&lt;id&gt;    changes in one course that aren't tied to one student (shared by all students)
+ *   table:u&lt;id&gt;    changes tied to one student
+ * so a student's view doesn't go stale every time a classmate submits.
+ *
+ * Counters start at zero on every start; the start time is part of every tag, so tags handed out
+ * before a restart never match.
+ *
+ * In cluster mode the server's own bumps are also published on the {@link ClusterBus}, so other
+ * instances drop their copies within a bus poll instead of waiting for the change log. They are
+ * bumped once more when the change_log row arrives; that costs one extra full response per list.
+ */
+public class VersionStamps implements ChangeFeed.Listener {
+    private volatile long epoch = System.currentTimeMillis();
+    private final Map<String, AtomicLong> stamps = new ConcurrentHashMap<>();
+    private volatile ClusterBus bus;
+
+    public void attach(ClusterBus bus) {
+        this.bus = bus;
+        bus.subscribe(ClusterBus.STAMPS, this::remoteChange);
+    }
+
+    // A write made by this server, after it committed
+    public void changed(String table, Integer courseId, Integer userId) {
+        apply(table, courseId, userId);
+        ClusterBus b = bus;
+        if (b != null) b.publish(ClusterBus.STAMPS, table + "|" + (courseId == null ? "" : courseId) + "|"
+                + (userId == null ? "" : userId));
+    }
+
+    private void remoteChange(String key) {
+        if (key == null) {
+            // Events may have been missed: a new epoch changes every tag
+            epoch = Math.max(epoch + 1, System.currentTimeMillis());
+            return;
+        }
+        String[] parts = key.split("\\|", -1);
+        apply(parts[0], parts[1].isEmpty() ? null : Integer.valueOf(parts[1]),
+                parts[2].isEmpty() ? null : Integer.valueOf(parts[2]));
+    }
+
+    private void apply(String table, Integer courseId, Integer userId) {
+        bump(table + ":any");
+        // Courses are few and appear in every list, so any change to one is a catalogue change
+        if (courseId == null || ChangeLog.COURSES.equals(table)) {
+            bump(table + ":*");
+        } else {
+            bump(table + ":c" + courseId);
+            if (userId == null) bump(table + ":s" + courseId);
+        }
+        if (userId != null) bump(table + ":u" + userId);
+    }
+
+    @Override
+    public void onChanges(List<ChangeFeed.Change> changes) {
+        for (ChangeFeed.Change c : changes) apply(c.table, c.courseId, c.userId);
+    }
+
+    public long get(String key) {
+        AtomicLong stamp = stamps.get(key);
+        return stamp == null ? 0 : stamp.get();
+    }
+
+    private void bump(String key) {
+        stamps.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    public Tag tag(String resource) {
+        return new Tag(resource);
+    }
+
+    /** Collects the counters one response depends on. */
+    public class Tag {
+        private final StringBuilder key = new StringBuilder();
+
+        Tag(String resource) {
+            key.append(epoch).append('|').append(resource);
+        }
+
+        public Tag add(String stampKey) {
+            key.append('|').append(get(stampKey));
+            return this;
+        }
+
+        // What one student sees of the tables: their own rows and the shared rows of their courses
+        public Tag student(int userId, Collection<Integer> courseIds, String... tables) {
+            for (String table : tables) {
+                add(table + ":*").add(table + ":u" + userId);
+                for (Integer courseId : courseIds) add(table + ":s" + courseId);
+            }
+            return scope(courseIds);
+        }
+
+        // Everything in the teacher's courses
+        public Tag courses(Collection<Integer> courseIds, String... tables) {
+            for (String table : tables) {
+                add(table + ":*");
+                for (Integer courseId : courseIds) add(table + ":c" + courseId);
+            }
+            return scope(courseIds);
+        }
+
+        public Tag everything(String... tables) {
+            for (String table : tables) add(table + ":any");
+            return this;
+        }
+
+        private Tag scope(Collection<Integer> courseIds) {
+            key.append("|in");
+            for (Integer courseId : courseIds) key.append(',').append(courseId);
+            return this;
+        }
+
+        // 64-bit FNV-1a of the collected key, as a quoted strong ETag
+        public String etag() {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return "\"" + Long.toHexString(hash) + "\"";
+        }
+    }
+}
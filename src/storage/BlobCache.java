@@ -0,0 +1,213 @@
+package storage;
+
+import config.AppConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte-bounded LRU cache of hot stored files, kept in direct buffers outside the Java heap.
+ *
+ * A file is only loaded on its second request within the recent-miss window, so one-off downloads
+ * don't push out the exam sheet everyone is fetching. Entries are checked against the file's size
+ * and modification time on every lookup, so a replaced or recompressed file is never served stale;
+ * {@link #invalidate} drops an entry right away when the caller knows the file is going.
+ *
+ * Buffers hold the bytes as stored, so compressed files stay compressed in the cache.
+ */
+public class BlobCache {
+    private static final int RECENT_MISSES = 1024;
+    private static final int READ_CHUNK = 1 << 20;
+
+    private static BlobCache instance;
+
+    private final long capacityBytes = AppConfig.getLong("lms.cache.materialMB", 256) << 20;
+    private final long maxEntryBytes = AppConfig.getLong("lms.cache.maxFileMB", 32) << 20;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> recentMisses = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_MISSES;
+        }
+    };
+    // One load per file at a time; other requests for it wait for that load
+    private final Map<String, Object> loadMonitors = new ConcurrentHashMap<>();
+    private long residentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class Entry {
+        final ByteBuffer buffer;
+        final long length;
+        final long lastModified;
+
+        Entry(ByteBuffer buffer, long length, long lastModified) {
+            this.buffer = buffer;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    public static synchronized BlobCache get() {
+        if (instance == null) instance = new BlobCache();
+        return instance;
+    }
+
+    /**
+     * Returns the file's stored bytes as a read-only buffer positioned at 0, or null when the caller
+     * should read the file itself (not hot yet, too large, or the cache is disabled).
+     */
+    public ByteBuffer lookup(File file) {
+        if (capacityBytes <= 0) return null;
+        String key = file.getAbsolutePath();
+
+        Entry entry = cached(key, file);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.buffer.duplicate();
+        }
+        misses.incrementAndGet();
+
+        long length = file.length();
+        if (length == 0 || length > Math.min(maxEntryBytes, Integer.MAX_VALUE) || length > capacityBytes) return null;
+        synchronized (this) {
+            // First miss only marks the file as seen
+            if (recentMisses.remove(key) == null) {
+                recentMisses.put(key, Boolean.TRUE);
+                return null;
+            }
+        }
+
+        Object monitor = loadMonitors.computeIfAbsent(key, k -> new Object());
+        synchronized (monitor) {
+            try {
+                entry = cached(key, file);
+                if (entry == null) {
+                    entry = load(file);
+                    if (entry == null) return null;
+                    put(key, entry);
+                }
+                return entry.buffer.duplicate();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } catch (OutOfMemoryError e) {
+                // Direct memory (-XX:MaxDirectMemorySize) ran out; the caller reads the file from disk
+                System.err.println("Blob cache could not load " + file + ": " + e.getMessage());
+                return null;
+            } finally {
+                loadMonitors.remove(key);
+            }
+        }
+    }
+
+    public void invalidate(File file) {
+        String key = file.getAbsolutePath();
+        synchronized (this) {
+            Entry removed = entries.remove(key);
+            if (removed != null) residentBytes -= removed.length;
+            recentMisses.remove(key);
+        }
+    }
+
+    private synchronized Entry cached(String key, File file) {
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.matches(file)) {
+            entries.remove(key);
+            residentBytes -= entry.length;
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (old != null) residentBytes -= old.length;
+        residentBytes += entry.length;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (residentBytes > capacityBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getValue() == entry) continue;
+            it.remove();
+            residentBytes -= eldest.getValue().length;
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Direct memory is released when the evicted buffer is collected
+    private static Entry load(File file) throws IOException {
+        long lastModified = file.lastModified();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = in.size();
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+            while (buffer.position() < buffer.capacity()) {
+                int n = in.read(buffer.limit(Math.min(buffer.capacity(), buffer.position() + READ_CHUNK)));
+                if (n < 0) return null;
+            }
+            if (file.lastModified() != lastModified || file.length() != length) {
+                // Changed while we read it
+                return null;
+            }
+            buffer.flip();
+            return new Entry(buffer.asReadOnlyBuffer(), length, lastModified);
+        }
+    }
+
+    // Reads a cached buffer as a stream, e.g. to decompress it
+    public static InputStream stream(ByteBuffer buffer) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) return 0;
+                if (!buffer.hasRemaining()) return -1;
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+    public long evictions() { return evictions.get(); }
+
+    public double hitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : hits.get() / (double) total;
+    }
+
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+}
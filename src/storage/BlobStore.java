@@ -0,0 +1,253 @@
+package storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Content-addressed store for uploaded material files under materials/blobs.
+ *
+ * A file is stored once per SHA-256 digest at blobs/ab/cd/&lt;digest&gt;; uploading the same content
+ * again only bumps blobs.ref_count. Uploads in progress live in blobs/uploads. Blobs may be stored
+ * compressed (&lt;digest&gt;.lmsz, see {@link Compression}); the digest is always of the original bytes.
+ * Blobs whose count drops to zero are left for {@link OrphanCollector}.
+ */
+public class BlobStore {
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+    private static final int FINGERPRINTS_CACHED = 1000;
+
+    private static BlobStore instance;
+
+    private final File root;
+    private final File uploadsDir;
+    // Local files hashed recently, keyed by path, size and modification time; least recently used go first
+    private final Map<String, Fingerprint> fingerprintCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Fingerprint> eldest) {
+                    return size() > FINGERPRINTS_CACHED;
+                }
+            });
+    // One upload per digest at a time within this process; the file lock covers other clients
+    private final Map<String, Object> uploadMonitors = new ConcurrentHashMap<>();
+
+    public static class Blob {
+        public final String digest;
+        public final long size;
+        public final File file;
+        // False when the content was already in the store and nothing was copied
+        public final boolean copied;
+
+        Blob(String digest, long size, File file, boolean copied) {
+            this.digest = digest;
+            this.size = size;
+            this.file = file;
+            this.copied = copied;
+        }
+    }
+
+    // SHA-256 of the whole file plus a CRC32C per upload chunk, all taken in one read pass
+    static class Fingerprint {
+        final String digest;
+        final long size;
+        final int[] chunkCrcs;
+
+        Fingerprint(String digest, long size, int[] chunkCrcs) {
+            this.digest = digest;
+            this.size = size;
+            this.chunkCrcs = chunkCrcs;
+        }
+    }
+
+    public static synchronized BlobStore get() {
+        if (instance == null) {
+            instance = new BlobStore(new File("materials", "blobs"));
+        }
+        return instance;
+    }
+
+    BlobStore(File root) {
+        this.root = root;
+        this.uploadsDir = new File(root, "uploads");
+        uploadsDir.mkdirs();
+    }
+
+    public File root() {
+        return root;
+    }
+
+    public File pathFor(String digest) {
+        return new File(new File(new File(root, digest.substring(0, 2)), digest.substring(2, 4)), digest);
+    }
+
+    // The stored blob, plain or compressed, or null if the store doesn't have it
+    public File locate(String digest, long size) {
+        File plain = pathFor(digest);
+        if (plain.exists() && plain.length() == size) return plain;
+        File compressed = new File(plain.getPath() + Compression.SUFFIX);
+        return compressed.exists() ? compressed : null;
+    }
+
+    public Blob ingest(File source) throws IOException {
+        return ingest(source, null);
+    }
+
+    /**
+     * Puts a local file into the store. The file is read once to hash it; when no blob with that
+     * digest exists yet it is copied in verified chunks (see {@link ChunkedUpload}), resuming an
+     * earlier interrupted upload of the same content. Returns once the blob is complete.
+     */
+    public Blob ingest(File source, ChunkedUpload.Progress progress) throws IOException {
+        Fingerprint fingerprint = fingerprint(source);
+        File existing = locate(fingerprint.digest, fingerprint.size);
+        if (existing != null) {
+            // Restarts the collector's grace period until the new reference is committed
+            existing.setLastModified(System.currentTimeMillis());
+            return new Blob(fingerprint.digest, fingerprint.size, existing, false);
+        }
+
+        Object monitor = uploadMonitors.computeIfAbsent(fingerprint.digest, d -> new Object());
+        synchronized (monitor) {
+            File lockFile = new File(uploadsDir, fingerprint.digest + ".lock");
+            try (FileChannel lockChannel = FileChannel.open(lockFile.toPath(),
+                         StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    // Someone else may have finished the same content while we waited
+                    existing = locate(fingerprint.digest, fingerprint.size);
+                    if (existing != null) {
+                        return new Blob(fingerprint.digest, fingerprint.size, existing, false);
+                    }
+
+                    ChunkedUpload upload = new ChunkedUpload(uploadsDir, source, fingerprint);
+                    File part = upload.run(progress);
+
+                    // Compressed next to the verified part file, then moved into place
+                    File target = pathFor(fingerprint.digest);
+                    target.getParentFile().mkdirs();
+                    File compressed = Compression.compressFile(part, source.getName());
+                    if (compressed != null) {
+                        File compressedTarget = new File(target.getPath() + Compression.SUFFIX);
+                        Files.move(compressed.toPath(), compressedTarget.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                        part.delete();
+                        target = compressedTarget;
+                    } else {
+                        Files.move(part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    upload.finish();
+                    // Safe while still locked: later uploads find the blob before taking the lock
+                    lockFile.delete();
+                    return new Blob(fingerprint.digest, fingerprint.size, target, true);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    public String digest(File file) throws IOException {
+        return fingerprint(file).digest;
+    }
+
+    Fingerprint fingerprint(File file) throws IOException {
+        String key = file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified();
+        Fingerprint cached = fingerprintCache.get(key);
+        if (cached != null) return cached;
+
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            int[] chunkCrcs = new int[(int) ((size + ChunkedUpload.CHUNK_SIZE - 1) / ChunkedUpload.CHUNK_SIZE)];
+            CRC32C crc = new CRC32C();
+            long position = 0;
+            while (position < size) {
+                // Never read across a chunk boundary so each chunk gets its own checksum
+                long chunkEnd = Math.min(size, (position / ChunkedUpload.CHUNK_SIZE + 1) * ChunkedUpload.CHUNK_SIZE);
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), chunkEnd - position));
+                int n = in.read(buffer, position);
+                if (n < 0) throw new IOException("File changed while hashing: " + file);
+                buffer.flip();
+                sha.update(buffer.duplicate());
+                crc.update(buffer);
+                position += n;
+                if (position == chunkEnd) {
+                    chunkCrcs[(int) ((position - 1) / ChunkedUpload.CHUNK_SIZE)] = (int) crc.getValue();
+                    crc.reset();
+                }
+            }
+            Fingerprint fingerprint = new Fingerprint(hex(sha.digest()), size, chunkCrcs);
+            fingerprintCache.put(key, fingerprint);
+            return fingerprint;
+        }
+    }
+
+    // Call in the same transaction that inserts the referencing row
+    public static void addReference(Connection conn, Blob blob) throws SQLException {
+        String sql = "INSERT INTO blobs (digest, size, ref_count) VALUES (?, ?, 1) " +
+                     "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, blob.digest);
+            ps.setLong(2, blob.size);
+            ps.executeUpdate();
+        }
+    }
+
+    // addReference for several blobs in one round trip
+    public static void addReferences(Connection conn, List<Blob> blobs) throws SQLException {
+        String sql = "INSERT INTO blobs (digest, size, ref_count) VALUES (?, ?, 1) " +
+                     "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Blob blob : blobs) {
+                ps.setString(1, blob.digest);
+                ps.setLong(2, blob.size);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // Drops the references held by a course's materials; call before the rows are deleted
+    public static void releaseCourse(Connection conn, int courseId) throws SQLException {
+        String sql = "UPDATE blobs b " +
+                     "JOIN (SELECT blob_digest, COUNT(*) AS refs FROM study_materials " +
+                     "      WHERE course_id = ? AND blob_digest IS NOT NULL GROUP BY blob_digest) m " +
+                     "ON m.blob_digest = b.digest " +
+                     "SET b.ref_count = GREATEST(b.ref_count - m.refs, 0)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, courseId);
+            ps.executeUpdate();
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
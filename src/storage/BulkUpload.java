@@ -0,0 +1,160 @@
+package storage;
+
+import config.AppConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Puts many files into the {@link BlobStore} at once. Up to lms.upload.parallel files are ingested
+ * at the same time, so while one file is being hashed another is already being copied and the disk
+ * stays busy. Progress is reported for the whole batch rather than per file.
+ *
+ * Only the store step happens here; the caller records all stored files in one transaction.
+ */
+public class BulkUpload {
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    public interface Progress {
+        // Called on the upload threads, at most every PROGRESS_INTERVAL_MILLIS and once at the end
+        void onProgress(int filesDone, int fileCount, long bytesDone, long totalBytes);
+    }
+
+    public static class Item {
+        public final File source;
+        // Volatile: a task cut off by an interrupt may still be finishing when run returns
+        private volatile BlobStore.Blob blob;
+        private volatile Exception error;
+
+        Item(File source) {
+            this.source = source;
+        }
+
+        public BlobStore.Blob blob() { return blob; }
+        public Exception error() { return error; }
+    }
+
+    // Regular files among the selection, with directories expanded recursively; hidden files are skipped
+    public static List<File> expand(File[] selection) {
+        List<File> files = new ArrayList<>();
+        for (File f : selection) collect(f, files);
+        return files;
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isHidden()) return;
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) return;
+            Arrays.sort(children, Comparator.comparing(File::getName));
+            for (File child : children) collect(child, files);
+        } else if (file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Ingests every file and returns one item per file, in the given order. A file that fails has
+     * its error set and does not stop the others; if the batch is interrupted, the files not stored
+     * by then get a "Cancelled" error. Every returned item has either a blob or an error.
+     */
+    public static List<Item> run(List<File> files, Progress progress) {
+        List<Item> items = new ArrayList<>();
+        long totalBytes = 0;
+        for (File f : files) {
+            items.add(new Item(f));
+            totalBytes += f.length();
+        }
+
+        Tracker tracker = new Tracker(files.size(), totalBytes, progress);
+        int threads = Math.max(1, Math.min(AppConfig.getInt("lms.upload.parallel", 3), files.size()));
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bulk-upload-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                int index = i;
+                Item item = items.get(i);
+                futures.add(pool.submit(() -> {
+                    try {
+                        item.blob = BlobStore.get().ingest(item.source,
+                                (uploaded, total) -> tracker.update(index, uploaded));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        item.error = e;
+                    }
+                    tracker.fileDone(index, item.source.length());
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        for (Item item : items) {
+            if (item.blob == null && item.error == null) item.error = new IOException("Cancelled");
+        }
+        tracker.report(true);
+        return items;
+    }
+
+    private static class Tracker {
+        final int fileCount;
+        final long totalBytes;
+        final Progress progress;
+        final AtomicLongArray perFile;
+        final AtomicLong bytesDone = new AtomicLong();
+        final AtomicInteger filesDone = new AtomicInteger();
+        final AtomicLong lastReport = new AtomicLong();
+
+        Tracker(int fileCount, long totalBytes, Progress progress) {
+            this.fileCount = fileCount;
+            this.totalBytes = totalBytes;
+            this.progress = progress;
+            this.perFile = new AtomicLongArray(fileCount);
+        }
+
+        void update(int index, long uploaded) {
+            bytesDone.addAndGet(uploaded - perFile.getAndSet(index, uploaded));
+            report(false);
+        }
+
+        // Files that were already stored, or failed, count as fully done
+        void fileDone(int index, long size) {
+            bytesDone.addAndGet(size - perFile.getAndSet(index, size));
+            filesDone.incrementAndGet();
+            report(false);
+        }
+
+        void report(boolean last) {
+            if (progress == null) return;
+            long now = System.currentTimeMillis();
+            long previous = lastReport.get();
+            if (last || (now - previous >= PROGRESS_INTERVAL_MILLIS && lastReport.compareAndSet(previous, now))) {
+                progress.onProgress(filesDone.get(), fileCount, Math.min(bytesDone.get(), totalBytes), totalBytes);
+            }
+        }
+    }
+}
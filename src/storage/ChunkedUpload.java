@@ -0,0 +1,155 @@
+package storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.zip.CRC32C;
+
+/**
+ * Copies one file into the blob store's upload area in fixed-size chunks.
+ *
+ * Every chunk is read back and checked against the CRC32C taken while the source was hashed, and
+ * only then recorded in a manifest next to the part file. If the app or the copy fails, the next
+ * upload of the same content picks up after the last chunk that still checks out.
+ */
+public class ChunkedUpload {
+    static final int CHUNK_SIZE = 4 << 20;
+
+    public interface Progress {
+        // Called on the uploading thread
+        void onProgress(long uploaded, long total);
+    }
+
+    private final File source;
+    private final BlobStore.Fingerprint fingerprint;
+    private final File part;
+    private final File manifest;
+
+    ChunkedUpload(File uploadsDir, File source, BlobStore.Fingerprint fingerprint) {
+        this.source = source;
+        this.fingerprint = fingerprint;
+        this.part = new File(uploadsDir, fingerprint.digest + ".part");
+        this.manifest = new File(uploadsDir, fingerprint.digest + ".manifest");
+    }
+
+    // Returns the complete, verified part file
+    File run(Progress progress) throws IOException {
+        int chunks = fingerprint.chunkCrcs.length;
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.READ)) {
+            int next = resumePoint(out);
+            report(progress, next);
+            for (int chunk = next; chunk < chunks; chunk++) {
+                copyChunk(in, out, chunk);
+                saveManifest(chunk + 1);
+                report(progress, chunk + 1);
+            }
+            out.truncate(fingerprint.size);
+        }
+        return part;
+    }
+
+    // The part file has been moved into the store
+    void finish() {
+        manifest.delete();
+    }
+
+    private void copyChunk(FileChannel in, FileChannel out, int chunk) throws IOException {
+        long start = (long) chunk * CHUNK_SIZE;
+        long length = Math.min(CHUNK_SIZE, fingerprint.size - start);
+
+        for (int attempt = 1; ; attempt++) {
+            long copied = 0;
+            while (copied < length) {
+                out.position(start + copied);
+                long n = in.transferTo(start + copied, length - copied, out);
+                if (n <= 0) throw new IOException("File changed while uploading: " + source);
+                copied += n;
+            }
+            out.force(false);
+
+            if (crc(out, start, length) == fingerprint.chunkCrcs[chunk]) return;
+            if (attempt == 2) {
+                throw new IOException("Chunk " + chunk + " of " + source.getName() +
+                        " failed verification; was the file changed during the upload?");
+            }
+        }
+    }
+
+    // Number of leading chunks already in the part file with the expected checksum
+    private int resumePoint(FileChannel out) throws IOException {
+        if (!manifest.exists()) return 0;
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(manifest)) {
+            props.load(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        if (!fingerprint.digest.equals(props.getProperty("digest"))
+                || !String.valueOf(CHUNK_SIZE).equals(props.getProperty("chunkSize"))) {
+            return 0;
+        }
+
+        int done = Math.min(Integer.parseInt(props.getProperty("chunks.done", "0")), fingerprint.chunkCrcs.length);
+        for (int chunk = 0; chunk < done; chunk++) {
+            long start = (long) chunk * CHUNK_SIZE;
+            long length = Math.min(CHUNK_SIZE, fingerprint.size - start);
+            if (out.size() < start + length || crc(out, start, length) != fingerprint.chunkCrcs[chunk]) {
+                return chunk;
+            }
+        }
+        return done;
+    }
+
+    private void saveManifest(int chunksDone) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("digest", fingerprint.digest);
+        props.setProperty("size", String.valueOf(fingerprint.size));
+        props.setProperty("chunkSize", String.valueOf(CHUNK_SIZE));
+        props.setProperty("source", source.getAbsolutePath());
+        props.setProperty("chunks.done", String.valueOf(chunksDone));
+        for (int chunk = 0; chunk < chunksDone; chunk++) {
+            props.setProperty("chunk." + chunk, Integer.toHexString(fingerprint.chunkCrcs[chunk]));
+        }
+
+        File tmp = new File(manifest.getParentFile(), manifest.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, null);
+        }
+        Files.move(tmp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void report(Progress progress, int chunksDone) {
+        if (progress != null) {
+            progress.onProgress(Math.min((long) chunksDone * CHUNK_SIZE, fingerprint.size), fingerprint.size);
+        }
+    }
+
+    private static int crc(FileChannel channel, long start, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(length, 1 << 20));
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) break;
+            buffer.flip();
+            crc.update(buffer);
+            position += n;
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,273 @@
+package storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of stored files. A compressed file keeps its name with a ".lmsz" suffix added, so a
+ * reader can always tell from the path alone how to open it; {@link #open} does that transparently.
+ * The suffix is our own rather than ".gz": a file stored as it is (an uploaded backup.gz, say) keeps
+ * its own name and must not be mistaken for one we compressed. See {@link #storedName}.
+ *
+ * The codec depends on the original file type: plain text gets the best ratio, other binary
+ * documents a fast level, and formats that are compressed already (Office XML, images, video,
+ * archives, PDF) are stored as they are.
+ */
+public class Compression {
+    public static final String SUFFIX = ".lmsz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Keep the compressed copy only if it saves at least this share of the size
+    private static final double MIN_SAVING = 0.10;
+
+    private static final Set<String> ALREADY_COMPRESSED = Set.of(
+            "gz", "tgz", "zip", "7z", "rar", "bz2", "xz", "jar",
+            "docx", "pptx", "xlsx", "odt", "odp", "ods", "epub", "pdf",
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "m4a", "aac", "ogg", "mp4", "m4v", "mov", "avi", "mkv", "webm");
+    private static final Set<String> TEXT = Set.of(
+            "txt", "md", "csv", "tsv", "log", "rtf", "tex", "json", "xml", "html", "htm", "svg", "sql",
+            "java", "py", "c", "h", "cpp", "cs", "js", "ts", "css", "ipynb");
+
+    public enum Codec {
+        STORE(0), GZIP_FAST(1), GZIP_BEST(9);
+
+        final int level;
+
+        Codec(int level) {
+            this.level = level;
+        }
+    }
+
+    private static final Stats STATS = new Stats();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static Codec codecFor(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String ext = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        if (ALREADY_COMPRESSED.contains(ext)) return Codec.STORE;
+        return TEXT.contains(ext) ? Codec.GZIP_BEST : Codec.GZIP_FAST;
+    }
+
+    // A name for a file stored as it is that can't be taken for a compressed one
+    public static String storedName(String name) {
+        return name.endsWith(SUFFIX) ? name + "_" : name;
+    }
+
+    public static boolean isCompressed(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    // The name the file had before compression
+    public static String logicalName(File file) {
+        String name = file.getName();
+        return isCompressed(file) ? name.substring(0, name.length() - SUFFIX.length()) : name;
+    }
+
+    // A path recorded before the file was recompressed still finds the compressed copy
+    public static File resolve(File stored) {
+        if (!stored.exists() && !isCompressed(stored)) {
+            File compressed = new File(stored.getPath() + SUFFIX);
+            if (compressed.exists()) return compressed;
+        }
+        return stored;
+    }
+
+    // Opens a stored file for reading its original bytes
+    public static InputStream open(File stored) throws IOException {
+        File file = resolve(stored);
+        InputStream in = new FileInputStream(file);
+        return isCompressed(file) ? decompressing(in) : in;
+    }
+
+    public static InputStream decompressing(InputStream compressed) throws IOException {
+        return new DecompressingInputStream(compressed);
+    }
+
+    // Statistics are recorded by the caller once it decides to keep the output, see Stats.compressed
+    public static CompressingOutputStream compressing(OutputStream target, Codec codec) throws IOException {
+        return new CompressingOutputStream(target, codec);
+    }
+
+    /**
+     * Compresses plain into plain + SUFFIX if the codec for fileName allows it and it pays off.
+     * Returns the compressed file, or null when plain was left as it is.
+     */
+    public static File compressFile(File plain, String fileName) throws IOException {
+        Codec codec = codecFor(fileName);
+        if (codec == Codec.STORE) return null;
+
+        File target = new File(plain.getPath() + SUFFIX);
+        File tmp = new File(plain.getPath() + SUFFIX + ".tmp");
+        CompressingOutputStream out;
+        try (InputStream in = new FileInputStream(plain)) {
+            out = compressing(new FileOutputStream(tmp), codec);
+            try (out) {
+                in.transferTo(out);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        if (out.storedBytes() > out.rawBytes() * (1 - MIN_SAVING)) {
+            tmp.delete();
+            return null;
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        STATS.compressed(out.rawBytes(), out.storedBytes(), out.cpuNanos());
+        return target;
+    }
+
+    public static Stats stats() {
+        return STATS;
+    }
+
+    private static long threadCpuNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    // Totals for this process since start-up
+    public static class Stats {
+        private final AtomicLong filesCompressed = new AtomicLong();
+        private final AtomicLong rawBytesCompressed = new AtomicLong();
+        private final AtomicLong storedBytes = new AtomicLong();
+        private final AtomicLong compressCpuNanos = new AtomicLong();
+        private final AtomicLong bytesDecompressed = new AtomicLong();
+        private final AtomicLong decompressCpuNanos = new AtomicLong();
+
+        public void compressed(long rawBytes, long stored, long cpu) {
+            filesCompressed.incrementAndGet();
+            rawBytesCompressed.addAndGet(rawBytes);
+            storedBytes.addAndGet(stored);
+            compressCpuNanos.addAndGet(cpu);
+        }
+
+        void decompressed(long rawBytes, long cpu) {
+            bytesDecompressed.addAndGet(rawBytes);
+            decompressCpuNanos.addAndGet(cpu);
+        }
+
+        public long filesCompressed() { return filesCompressed.get(); }
+        public long bytesSaved() { return rawBytesCompressed.get() - storedBytes.get(); }
+        public long bytesDecompressed() { return bytesDecompressed.get(); }
+
+        public double compressCpuMillisPerMB() {
+            return perMB(compressCpuNanos.get(), rawBytesCompressed.get());
+        }
+
+        public double decompressCpuMillisPerMB() {
+            return perMB(decompressCpuNanos.get(), bytesDecompressed.get());
+        }
+
+        private static double perMB(long nanos, long bytes) {
+            return bytes == 0 ? 0 : (nanos / 1e6) / (bytes / (double) (1 << 20));
+        }
+    }
+
+    public static class CompressingOutputStream extends FilterOutputStream {
+        private final CountingOutputStream sink;
+        private long rawBytes;
+        private long cpu;
+
+        CompressingOutputStream(OutputStream target, Codec codec) throws IOException {
+            super(null);
+            this.sink = new CountingOutputStream(target);
+            this.out = new GZIPOutputStream(sink, BUFFER_SIZE) {
+                { def.setLevel(codec.level); }
+            };
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = threadCpuNanos();
+            out.write(b, off, len);
+            cpu += threadCpuNanos() - start;
+            rawBytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = threadCpuNanos();
+            out.close();
+            cpu += threadCpuNanos() - start;
+        }
+
+        public long rawBytes() { return rawBytes; }
+        public long storedBytes() { return sink.count; }
+        public long cpuNanos() { return cpu; }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static class DecompressingInputStream extends FilterInputStream {
+        private long rawBytes;
+        private long cpu;
+        private boolean closed;
+
+        DecompressingInputStream(InputStream compressed) throws IOException {
+            super(new GZIPInputStream(compressed, BUFFER_SIZE));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = threadCpuNanos();
+            int n = in.read(b, off, len);
+            cpu += threadCpuNanos() - start;
+            if (n > 0) rawBytes += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                STATS.decompressed(rawBytes, cpu);
+            }
+            in.close();
+        }
+    }
+}
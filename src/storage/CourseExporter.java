@@ -0,0 +1,257 @@
+package storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes one course to a ZIP archive: a CSV file per table (course, roster, assignments,
+ * submissions with marks, submission files, materials, messages) plus the stored files themselves.
+ *
+ * Every query is read as a MySQL streaming result (fetch size Integer.MIN_VALUE) and each row goes
+ * straight into the archive, so memory use doesn't depend on the size of the course. A streaming
+ * result holds the connection until it is closed, so files are written in a second pass over their
+ * rows rather than while the CSV is being written.
+ */
+public class CourseExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public interface Progress {
+        // Called on the exporting thread
+        void onProgress(String step, long done, long total);
+    }
+
+    public static class Report {
+        public long rows;
+        public long files;
+        public long missingFiles;
+        public long archiveBytes;
+        public long elapsedMillis;
+    }
+
+    private final Connection conn;
+    private final int courseId;
+    private final Progress progress;
+    private final Report report = new Report();
+    private long done;
+    private long total;
+
+    private CourseExporter(Connection conn, int courseId, Progress progress) {
+        this.conn = conn;
+        this.courseId = courseId;
+        this.progress = progress;
+    }
+
+    /**
+     * Exports the course into target. The archive is written next to it under a temporary name and
+     * only renamed once complete, so a failed export never leaves a truncated file behind.
+     */
+    public static Report export(Connection conn, int courseId, File target, Progress progress)
+            throws SQLException, IOException {
+        return new CourseExporter(conn, courseId, progress).run(target);
+    }
+
+    private Report run(File target) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        // One snapshot for all tables, so submissions never refer to assignments the export lacks
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+        }
+        try {
+            return write(target, start);
+        } finally {
+            conn.commit();
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private Report write(File target, long start) throws SQLException, IOException {
+        total = countWork();
+
+        File part = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".part");
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(part), BUFFER_SIZE))) {
+            csv(zip, "course.csv", "Course",
+                "SELECT course_id, course_code, course_name, description, credits, teacher_id FROM courses WHERE course_id = ?");
+            csv(zip, "roster.csv", "Roster",
+                "SELECT u.user_id, u.username, u.full_name, u.email, e.enrollment_date, e.grade " +
+                "FROM enrollments e JOIN users u ON u.user_id = e.student_id WHERE e.course_id = ? ORDER BY u.full_name");
+            csv(zip, "assignments.csv", "Assignments",
+                "SELECT assignment_id, title, description, due_date, max_marks FROM assignments WHERE course_id = ? ORDER BY assignment_id");
+            csv(zip, "submissions.csv", "Submissions",
+                "SELECT s.submission_id, s.assignment_id, a.title AS assignment, s.student_id, u.full_name AS student, " +
+                "s.submission_date, s.marks_obtained, a.max_marks, s.feedback " +
+                "FROM submissions s JOIN assignments a ON a.assignment_id = s.assignment_id " +
+                "JOIN users u ON u.user_id = s.student_id WHERE a.course_id = ? ORDER BY s.submission_id");
+            csv(zip, "submission_files.csv", "Submission files",
+                "SELECT f.file_id, f.submission_id, f.assignment_id, f.student_id, f.file_name, f.size, f.digest, f.uploaded_at " +
+                "FROM submission_files f JOIN assignments a ON a.assignment_id = f.assignment_id " +
+                "WHERE a.course_id = ? ORDER BY f.file_id");
+            csv(zip, "materials.csv", "Materials",
+                "SELECT material_id, title, description, file_name, blob_digest, uploaded_by, upload_date " +
+                "FROM study_materials WHERE course_id = ? ORDER BY material_id");
+            csv(zip, "messages.csv", "Messages",
+                "SELECT m.message_id, m.sender_id, u.full_name AS sender, m.subject, m.message_text, m.sent_date " +
+                "FROM messages m LEFT JOIN users u ON u.user_id = m.sender_id WHERE m.course_id = ? ORDER BY m.message_id");
+
+            files(zip, "Material files",
+                "SELECT material_id, file_name, file_path FROM study_materials " +
+                "WHERE course_id = ? AND file_path IS NOT NULL ORDER BY material_id",
+                "files/materials/", false);
+            files(zip, "Submission files",
+                "SELECT f.file_id, f.file_name, f.file_path, f.assignment_id, f.student_id " +
+                "FROM submission_files f JOIN assignments a ON a.assignment_id = f.assignment_id " +
+                "WHERE a.course_id = ? ORDER BY f.file_id",
+                "files/submissions/", true);
+        } catch (SQLException | IOException | RuntimeException e) {
+            part.delete();
+            throw e;
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        report.archiveBytes = target.length();
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    // Rows plus files, so progress can be shown as a fraction; only counted, never loaded
+    private long countWork() throws SQLException {
+        String sql = "SELECT " +
+                "(SELECT COUNT(*) FROM enrollments WHERE course_id = ?) + " +
+                "(SELECT COUNT(*) FROM assignments WHERE course_id = ?) + " +
+                "(SELECT COUNT(*) FROM submissions s JOIN assignments a ON a.assignment_id = s.assignment_id WHERE a.course_id = ?) + " +
+                "2 * (SELECT COUNT(*) FROM submission_files f JOIN assignments a ON a.assignment_id = f.assignment_id WHERE a.course_id = ?) + " +
+                "2 * (SELECT COUNT(*) FROM study_materials WHERE course_id = ?) + " +
+                "(SELECT COUNT(*) FROM messages WHERE course_id = ?) + 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= 6; i++) ps.setInt(i, courseId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private PreparedStatement streaming(String sql) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(Integer.MIN_VALUE);
+        ps.setInt(1, courseId);
+        return ps;
+    }
+
+    private void csv(ZipOutputStream zip, String entryName, String step, String sql) throws SQLException, IOException {
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(entryName));
+        Writer out = new OutputStreamWriter(new NonClosing(zip), StandardCharsets.UTF_8);
+        try (PreparedStatement ps = streaming(sql); ResultSet rs = ps.executeQuery()) {
+            ResultSetMetaData meta = rs.getMetaData();
+            int columns = meta.getColumnCount();
+            for (int i = 1; i <= columns; i++) {
+                if (i > 1) out.write(',');
+                writeField(out, meta.getColumnLabel(i));
+            }
+            out.write("\r\n");
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) out.write(',');
+                    writeField(out, rs.getString(i));
+                }
+                out.write("\r\n");
+                report.rows++;
+                step(step);
+            }
+        }
+        out.flush();
+        zip.closeEntry();
+    }
+
+    // RFC 4180 quoting; null becomes an empty field
+    private static void writeField(Writer out, String value) throws IOException {
+        if (value == null) return;
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Copies the files named by the query's rows into the archive, decompressing the ones we compressed.
+     * Entries are named &lt;id&gt;_&lt;file name&gt; so names never clash; with perAssignment the
+     * query also returns assignment and student id, and files go into a folder per assignment.
+     */
+    private void files(ZipOutputStream zip, String step, String sql, String folder, boolean perAssignment)
+            throws SQLException, IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (PreparedStatement ps = streaming(sql); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String fileName = rs.getString(2) != null ? rs.getString(2) : "file";
+                File stored = Compression.resolve(new File(rs.getString(3)));
+                String name = folder + (perAssignment ? rs.getInt(4) + "/" + rs.getInt(5) + "_" : "")
+                        + rs.getInt(1) + "_" + fileName.replaceAll("[\\\\/:*?\"<>|]", "_");
+                if (!stored.exists()) {
+                    report.missingFiles++;
+                    step(step);
+                    continue;
+                }
+
+                // Already-compressed formats are stored as they are instead of being deflated again
+                zip.setLevel(Compression.codecFor(fileName) == Compression.Codec.STORE
+                        ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(new ZipEntry(name));
+                try (InputStream in = Compression.open(stored)) {
+                    int n;
+                    while ((n = in.read(buffer)) != -1) zip.write(buffer, 0, n);
+                }
+                zip.closeEntry();
+                report.files++;
+                step(step);
+            }
+        }
+    }
+
+    private void step(String step) {
+        done++;
+        if (progress != null && (done % 100 == 0 || done >= total)) progress.onProgress(step, done, total);
+    }
+
+    // Lets a Writer be flushed into the current entry without closing the archive
+    private static class NonClosing extends FilterOutputStream {
+        NonClosing(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package storage;
+
+import javax.swing.SwingUtilities;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies stored material files to a user-chosen location in the background.
+ *
+ * At most {@link #MAX_PARALLEL} downloads run at once, the rest wait in the queue. Each copy is a
+ * series of FileChannel.transferTo calls of {@link #CHUNK_SIZE} bytes so that progress can be
+ * reported and a cancel takes effect between chunks. Compressed files are decompressed on the way.
+ * Files that are being downloaded a lot are served from {@link BlobCache} instead of the disk.
+ */
+public class DownloadService {
+    private static final int MAX_PARALLEL = 3;
+    private static final long CHUNK_SIZE = 8L << 20;
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    public interface Listener {
+        // Called on the EDT, at most every PROGRESS_INTERVAL_MILLIS while running and once at the end
+        void onUpdate(Download download);
+    }
+
+    public static class Download {
+        public final File source;
+        public final File target;
+        public final long size;
+        private final Listener listener;
+        private volatile long copied;
+        private volatile State state = State.QUEUED;
+        private volatile boolean cancelRequested;
+        private volatile IOException error;
+        private long lastNotifyMillis;
+
+        Download(File source, File target, Listener listener) {
+            this.source = source;
+            this.target = target;
+            this.size = source.length();
+            this.listener = listener;
+        }
+
+        public long copied() { return copied; }
+        public State state() { return state; }
+        public IOException error() { return error; }
+
+        public int percent() {
+            return size == 0 ? (state == State.DONE ? 100 : 0) : (int) (copied * 100 / size);
+        }
+
+        public boolean isFinished() {
+            return state == State.DONE || state == State.FAILED || state == State.CANCELLED;
+        }
+
+        public void cancel() {
+            cancelRequested = true;
+        }
+    }
+
+    private static DownloadService instance;
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService pool = Executors.newFixedThreadPool(MAX_PARALLEL, r -> {
+        Thread t = new Thread(r, "download-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static synchronized DownloadService get() {
+        if (instance == null) instance = new DownloadService();
+        return instance;
+    }
+
+    public Download start(File source, File target, Listener listener) {
+        Download download = new Download(source, target, listener);
+        pool.submit(() -> run(download));
+        return download;
+    }
+
+    private void run(Download d) {
+        if (d.cancelRequested) {
+            finish(d, State.CANCELLED);
+            return;
+        }
+        d.state = State.RUNNING;
+        notify(d);
+
+        // Written next to the target and renamed at the end, so a partial file never has the final name
+        File part = new File(d.target.getAbsoluteFile().getParentFile(), d.target.getName() + ".part");
+        try {
+            ByteBuffer cached = BlobCache.get().lookup(d.source);
+            boolean complete;
+            if (Compression.isCompressed(d.source)) {
+                complete = cached != null ? inflate(d, part, BlobCache.stream(cached)) : inflate(d, part);
+            } else {
+                complete = cached != null ? write(d, part, cached) : transfer(d, part);
+            }
+            if (!complete) {
+                Files.deleteIfExists(part.toPath());
+                finish(d, State.CANCELLED);
+                return;
+            }
+            Files.move(part.toPath(), d.target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            finish(d, State.DONE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            part.delete();
+            d.error = e;
+            finish(d, State.FAILED);
+        }
+    }
+
+    // Returns false if the download was cancelled part way
+    private boolean transfer(Download d, File part) throws IOException {
+        try (FileChannel in = FileChannel.open(d.source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long length = in.size();
+            long position = 0;
+            while (position < length) {
+                if (d.cancelRequested) return false;
+                long n = in.transferTo(position, Math.min(CHUNK_SIZE, length - position), out);
+                if (n <= 0) throw new IOException("File changed while downloading: " + d.source);
+                position += n;
+                progress(d, position);
+            }
+        }
+        return true;
+    }
+
+    private boolean write(Download d, File part, ByteBuffer cached) throws IOException {
+        try (FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (cached.hasRemaining()) {
+                if (d.cancelRequested) return false;
+                ByteBuffer chunk = cached.slice();
+                chunk.limit((int) Math.min(CHUNK_SIZE, chunk.remaining()));
+                int n = out.write(chunk);
+                cached.position(cached.position() + n);
+                progress(d, cached.position());
+            }
+        }
+        return true;
+    }
+
+    private boolean inflate(Download d, File part) throws IOException {
+        try (InputStream in = new FileInputStream(d.source)) {
+            return inflate(d, part, in);
+        }
+    }
+
+    // Compressed files are streamed through the decompressor; progress counts compressed bytes read
+    private boolean inflate(Download d, File part, InputStream source) throws IOException {
+        CountingInputStream counted = new CountingInputStream(source);
+        try (InputStream raw = Compression.decompressing(counted);
+             OutputStream out = new FileOutputStream(part)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = raw.read(buffer)) != -1) {
+                if (d.cancelRequested) return false;
+                out.write(buffer, 0, n);
+                progress(d, counted.count);
+            }
+        }
+        return true;
+    }
+
+    private void progress(Download d, long position) {
+        d.copied = position;
+        long now = System.currentTimeMillis();
+        if (now - d.lastNotifyMillis >= PROGRESS_INTERVAL_MILLIS) {
+            d.lastNotifyMillis = now;
+            notify(d);
+        }
+    }
+
+    private void finish(Download d, State state) {
+        d.state = state;
+        notify(d);
+    }
+
+    private void notify(Download d) {
+        if (d.listener != null) SwingUtilities.invokeLater(() -> d.listener.onUpdate(d));
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package storage;
+
+import config.AppConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Mark-and-sweep collection of files under materials/ that no database row points at any more,
+ * for example after a course was deleted and its materials went with it.
+ *
+ * The mark phase streams every file_path from study_materials and submission_files into a sorted
+ * array of 64-bit path hashes. The sweep then walks the directory tree on a fork/join pool and moves
+ * unreferenced files into materials/.trash (or deletes them). A hash collision can only keep a file
+ * that should have gone, never remove one that is still referenced.
+ *
+ * Running during uploads is safe because of the grace period: a file is only collected if it was
+ * last modified more than lms.gc.graceHours before the mark started. New blobs, staged submissions
+ * and part files are all younger than that, and BlobStore touches a blob it deduplicates against.
+ */
+public class OrphanCollector {
+    private static final String QUARANTINE_DIR = ".trash";
+    private static final String UPLOADS_DIR = "uploads";
+
+    public interface Progress {
+        // Called on the job's thread and on the sweep's worker threads
+        void onProgress(String phase, long filesScanned);
+    }
+
+    public static class Report {
+        public long referencedPaths;
+        public long filesScanned;
+        public long bytesScanned;
+        public long orphansFound;
+        public long bytesReclaimed;
+        public long skippedRecent;
+        public long staleUploadsRemoved;
+        public long blobRowsRemoved;
+        public long quarantineBatchesPurged;
+        public boolean quarantined;
+        public long elapsedMillis;
+    }
+
+    private final File root;
+    private final long graceMillis = TimeUnit.HOURS.toMillis(AppConfig.getLong("lms.gc.graceHours", 24));
+    private final long quarantineMillis = TimeUnit.DAYS.toMillis(AppConfig.getLong("lms.gc.quarantineDays", 30));
+    private final boolean quarantine = AppConfig.getBoolean("lms.gc.quarantine", true);
+    private final int threads = AppConfig.getInt("lms.gc.threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    public OrphanCollector() {
+        this(new File("materials"));
+    }
+
+    OrphanCollector(File root) {
+        this.root = root.getAbsoluteFile();
+    }
+
+    public Report run(Connection conn, Progress progress) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        Report report = new Report();
+        report.quarantined = quarantine;
+
+        if (progress != null) progress.onProgress("Reading file references", 0);
+        long[] referenced = markReferenced(conn);
+        report.referencedPaths = referenced.length;
+
+        // Anything modified after this point in time is left alone
+        long cutoff = start - graceMillis;
+        File trash = new File(new File(root, QUARANTINE_DIR), new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(start)));
+        Sweep sweep = new Sweep(referenced, cutoff, trash, progress);
+        if (root.isDirectory()) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new SweepDirectory(sweep, root));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        report.filesScanned = sweep.filesScanned.get();
+        report.bytesScanned = sweep.bytesScanned.get();
+        report.orphansFound = sweep.orphans.get();
+        report.bytesReclaimed = sweep.bytesReclaimed.get();
+        report.skippedRecent = sweep.skippedRecent.get();
+
+        if (progress != null) progress.onProgress("Cleaning up uploads", report.filesScanned);
+        report.staleUploadsRemoved = removeStaleUploads(cutoff);
+        report.blobRowsRemoved = removeUnusedBlobRows(conn);
+        report.quarantineBatchesPurged = purgeQuarantine(start - quarantineMillis);
+
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    // Sorted, de-duplicated hashes of every path the database refers to
+    private long[] markReferenced(Connection conn) throws SQLException {
+        long[] hashes = new long[1024];
+        int count = 0;
+        String[] queries = {
+                "SELECT file_path FROM study_materials WHERE file_path IS NOT NULL",
+                "SELECT file_path FROM submission_files"
+        };
+        for (String sql : queries) {
+            // Streamed row by row so the whole result never sits in memory
+            try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        if (count == hashes.length) hashes = Arrays.copyOf(hashes, count * 2);
+                        hashes[count++] = pathHash(new File(rs.getString(1)));
+                    }
+                }
+            }
+        }
+        Arrays.sort(hashes, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || hashes[unique - 1] != hashes[i]) hashes[unique++] = hashes[i];
+        }
+        return Arrays.copyOf(hashes, unique);
+    }
+
+    /**
+     * FNV-1a over the normalised absolute path. The compressed suffix is ignored so that a row still
+     * pointing at the plain name keeps its compressed copy, and the other way round.
+     */
+    static long pathHash(File file) {
+        String path = file.getAbsoluteFile().toPath().normalize().toString();
+        if (path.endsWith(Compression.SUFFIX)) path = path.substring(0, path.length() - Compression.SUFFIX.length());
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private class Sweep {
+        final long[] referenced;
+        final long cutoff;
+        final File trash;
+        final Progress progress;
+        final AtomicLong filesScanned = new AtomicLong();
+        final AtomicLong bytesScanned = new AtomicLong();
+        final AtomicLong orphans = new AtomicLong();
+        final AtomicLong bytesReclaimed = new AtomicLong();
+        final AtomicLong skippedRecent = new AtomicLong();
+
+        Sweep(long[] referenced, long cutoff, File trash, Progress progress) {
+            this.referenced = referenced;
+            this.cutoff = cutoff;
+            this.trash = trash;
+            this.progress = progress;
+        }
+
+        void visit(File file) {
+            long scanned = filesScanned.incrementAndGet();
+            long size = file.length();
+            bytesScanned.addAndGet(size);
+            if (progress != null && scanned % 1000 == 0) progress.onProgress("Scanning files", scanned);
+
+            if (Arrays.binarySearch(referenced, pathHash(file)) >= 0) return;
+            if (file.lastModified() > cutoff) {
+                skippedRecent.incrementAndGet();
+                return;
+            }
+            try {
+                BlobCache.get().invalidate(file);
+                if (quarantine) {
+                    Path target = trash.toPath().resolve(root.toPath().relativize(file.toPath()));
+                    Files.createDirectories(target.getParent());
+                    Files.move(file.toPath(), target);
+                } else {
+                    Files.delete(file.toPath());
+                }
+                orphans.incrementAndGet();
+                bytesReclaimed.addAndGet(size);
+            } catch (IOException e) {
+                // Leave this one for the next run
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // One task per directory; subdirectories are forked so large trees are walked in parallel
+    private class SweepDirectory extends RecursiveAction {
+        private final Sweep sweep;
+        private final File dir;
+
+        SweepDirectory(Sweep sweep, File dir) {
+            this.sweep = sweep;
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            File[] children = dir.listFiles();
+            if (children == null) return;
+            List<SweepDirectory> subdirs = new ArrayList<>();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    if (!skip(child)) subdirs.add(new SweepDirectory(sweep, child));
+                } else {
+                    sweep.visit(child);
+                }
+            }
+            invokeAll(subdirs);
+        }
+
+        // Quarantine, the search index and in-progress uploads are not material files
+        private boolean skip(File child) {
+            if (child.getName().startsWith(".")) return true;
+            File parent = child.getParentFile();
+            return child.getName().equals(UPLOADS_DIR) && parent.getName().equals("blobs");
+        }
+    }
+
+    /**
+     * Removes part files, manifests and lock files of uploads abandoned before the cutoff. Files of
+     * an upload whose lock is currently held, by this or another client, are kept.
+     */
+    private long removeStaleUploads(long cutoff) {
+        File[] files = new File(new File(root, "blobs"), UPLOADS_DIR).listFiles();
+        if (files == null) return 0;
+        long removed = 0;
+        for (File file : files) {
+            if (file.lastModified() > cutoff) continue;
+            String name = file.getName();
+            int dot = name.indexOf('.');
+            String digest = dot < 0 ? name : name.substring(0, dot);
+            File lockFile = new File(file.getParentFile(), digest + ".lock");
+            if (lockFile.exists() && isLocked(lockFile)) continue;
+            if (file.delete()) removed++;
+        }
+        return removed;
+    }
+
+    private static boolean isLocked(File lockFile) {
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            return lock == null;
+        } catch (OverlappingFileLockException e) {
+            // Held by an upload in this process
+            return true;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // blobs rows nothing refers to any more; an upload that reuses the digest inserts the row again
+    private static long removeUnusedBlobRows(Connection conn) throws SQLException {
+        String sql = "DELETE FROM blobs WHERE ref_count = 0 " +
+                     "AND NOT EXISTS (SELECT 1 FROM study_materials m WHERE m.blob_digest = blobs.digest)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            return ps.executeUpdate();
+        }
+    }
+
+    // Quarantine batches are named after the run that made them and are dropped once old enough
+    private long purgeQuarantine(long before) throws IOException {
+        File[] batches = new File(root, QUARANTINE_DIR).listFiles(File::isDirectory);
+        if (batches == null) return 0;
+        long purged = 0;
+        for (File batch : batches) {
+            if (batch.lastModified() > before) continue;
+            try (Stream<Path> walk = Files.walk(batch.toPath())) {
+                walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+            purged++;
+        }
+        return purged;
+    }
+}
@@ -0,0 +1,111 @@
+package storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background job that compresses material and submission files stored before compression existed
+ * (or uploaded as types that were not compressed at the time). Each file is compressed next to
+ * the original, the rows are pointed at the new path, and only then the original is deleted.
+ * Readers holding the old path fall back to the compressed copy through Compression.resolve.
+ */
+public class Recompressor {
+
+    public interface Progress {
+        // Called on the job's thread
+        void onProgress(int done, int total);
+    }
+
+    public static class Report {
+        public int filesScanned;
+        public int filesCompressed;
+        public long bytesBefore;
+        public long bytesAfter;
+        public long elapsedMillis;
+
+        public long bytesSaved() {
+            return bytesBefore - bytesAfter;
+        }
+    }
+
+    private static class Candidate {
+        final String path;
+        final String fileName;
+        final Integer submissionFileId; // null for study materials
+
+        Candidate(String path, String fileName, Integer submissionFileId) {
+            this.path = path;
+            this.fileName = fileName;
+            this.submissionFileId = submissionFileId;
+        }
+    }
+
+    public static Report run(Connection conn, Progress progress) throws SQLException {
+        long start = System.currentTimeMillis();
+        List<Candidate> candidates = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT DISTINCT file_path, file_name FROM study_materials " +
+                                             "WHERE file_path IS NOT NULL AND file_path NOT LIKE '%" + Compression.SUFFIX + "'");
+            while (rs.next()) candidates.add(new Candidate(rs.getString(1), rs.getString(2), null));
+            rs.close();
+
+            rs = stmt.executeQuery("SELECT file_id, file_path, file_name FROM submission_files WHERE file_path NOT LIKE '%" + Compression.SUFFIX + "'");
+            while (rs.next()) candidates.add(new Candidate(rs.getString(2), rs.getString(3), rs.getInt(1)));
+            rs.close();
+        }
+
+        Report report = new Report();
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate c = candidates.get(i);
+            File plain = new File(c.path);
+            if (plain.exists()) {
+                report.filesScanned++;
+                try {
+                    compress(conn, c, plain, report);
+                } catch (IOException e) {
+                    // Leave this file as it is and carry on with the rest
+                    e.printStackTrace();
+                }
+            }
+            if (progress != null) progress.onProgress(i + 1, candidates.size());
+        }
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    private static void compress(Connection conn, Candidate c, File plain, Report report) throws IOException, SQLException {
+        long before = plain.length();
+        String name = c.fileName != null ? c.fileName : plain.getName();
+        File compressed = Compression.compressFile(plain, name);
+        if (compressed == null) return;
+
+        String newPath = compressed.getAbsolutePath();
+        if (c.submissionFileId == null) {
+            // A blob is shared by every material with the same content
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE study_materials SET file_path = ? WHERE file_path = ?")) {
+                ps.setString(1, newPath);
+                ps.setString(2, c.path);
+                ps.executeUpdate();
+            }
+        } else {
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE submission_files SET file_path = ? WHERE file_id = ?")) {
+                ps.setString(1, newPath);
+                ps.setInt(2, c.submissionFileId);
+                ps.executeUpdate();
+            }
+        }
+        BlobCache.get().invalidate(plain);
+        plain.delete();
+
+        report.filesCompressed++;
+        report.bytesBefore += before;
+        report.bytesAfter += compressed.length();
+    }
+}
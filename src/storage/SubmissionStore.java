@@ -0,0 +1,236 @@
+package storage;
+
+import config.AppConfig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Files attached to assignment submissions, kept under materials/submissions/&lt;assignment id&gt;.
+ *
+ * A submission is stored in two steps: {@link #stage} streams the file to disk while hashing it and
+ * stops as soon as it would go over a quota, then {@link #attach} records it in submission_files in
+ * the caller's transaction. All file I/O runs on a small bounded pool so a deadline rush queues up
+ * instead of having every upload hit the disk at once.
+ */
+public class SubmissionStore {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static SubmissionStore instance;
+
+    private final File root;
+    private final long maxFileBytes = AppConfig.getLong("lms.quota.submissionFileMB", 50) << 20;
+    private final long studentQuotaBytes = AppConfig.getLong("lms.quota.studentMB", 500) << 20;
+    private final long assignmentQuotaBytes = AppConfig.getLong("lms.quota.assignmentMB", 5120) << 20;
+    private final ThreadPoolExecutor ioPool;
+
+    public static class QuotaExceededException extends IOException {
+        public QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    // A file written to the store but not yet recorded in the database
+    public static class Staged {
+        public final int assignmentId;
+        public final int studentId;
+        public final String fileName;
+        public final File file;
+        public final long size;
+        public final String digest;
+
+        Staged(int assignmentId, int studentId, String fileName, File file, long size, String digest) {
+            this.assignmentId = assignmentId;
+            this.studentId = studentId;
+            this.fileName = fileName;
+            this.file = file;
+            this.size = size;
+            this.digest = digest;
+        }
+
+        // The transaction that was to record it failed
+        public void discard() {
+            file.delete();
+        }
+    }
+
+    public static synchronized SubmissionStore get() {
+        if (instance == null) {
+            instance = new SubmissionStore(new File("materials", "submissions"));
+        }
+        return instance;
+    }
+
+    SubmissionStore(File root) {
+        this.root = root;
+        int threads = AppConfig.getInt("lms.submission.ioThreads", 2);
+        AtomicInteger count = new AtomicInteger();
+        this.ioPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "submission-io-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    // Throws RejectedExecutionException when the queue is full
+    public <T> Future<T> submit(Callable<T> task) {
+        return ioPool.submit(task);
+    }
+
+    public Staged stage(Connection conn, int assignmentId, int studentId, File source) throws IOException, SQLException {
+        if (source.length() > maxFileBytes) {
+            throw new QuotaExceededException("File is larger than the " + (maxFileBytes >> 20) + " MB limit.");
+        }
+        try (InputStream in = new FileInputStream(source)) {
+            return stage(conn, assignmentId, studentId, source.getName(), in);
+        }
+    }
+
+    /**
+     * Streams a submission file into the assignment's directory. The student's earlier files for
+     * the same assignment don't count against the quotas, since attaching replaces them.
+     */
+    public Staged stage(Connection conn, int assignmentId, int studentId, String fileName, InputStream in)
+            throws IOException, SQLException {
+        long limit = Math.min(maxFileBytes, remainingQuota(conn, assignmentId, studentId));
+
+        File dir = new File(root, String.valueOf(assignmentId));
+        dir.mkdirs();
+        String safeName = fileName.replaceAll("[^A-Za-z0-9._-]", "_");
+        Compression.Codec codec = Compression.codecFor(fileName);
+        String storedName = studentId + "_" + System.currentTimeMillis() + "_" + safeName;
+        File target = new File(dir, codec == Compression.Codec.STORE ? Compression.storedName(storedName)
+                                                                     : storedName + Compression.SUFFIX);
+        File part = new File(dir, target.getName() + ".part");
+
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // Compressed on the way to disk; quotas and the digest are based on the original bytes
+        long size = 0;
+        Compression.CompressingOutputStream compressor = null;
+        OutputStream fileOut = new FileOutputStream(part);
+        if (codec != Compression.Codec.STORE) {
+            compressor = Compression.compressing(fileOut, codec);
+            fileOut = compressor;
+        }
+        try (OutputStream out = fileOut) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                size += n;
+                if (size > limit) {
+                    throw new QuotaExceededException(size > maxFileBytes
+                            ? "File is larger than the " + (maxFileBytes >> 20) + " MB limit."
+                            : "Not enough submission storage left for this file.");
+                }
+                sha.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+            out.flush();
+        } catch (IOException e) {
+            part.delete();
+            throw e;
+        }
+        if (compressor != null) {
+            Compression.stats().compressed(compressor.rawBytes(), compressor.storedBytes(), compressor.cpuNanos());
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return new Staged(assignmentId, studentId, fileName, target, size, BlobStore.hex(sha.digest()));
+    }
+
+    /**
+     * Records a staged file for a submission inside the caller's transaction, replacing files from
+     * an earlier attempt. Quotas are checked again under locks on the assignment row and the
+     * student's user row (always in that order), since other students may have committed to the
+     * assignment, and the student to other assignments, in the meantime. Returns the replaced
+     * files, to be deleted once the transaction has committed.
+     */
+    public List<File> attach(Connection conn, int submissionId, Staged staged) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT assignment_id FROM assignments WHERE assignment_id = ? FOR UPDATE")) {
+            ps.setInt(1, staged.assignmentId);
+            ps.executeQuery().close();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT user_id FROM users WHERE user_id = ? FOR UPDATE")) {
+            ps.setInt(1, staged.studentId);
+            ps.executeQuery().close();
+        }
+        if (staged.size > remainingQuota(conn, staged.assignmentId, staged.studentId)) {
+            throw new SQLException("Not enough submission storage left for this file.");
+        }
+
+        List<File> replaced = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT file_path FROM submission_files WHERE submission_id = ?")) {
+            ps.setInt(1, submissionId);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) replaced.add(new File(rs.getString(1)));
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM submission_files WHERE submission_id = ?")) {
+            ps.setInt(1, submissionId);
+            ps.executeUpdate();
+        }
+
+        String sql = "INSERT INTO submission_files (submission_id, assignment_id, student_id, file_name, file_path, size, digest) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, submissionId);
+            ps.setInt(2, staged.assignmentId);
+            ps.setInt(3, staged.studentId);
+            ps.setString(4, staged.fileName);
+            ps.setString(5, staged.file.getAbsolutePath());
+            ps.setLong(6, staged.size);
+            ps.setString(7, staged.digest);
+            ps.executeUpdate();
+        }
+        return replaced;
+    }
+
+    private long remainingQuota(Connection conn, int assignmentId, int studentId) throws SQLException {
+        String sql = "SELECT " +
+                     "COALESCE(SUM(CASE WHEN student_id = ? AND assignment_id <> ? THEN size END), 0) AS student_used, " +
+                     "COALESCE(SUM(CASE WHEN assignment_id = ? AND student_id <> ? THEN size END), 0) AS assignment_used " +
+                     "FROM submission_files WHERE student_id = ? OR assignment_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, studentId);
+            ps.setInt(2, assignmentId);
+            ps.setInt(3, assignmentId);
+            ps.setInt(4, studentId);
+            ps.setInt(5, studentId);
+            ps.setInt(6, assignmentId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return Math.min(studentQuotaBytes - rs.getLong("student_used"),
+                                assignmentQuotaBytes - rs.getLong("assignment_used"));
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package sync;
+
+import config.AppConfig;
+import database.ChangeLog;
+import database.DatabaseConnection;
+
+import javax.swing.SwingUtilities;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One poller per client process over the change_log table. Each poll is a single range scan on
+ * the sequence number; the changes found are handed to every open dashboard on the EDT.
+ *
+ * Every poller also prunes rows older than lms.changeLog.retentionMinutes, once a minute and in
+ * bounded deletes. Nothing reads a row after its gap window, so the retention only has to cover
+ * that plus a poller that lost the database for a while; one gone longer than that misses the
+ * pruned changes, and the dashboards' periodic sweeps catch up on them.
+ */
+public class ChangeFeed {
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+    private static final int BATCH_SIZE = 500;
+    // A lower sequence number can commit after a higher one; such gaps are re-checked for a while
+    private static final long GAP_WAIT_MILLIS = 10_000;
+    private static final int MAX_TRACKED_GAP = 1000;
+    private static final int PRUNE_BATCH = 5000;
+    private static final long PRUNE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    public static class Change {
+        public final long seq;
+        public final String table;
+        public final String op;
+        public final Integer rowId;
+        public final Integer courseId;
+        public final Integer userId;
+
+        Change(long seq, String table, String op, Integer rowId, Integer courseId, Integer userId) {
+            this.seq = seq;
+            this.table = table;
+            this.op = op;
+            this.rowId = rowId;
+            this.courseId = courseId;
+            this.userId = userId;
+        }
+    }
+
+    public interface Listener {
+        // Called on the EDT with changes in sequence order (on the poller thread for direct listeners)
+        void onChanges(List<Change> changes);
+    }
+
+    private static ChangeFeed instance;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Listener> directListeners = new CopyOnWriteArrayList<>();
+    private final Map<Long, Long> gaps = new HashMap<>(); // missing seq -> first noticed
+    private ScheduledExecutorService poller;
+    private Connection conn;
+    private long lastSeq = -1;
+    private long lastPruned;
+    // Never shorter than the gap window plus a minute
+    private final long retentionSeconds = Math.max(TimeUnit.MILLISECONDS.toSeconds(GAP_WAIT_MILLIS) + 60,
+            TimeUnit.MINUTES.toSeconds(AppConfig.getInt("lms.changeLog.retentionMinutes", 60)));
+
+    public static synchronized ChangeFeed get() {
+        if (instance == null) instance = new ChangeFeed();
+        return instance;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+        startPolling();
+    }
+
+    // For headless use (the application server): called on the poller thread, not the EDT
+    public synchronized void addDirectListener(Listener listener) {
+        directListeners.add(listener);
+        startPolling();
+    }
+
+    private void startPolling() {
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "change-feed");
+                t.setDaemon(true);
+                return t;
+            });
+            poller.scheduleWithFixedDelay(this::poll, 0, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+        directListeners.remove(listener);
+    }
+
+    public long lastSequence() {
+        return lastSeq;
+    }
+
+    private void poll() {
+        if (listeners.isEmpty() && directListeners.isEmpty()) return;
+        try {
+            if (conn == null || conn.isClosed()) {
+                conn = DatabaseConnection.openConnection();
+            }
+            if (lastSeq < 0) {
+                // Start from "now": dashboards load their initial state themselves
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM change_log")) {
+                    rs.next();
+                    lastSeq = rs.getLong(1);
+                }
+                return;
+            }
+
+            if (System.currentTimeMillis() - lastPruned > PRUNE_INTERVAL_MILLIS) {
+                ChangeLog.prune(conn, retentionSeconds, PRUNE_BATCH);
+                lastPruned = System.currentTimeMillis();
+            }
+
+            List<Change> changes = fetch();
+            if (!changes.isEmpty()) {
+                for (Listener listener : directListeners) {
+                    try {
+                        listener.onChanges(changes);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if (!listeners.isEmpty()) SwingUtilities.invokeLater(() -> {
+                    for (Listener listener : listeners) {
+                        try {
+                            listener.onChanges(changes);
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            try { if (conn != null) conn.close(); } catch (SQLException ignored) { }
+            conn = null;
+        }
+    }
+
+    private List<Change> fetch() throws SQLException {
+        long now = System.currentTimeMillis();
+        gaps.values().removeIf(firstSeen -> now - firstSeen > GAP_WAIT_MILLIS);
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT seq, table_name, op, row_id, course_id, user_id FROM change_log WHERE seq > ?");
+        List<Long> gapSeqs = new ArrayList<>(gaps.keySet());
+        if (!gapSeqs.isEmpty()) {
+            sql.append(" OR seq IN (");
+            for (int i = 0; i < gapSeqs.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(')');
+        }
+        sql.append(" ORDER BY seq LIMIT ").append(BATCH_SIZE);
+
+        List<Change> changes = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            ps.setLong(i++, lastSeq);
+            for (Long seq : gapSeqs) ps.setLong(i++, seq);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long seq = rs.getLong("seq");
+                    changes.add(new Change(seq, rs.getString("table_name"), rs.getString("op"),
+                            (Integer) rs.getObject("row_id"), (Integer) rs.getObject("course_id"),
+                            (Integer) rs.getObject("user_id")));
+
+                    gaps.remove(seq);
+                    if (seq > lastSeq) {
+                        if (seq - lastSeq <= MAX_TRACKED_GAP) {
+                            for (long missing = lastSeq + 1; missing < seq; missing++) gaps.put(missing, now);
+                        }
+                        lastSeq = seq;
+                    }
+                }
+            }
+        }
+        return changes;
+    }
+}
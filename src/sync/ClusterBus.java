@@ -0,0 +1,251 @@
+package sync;
+
+import config.AppConfig;
+import database.DatabaseConnection;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache invalidations between application server instances that share one database
+ * (lms.cluster.enabled=true), carried by the cache_invalidations table.
+ *
+ * An instance queues an event after its write commits; the bus thread inserts queued events in
+ * one batch and reads everyone else's by sequence number every lms.cluster.pollMs. Events name a
+ * cache and a key, so only the affected entries are dropped. Desktops publish inside their own
+ * transaction with {@link #publish(Connection, String, String)}.
+ *
+ * Rows are deleted after lms.cluster.retentionMinutes. An instance that could not poll for longer
+ * than that may have missed events, and tells its subscribers to drop everything.
+ */
+public class ClusterBus {
+    // Version stamps behind the API's ETags; key "table|courseId|userId", blank parts for null
+    public static final String STAMPS = "stamps";
+    // Sessions of one user; key is the user id
+    public static final String SESSIONS = "sessions";
+
+    private static final String DESKTOP_NODE = "desktop";
+    private static final int BATCH_SIZE = 500;
+    // A lower sequence number can commit after a higher one; such gaps are re-checked for a while
+    private static final long GAP_WAIT_MILLIS = 10_000;
+    private static final int MAX_TRACKED_GAP = 1000;
+
+    public interface Subscriber {
+        // Called on the bus thread; a null key means the whole cache
+        void invalidated(String key);
+    }
+
+    private final String nodeId;
+    private final long pollMillis = AppConfig.getLong("lms.cluster.pollMs", 500);
+    private final long retentionMillis = TimeUnit.MINUTES.toMillis(AppConfig.getInt("lms.cluster.retentionMinutes", 10));
+    private final Map<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final LinkedBlockingDeque<String[]> outgoing = new LinkedBlockingDeque<>();
+    private final Map<Long, Long> gaps = new HashMap<>(); // missing seq -> first noticed
+    private ScheduledExecutorService poller;
+    private Connection conn;
+    private long lastSeq = -1;
+    private long lastPolled;
+    private long lastPruned;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    public ClusterBus(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public static boolean enabled() {
+        return AppConfig.getBoolean("lms.cluster.enabled", false);
+    }
+
+    // Commits or rolls back with the caller's transaction; does nothing outside cluster mode
+    public static void publish(Connection conn, String cache, String key) throws SQLException {
+        if (!enabled()) return;
+        insert(conn, DESKTOP_NODE, List.<String[]>of(new String[]{cache, key}));
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public void subscribe(String cache, Subscriber subscriber) {
+        subscribers.computeIfAbsent(cache, c -> new CopyOnWriteArrayList<>()).add(subscriber);
+    }
+
+    // Call after the write has committed; written by the bus thread on its next poll
+    public void publish(String cache, String key) {
+        outgoing.add(new String[]{cache, key});
+    }
+
+    public synchronized void start() {
+        if (poller != null) return;
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cluster-bus");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (poller == null) return;
+        poller.shutdown();
+        try {
+            // Lets a running poll write what was queued before the stop
+            poller.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try { if (conn != null) conn.close(); } catch (SQLException ignored) { }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("node", nodeId);
+        status.put("published", published.get());
+        status.put("received", received.get());
+        status.put("queued", outgoing.size());
+        status.put("fullFlushes", flushes.get());
+        status.put("lastSeq", lastSeq);
+        return status;
+    }
+
+    private void poll() {
+        try {
+            if (conn == null || conn.isClosed()) {
+                conn = DatabaseConnection.openConnection();
+            }
+            sendQueued();
+
+            long now = System.currentTimeMillis();
+            if (lastSeq < 0 || now - lastPolled > retentionMillis) {
+                // First poll, or down for so long that events may have been deleted unread
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM cache_invalidations")) {
+                    rs.next();
+                    boolean missed = lastSeq >= 0;
+                    lastSeq = rs.getLong(1);
+                    gaps.clear();
+                    if (missed) dropEverything();
+                }
+            } else {
+                deliver(fetch(now));
+            }
+            lastPolled = now;
+
+            if (now - lastPruned > TimeUnit.MINUTES.toMillis(1)) {
+                prune();
+                lastPruned = now;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            try { if (conn != null) conn.close(); } catch (SQLException ignored) { }
+            conn = null;
+        }
+    }
+
+    private void sendQueued() throws SQLException {
+        List<String[]> batch = new ArrayList<>();
+        outgoing.drainTo(batch, BATCH_SIZE);
+        if (batch.isEmpty()) return;
+        try {
+            insert(conn, nodeId, batch);
+            published.addAndGet(batch.size());
+        } catch (SQLException e) {
+            // Put back in order for the next attempt
+            for (int i = batch.size() - 1; i >= 0; i--) outgoing.addFirst(batch.get(i));
+            throw e;
+        }
+    }
+
+    private static void insert(Connection conn, String node, List<String[]> events) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO cache_invalidations (node_id, cache_name, cache_key) VALUES (?, ?, ?)")) {
+            for (String[] event : events) {
+                ps.setString(1, node);
+                ps.setString(2, event[0]);
+                ps.setString(3, event[1]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private List<String[]> fetch(long now) throws SQLException {
+        gaps.values().removeIf(firstSeen -> now - firstSeen > GAP_WAIT_MILLIS);
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT seq, node_id, cache_name, cache_key FROM cache_invalidations WHERE seq > ?");
+        List<Long> gapSeqs = new ArrayList<>(gaps.keySet());
+        if (!gapSeqs.isEmpty()) {
+            sql.append(" OR seq IN (");
+            for (int i = 0; i < gapSeqs.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(')');
+        }
+        sql.append(" ORDER BY seq LIMIT ").append(BATCH_SIZE);
+
+        List<String[]> events = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            ps.setLong(i++, lastSeq);
+            for (Long seq : gapSeqs) ps.setLong(i++, seq);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long seq = rs.getLong("seq");
+                    // Our own events were applied locally when they were published
+                    if (!nodeId.equals(rs.getString("node_id"))) {
+                        events.add(new String[]{rs.getString("cache_name"), rs.getString("cache_key")});
+                    }
+
+                    gaps.remove(seq);
+                    if (seq > lastSeq) {
+                        if (seq - lastSeq <= MAX_TRACKED_GAP) {
+                            for (long missing = lastSeq + 1; missing < seq; missing++) gaps.put(missing, now);
+                        }
+                        lastSeq = seq;
+                    }
+                }
+            }
+        }
+        return events;
+    }
+
+    private void deliver(List<String[]> events) {
+        received.addAndGet(events.size());
+        for (String[] event : events) notify(event[0], event[1]);
+    }
+
+    private void dropEverything() {
+        flushes.incrementAndGet();
+        for (String cache : subscribers.keySet()) notify(cache, null);
+    }
+
+    private void notify(String cache, String key) {
+        List<Subscriber> list = subscribers.get(cache);
+        if (list == null) return;
+        for (Subscriber subscriber : list) {
+            try {
+                subscriber.invalidated(key);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Any instance may prune; each delete is bounded so it never holds locks for long
+    private void prune() throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "DELETE FROM cache_invalidations WHERE created_at < NOW() - INTERVAL ? SECOND LIMIT 5000")) {
+            ps.setLong(1, retentionMillis / 1000);
+            ps.executeUpdate();
+        }
+    }
+}
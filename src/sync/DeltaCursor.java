@@ -0,0 +1,164 @@
+package sync;
+
+import config.AppConfig;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// High-water mark for a client-side list that is refreshed incrementally.
+// Rows are ordered by (timestamp, id); anything after the mark is new to the client.
+//
+// A row's timestamp and id are taken when its INSERT runs, but it only becomes visible at commit,
+// so a row can appear behind rows already read (a long bulk upload committing after a quick
+// message). Each refresh therefore re-reads lms.sync.overlapSeconds before the mark, and rows
+// already read in that window are recognised by id and skipped. For a sequence mark the window is
+// in read time: rows past the mark as it stood that long ago are read again.
+public class DeltaCursor {
+    private static final long SWEEP_INTERVAL_MILLIS = 5 * 60 * 1000;
+    private static final long OVERLAP_MILLIS = TimeUnit.SECONDS.toMillis(AppConfig.getInt("lms.sync.overlapSeconds", 60));
+
+    private Timestamp lastTimestamp;
+    private int lastId;
+    private long lastSequence;
+    private boolean initialized;
+    private long lastSweepMillis;
+    private Set<Integer> scope = new HashSet<>();
+    // Ids read inside the overlap window, with their timestamps (or sequence numbers)
+    private final Map<Integer, Long> recent = new HashMap<>();
+    // {read at, lastSequence} after each recent load, oldest first
+    private final ArrayDeque<long[]> sequenceMarks = new ArrayDeque<>();
+    private boolean sequenced;
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public Timestamp lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public int lastId() {
+        return lastId;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    // Forget everything; the next refresh reloads the full list
+    public void reset() {
+        initialized = false;
+        lastTimestamp = null;
+        lastId = 0;
+        lastSequence = 0;
+        recent.clear();
+        sequenceMarks.clear();
+        sequenced = false;
+        // The first sweep comes one overlap after a full load, for rows still uncommitted during it
+        lastSweepMillis = System.currentTimeMillis() - SWEEP_INTERVAL_MILLIS + OVERLAP_MILLIS;
+    }
+
+    // Rows older than the mark can appear when the scope changes (e.g. a new enrollment), so a
+    // different scope means the list has to be reloaded from scratch.
+    public boolean rescope(Collection<Integer> courseIds) {
+        Set<Integer> next = new HashSet<>(courseIds);
+        if (next.equals(scope)) return false;
+        scope = next;
+        reset();
+        return true;
+    }
+
+    // Called after each load; forgets ids the next refresh can no longer re-read
+    public void markInitialized() {
+        initialized = true;
+        if (sequenced) {
+            long now = System.currentTimeMillis();
+            sequenceMarks.addLast(new long[]{now, lastSequence});
+            // Keeps the newest mark that is at least the overlap old, and everything after it
+            while (sequenceMarks.size() > 1 && now - secondMark()[0] >= OVERLAP_MILLIS) sequenceMarks.pollFirst();
+            long floor = sequenceFloor();
+            recent.values().removeIf(sequence -> sequence <= floor);
+        } else if (lastTimestamp != null) {
+            long floor = overlapFloor().getTime();
+            recent.values().removeIf(time -> time < floor);
+        }
+    }
+
+    /** Moves the mark past the row; false if the row was already read in an earlier refresh. */
+    public boolean advance(Timestamp timestamp, int id) {
+        if (timestamp == null) {
+            // Legacy rows without a date sort first, only their id can move the mark
+            if (lastTimestamp == null && id > lastId) lastId = id;
+            return true;
+        }
+        if (recent.put(id, timestamp.getTime()) != null) return false;
+        if (lastTimestamp == null || timestamp.after(lastTimestamp)
+                || (timestamp.equals(lastTimestamp) && id > lastId)) {
+            lastTimestamp = timestamp;
+            lastId = id;
+        }
+        return true;
+    }
+
+    // For lists whose rows arrive in the order of an increasing sequence column rather than by date;
+    // false if the row was already read in an earlier refresh
+    public boolean advanceSequence(long sequence, int id) {
+        sequenced = true;
+        if (recent.put(id, sequence) != null) return false;
+        if (sequence > lastSequence) lastSequence = sequence;
+        return true;
+    }
+
+    // Rows with a higher sequence number are read by the next refresh
+    public long sequenceFloor() {
+        long[] oldest = sequenceMarks.peekFirst();
+        return oldest == null ? lastSequence : oldest[1];
+    }
+
+    private long[] secondMark() {
+        Iterator<long[]> it = sequenceMarks.iterator();
+        it.next();
+        return it.next();
+    }
+
+    // SQL condition matching rows after the mark, and the overlap before it; bind its parameters with bind()
+    public String condition(String timestampColumn, String idColumn) {
+        if (lastTimestamp == null) {
+            return "(" + timestampColumn + " IS NOT NULL OR " + idColumn + " > ?)";
+        }
+        return timestampColumn + " >= ?";
+    }
+
+    // Returns the next free parameter index
+    public int bind(PreparedStatement ps, int index) throws SQLException {
+        if (lastTimestamp == null) {
+            ps.setInt(index++, lastId);
+        } else {
+            ps.setTimestamp(index++, overlapFloor());
+        }
+        return index;
+    }
+
+    private Timestamp overlapFloor() {
+        return new Timestamp(lastTimestamp.getTime() - OVERLAP_MILLIS);
+    }
+
+    // Deletions never show up in a delta, and a row committed later than the overlap allows is
+    // missed by it; a periodic sweep of ids catches both
+    public boolean sweepDue() {
+        return System.currentTimeMillis() - lastSweepMillis >= SWEEP_INTERVAL_MILLIS;
+    }
+
+    public void sweepDone() {
+        lastSweepMillis = System.currentTimeMillis();
+    }
+}
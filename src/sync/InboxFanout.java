@@ -0,0 +1,128 @@
+package sync;
+
+import database.ChangeLog;
+import database.DatabaseConnection;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fan-out-on-write for course messages: each message gets one compact inbox row per enrolled
+ * student, so a student's message list is a single range read on inbox.
+ *
+ * Work is driven by messages.fanned_out rather than an in-memory queue, so a message whose
+ * fan-out was interrupted (app closed, connection lost) is picked up again by the next sweep.
+ */
+public class InboxFanout {
+    private static final int BATCH_SIZE = 500;
+
+    private static InboxFanout instance;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "inbox-fanout");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static synchronized InboxFanout get() {
+        if (instance == null) {
+            instance = new InboxFanout();
+            // Catch up on anything left over from earlier sessions
+            instance.worker.submit(instance::fanOutPending);
+        }
+        return instance;
+    }
+
+    public void submit(int messageId) {
+        worker.submit(() -> {
+            try (Connection conn = DatabaseConnection.openConnection()) {
+                fanOut(conn, messageId);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void fanOutPending() {
+        try (Connection conn = DatabaseConnection.openConnection();
+             Statement stmt = conn.createStatement()) {
+            List<Integer> pending = new ArrayList<>();
+            ResultSet rs = stmt.executeQuery("SELECT message_id FROM messages WHERE fanned_out = FALSE ORDER BY message_id");
+            while (rs.next()) pending.add(rs.getInt(1));
+            rs.close();
+
+            for (Integer messageId : pending) fanOut(conn, messageId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void fanOut(Connection conn, int messageId) throws SQLException {
+        int courseId;
+        Timestamp sentDate;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT course_id, sent_date, fanned_out FROM messages WHERE message_id = ?")) {
+            ps.setInt(1, messageId);
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next() || rs.getBoolean("fanned_out")) return;
+            courseId = rs.getInt("course_id");
+            sentDate = rs.getTimestamp("sent_date");
+        }
+
+        // Walk the course roster in student_id order, one multi-row insert per batch
+        String rosterSql = "SELECT student_id FROM enrollments WHERE course_id = ? AND student_id > ? " +
+                           "ORDER BY student_id LIMIT " + BATCH_SIZE;
+        int lastStudentId = 0;
+        while (true) {
+            List<Integer> students = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement(rosterSql)) {
+                ps.setInt(1, courseId);
+                ps.setInt(2, lastStudentId);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) students.add(rs.getInt(1));
+            }
+            if (students.isEmpty()) break;
+
+            StringBuilder sql = new StringBuilder(
+                    "INSERT IGNORE INTO inbox (student_id, message_id, course_id, sent_date) VALUES ");
+            for (int i = 0; i < students.size(); i++) sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int p = 1;
+                for (Integer studentId : students) {
+                    ps.setInt(p++, studentId);
+                    ps.setInt(p++, messageId);
+                    ps.setInt(p++, courseId);
+                    ps.setTimestamp(p++, sentDate);
+                }
+                ps.executeUpdate();
+            }
+            lastStudentId = students.get(students.size() - 1);
+            if (students.size() < BATCH_SIZE) break;
+        }
+
+        // Students' feeds are told once the whole course has its rows
+        DatabaseConnection.inTransaction(conn, c -> {
+            try (PreparedStatement ps = c.prepareStatement("UPDATE messages SET fanned_out = TRUE WHERE message_id = ?")) {
+                ps.setInt(1, messageId);
+                ps.executeUpdate();
+            }
+            ChangeLog.record(c, ChangeLog.INBOX, ChangeLog.INSERT, messageId, courseId, null);
+            return null;
+        });
+    }
+
+    // A student who enrolls later still sees the course's earlier messages. Messages that are
+    // still being fanned out are included too, in case their roster was read before this enrollment.
+    public static void backfill(Connection conn, int studentId, int courseId) throws SQLException {
+        String sql = "INSERT IGNORE INTO inbox (student_id, message_id, course_id, sent_date) " +
+                     "SELECT ?, message_id, course_id, sent_date FROM messages WHERE course_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, studentId);
+            ps.setInt(2, courseId);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -6,7 +6,21 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
 import java.sql.*;
+import config.AppConfig;
+import database.ChangeLog;
 import database.DatabaseConnection;
+import database.Waitlist;
+import search.SearchIndex;
+import security.PasswordHasher;
+import storage.BlobCache;
+import storage.BlobStore;
+import storage.Compression;
+import storage.OrphanCollector;
+import storage.Recompressor;
+import sync.ClusterBus;
+import sync.InboxFanout;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class AdminDashboard extends JFrame {
     private int adminId;
@@ -30,26 +44,40 @@ public class AdminDashboard extends JFrame {
     private static final Color LIGHT_BG = new Color(248, 249, 250);
     private static final Color CARD_BG = Color.WHITE;
 
+    // Storage tab
+    private final JLabel[] storageStatLabels = {new JLabel("0"), new JLabel("0 B"), new JLabel("-"), new JLabel("-"),
+                                                new JLabel("-"), new JLabel("0 B")};
+    private final JTextArea storageLog = new JTextArea(12, 60);
+    private final JLabel storageJobLabel = new JLabel("");
+    private JButton recompressButton;
+    private JButton collectOrphansButton;
+    private final ExecutorService storageJobs = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "storage-jobs");
+        t.setDaemon(true);
+        return t;
+    });
+
     public AdminDashboard(int userId, String name) {
         this.adminId = userId;
         this.adminName = name;
 
         setTitle("Admin Dashboard - " + name);
         setSize(1200, 750);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        Session.closeSignsOut(this, this::logout);
         setLocationRelativeTo(null);
 
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
         initComponents();
         loadUsers();
         loadCourses();
     }
 
+    @Override
+    public void dispose() {
+        // A running storage job still finishes; the thread ends after it
+        storageJobs.shutdown();
+        super.dispose();
+    }
+
     private void initComponents() {
         JPanel mainPanel = new JPanel(new BorderLayout(0, 0));
         mainPanel.setBackground(LIGHT_BG);
@@ -97,10 +125,15 @@ public class AdminDashboard extends JFrame {
         JPanel usersPanel = createUsersPanel();
         JPanel coursesPanel = createCoursesPanel();
         JPanel statsPanel = createStatisticsPanel();
+        JPanel storagePanel = createStoragePanel();
 
         tabbedPane.addTab("  👥 Users Management  ", usersPanel);
         tabbedPane.addTab("  📚 Courses Management  ", coursesPanel);
         tabbedPane.addTab("  📊 Statistics  ", statsPanel);
+        tabbedPane.addTab("  💾 Storage  ", storagePanel);
+        tabbedPane.addChangeListener(e -> {
+            if (tabbedPane.getSelectedComponent() == storagePanel) refreshStorageStats();
+        });
 
         mainPanel.add(headerPanel, BorderLayout.NORTH);
         mainPanel.add(tabbedPane, BorderLayout.CENTER);
@@ -183,7 +216,7 @@ public class AdminDashboard extends JFrame {
         panel.setBackground(LIGHT_BG);
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
-        String[] courseColumns = {"Course ID", "Course Code", "Course Name", "Teacher", "Credits"};
+        String[] courseColumns = {"Course ID", "Course Code", "Course Name", "Teacher", "Credits", "Enrolled", "Waitlist"};
         courseTableModel = new DefaultTableModel(courseColumns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -225,16 +258,22 @@ public class AdminDashboard extends JFrame {
         JButton editCourseButton = createStyledButton("✏️ Edit Course", INFO_COLOR);
         JButton deleteCourseButton = createStyledButton("🗑️ Delete Course", DANGER_COLOR);
         JButton refreshButton = createStyledButton("🔄 Refresh", SECONDARY_COLOR);
+        JButton reindexButton = createStyledButton("🔍 Rebuild Search Index", INFO_COLOR);
+        JButton exportButton = createStyledButton("📦 Export Course", SECONDARY_COLOR);
 
         addCourseButton.addActionListener(e -> addCourse());
         editCourseButton.addActionListener(e -> editCourse());
         deleteCourseButton.addActionListener(e -> deleteCourse());
         refreshButton.addActionListener(e -> loadCourses());
+        reindexButton.addActionListener(e -> rebuildSearchIndex(reindexButton));
+        exportButton.addActionListener(e -> exportCourse());
 
         buttonPanel.add(addCourseButton);
         buttonPanel.add(editCourseButton);
         buttonPanel.add(deleteCourseButton);
         buttonPanel.add(refreshButton);
+        buttonPanel.add(reindexButton);
+        buttonPanel.add(exportButton);
         tableCard.add(buttonPanel, BorderLayout.SOUTH);
 
         panel.add(statsPanel, BorderLayout.NORTH);
@@ -243,6 +282,145 @@ public class AdminDashboard extends JFrame {
         return panel;
     }
 
+    private JPanel createStoragePanel() {
+        JPanel panel = new JPanel(new BorderLayout(15, 15));
+        panel.setBackground(LIGHT_BG);
+        panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+
+        JPanel statsGrid = new JPanel(new GridLayout(0, 2, 10, 8));
+        statsGrid.setBackground(CARD_BG);
+        statsGrid.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(new Color(220, 220, 220), 1, true),
+                BorderFactory.createEmptyBorder(15, 20, 15, 20)
+        ));
+        for (JLabel label : storageStatLabels) {
+            label.setFont(new Font("Arial", Font.BOLD, 15));
+        }
+        String[] names = {"Files compressed (this session):", "Bytes saved:",
+                          "Compression CPU:", "Decompression CPU:",
+                          "Download cache hit ratio:", "Download cache resident:"};
+        for (int i = 0; i < names.length; i++) {
+            JLabel name = new JLabel(names[i]);
+            name.setFont(new Font("Arial", Font.PLAIN, 15));
+            statsGrid.add(name);
+            statsGrid.add(storageStatLabels[i]);
+        }
+
+        JPanel tableCard = new JPanel(new BorderLayout());
+        tableCard.setBackground(CARD_BG);
+        tableCard.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(new Color(220, 220, 220), 1, true),
+                BorderFactory.createEmptyBorder(20, 20, 20, 20)
+        ));
+
+        JLabel title = new JLabel("Storage Jobs");
+        title.setFont(new Font("Arial", Font.BOLD, 22));
+        title.setForeground(Color.BLACK);
+        title.setBorder(BorderFactory.createEmptyBorder(0, 0, 15, 0));
+
+        storageLog.setEditable(false);
+        storageLog.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        JScrollPane logScroll = new JScrollPane(storageLog);
+        logScroll.setBorder(BorderFactory.createLineBorder(new Color(220, 220, 220), 1));
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 15));
+        buttonPanel.setBackground(CARD_BG);
+        recompressButton = createStyledButton("🗜️ Recompress Existing Files", INFO_COLOR);
+        collectOrphansButton = createStyledButton("🧹 Remove Orphaned Files", WARNING_COLOR);
+        JButton refreshButton = createStyledButton("🔄 Refresh", SECONDARY_COLOR);
+        recompressButton.addActionListener(e -> recompressFiles());
+        collectOrphansButton.addActionListener(e -> collectOrphans());
+        refreshButton.addActionListener(e -> refreshStorageStats());
+        buttonPanel.add(recompressButton);
+        buttonPanel.add(collectOrphansButton);
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(storageJobLabel);
+
+        tableCard.add(title, BorderLayout.NORTH);
+        tableCard.add(logScroll, BorderLayout.CENTER);
+        tableCard.add(buttonPanel, BorderLayout.SOUTH);
+
+        panel.add(statsGrid, BorderLayout.NORTH);
+        panel.add(tableCard, BorderLayout.CENTER);
+        return panel;
+    }
+
+    private void refreshStorageStats() {
+        Compression.Stats stats = Compression.stats();
+        storageStatLabels[0].setText(String.valueOf(stats.filesCompressed()));
+        storageStatLabels[1].setText(formatBytes(stats.bytesSaved()));
+        storageStatLabels[2].setText(String.format("%.1f ms per MB", stats.compressCpuMillisPerMB()));
+        storageStatLabels[3].setText(String.format("%.1f ms per MB (%s read)",
+                stats.decompressCpuMillisPerMB(), formatBytes(stats.bytesDecompressed())));
+        BlobCache cache = BlobCache.get();
+        storageStatLabels[4].setText(String.format("%.0f%% (%d hits, %d misses)",
+                cache.hitRatio() * 100, cache.hits(), cache.misses()));
+        storageStatLabels[5].setText(formatBytes(cache.residentBytes()) + " in " + cache.entryCount() + " files");
+    }
+
+    // Runs on the storage job thread with its own connection; the tab stays usable meanwhile
+    private void recompressFiles() {
+        recompressButton.setEnabled(false);
+        storageJobLabel.setText("Recompressing...");
+        storageJobs.submit(() -> {
+            try (Connection conn = DatabaseConnection.openConnection()) {
+                Recompressor.Report report = Recompressor.run(conn, (done, total) ->
+                        SwingUtilities.invokeLater(() -> storageJobLabel.setText("Recompressing " + done + " / " + total)));
+                String line = String.format("Recompress: %d of %d files compressed, %s -> %s (saved %s) in %.1f s%n",
+                        report.filesCompressed, report.filesScanned, formatBytes(report.bytesBefore),
+                        formatBytes(report.bytesAfter), formatBytes(report.bytesSaved()), report.elapsedMillis / 1000.0);
+                SwingUtilities.invokeLater(() -> storageLog.append(line));
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> showError("Error recompressing files: " + ex.getMessage()));
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    recompressButton.setEnabled(true);
+                    storageJobLabel.setText("");
+                    refreshStorageStats();
+                });
+            }
+        });
+    }
+
+    // Safe while teachers and students upload: files younger than the grace period are never touched
+    private void collectOrphans() {
+        int confirm = JOptionPane.showConfirmDialog(this,
+                "Move files that no material or submission refers to into materials/.trash?",
+                "Remove Orphaned Files", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        collectOrphansButton.setEnabled(false);
+        storageJobLabel.setText("Collecting orphaned files...");
+        storageJobs.submit(() -> {
+            try (Connection conn = DatabaseConnection.openConnection()) {
+                OrphanCollector.Report report = new OrphanCollector().run(conn, (phase, scanned) ->
+                        SwingUtilities.invokeLater(() -> storageJobLabel.setText(phase + " (" + scanned + " files)")));
+                String line = String.format("Orphans: %d of %d files %s, %s reclaimed; %d too recent, %d stale uploads, " +
+                                "%d blob rows removed in %.1f s%n",
+                        report.orphansFound, report.filesScanned, report.quarantined ? "quarantined" : "deleted",
+                        formatBytes(report.bytesReclaimed), report.skippedRecent, report.staleUploadsRemoved,
+                        report.blobRowsRemoved, report.elapsedMillis / 1000.0);
+                SwingUtilities.invokeLater(() -> storageLog.append(line));
+            } catch (SQLException | java.io.IOException ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> showError("Error removing orphaned files: " + ex.getMessage()));
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    collectOrphansButton.setEnabled(true);
+                    storageJobLabel.setText("");
+                });
+            }
+        });
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
     // ------------------------------------------------------------------
     // (All database methods and UI helper methods continue unchanged)
     // ------------------------------------------------------------------
@@ -289,7 +467,9 @@ public class AdminDashboard extends JFrame {
 
         try {
             Connection conn = DatabaseConnection.getConnection();
-            String query = "SELECT c.course_id, c.course_code, c.course_name, u.full_name, c.credits " +
+            String query = "SELECT c.course_id, c.course_code, c.course_name, u.full_name, c.credits, c.capacity, " +
+                    "(SELECT COUNT(*) FROM enrollments e WHERE e.course_id = c.course_id) AS enrolled, " +
+                    "(SELECT COUNT(*) FROM waitlist w WHERE w.course_id = c.course_id) AS waiting " +
                     "FROM courses c " +
                     "LEFT JOIN users u ON c.teacher_id = u.user_id " +
                     "ORDER BY c.course_id";
@@ -302,7 +482,10 @@ public class AdminDashboard extends JFrame {
                         rs.getString("course_code"),
                         rs.getString("course_name"),
                         rs.getString("full_name") == null ? "No Teacher" : rs.getString("full_name"),
-                        rs.getInt("credits")
+                        rs.getInt("credits"),
+                        rs.getObject("capacity") == null ? String.valueOf(rs.getInt("enrolled"))
+                                : rs.getInt("enrolled") + " / " + rs.getInt("capacity"),
+                        rs.getInt("waiting")
                 });
             }
 
@@ -346,7 +529,7 @@ public class AdminDashboard extends JFrame {
                 String query = "INSERT INTO users (username, password, full_name, email, role) VALUES (?, ?, ?, ?, ?)";
                 PreparedStatement pst = conn.prepareStatement(query);
                 pst.setString(1, usernameField.getText());
-                pst.setString(2, new String(passwordField.getPassword()));
+                pst.setString(2, PasswordHasher.hash(new String(passwordField.getPassword())));
                 pst.setString(3, fullNameField.getText());
                 pst.setString(4, emailField.getText());
                 pst.setString(5, (String) roleCombo.getSelectedItem());
@@ -397,17 +580,22 @@ public class AdminDashboard extends JFrame {
 
         if (result == JOptionPane.OK_OPTION) {
             try {
-                Connection conn = DatabaseConnection.getConnection();
-                String query = "UPDATE users SET username=?, full_name=?, email=?, role=? WHERE user_id=?";
-                PreparedStatement pst = conn.prepareStatement(query);
-                pst.setString(1, usernameField.getText());
-                pst.setString(2, fullNameField.getText());
-                pst.setString(3, emailField.getText());
-                pst.setString(4, (String) roleCombo.getSelectedItem());
-                pst.setInt(5, userId);
-
-                pst.executeUpdate();
-                pst.close();
+                DatabaseConnection.inTransaction(conn -> {
+                    String query = "UPDATE users SET username=?, full_name=?, email=?, role=? WHERE user_id=?";
+                    PreparedStatement pst = conn.prepareStatement(query);
+                    pst.setString(1, usernameField.getText());
+                    pst.setString(2, fullNameField.getText());
+                    pst.setString(3, emailField.getText());
+                    pst.setString(4, (String) roleCombo.getSelectedItem());
+                    pst.setInt(5, userId);
+
+                    pst.executeUpdate();
+                    pst.close();
+                    // Sessions hold the old role and name; the user signs in again
+                    ChangeLog.record(conn, ChangeLog.USERS, ChangeLog.UPDATE, userId, null, userId);
+                    ClusterBus.publish(conn, ClusterBus.SESSIONS, String.valueOf(userId));
+                    return null;
+                });
 
                 showSuccess("User updated successfully!");
                 loadUsers();
@@ -435,12 +623,41 @@ public class AdminDashboard extends JFrame {
 
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                Connection conn = DatabaseConnection.getConnection();
-                String query = "DELETE FROM users WHERE user_id=?";
-                PreparedStatement pst = conn.prepareStatement(query);
-                pst.setInt(1, userId);
-                pst.executeUpdate();
-                pst.close();
+                java.util.List<Integer> messageIds = new java.util.ArrayList<>();
+                DatabaseConnection.inTransaction(conn -> {
+                    // The user's messages go with them through the FK cascade
+                    messageIds.addAll(ids(conn, "SELECT message_id FROM messages WHERE sender_id=?", userId));
+
+                    // Seats the user held go to the courses' waitlists
+                    java.util.List<Integer> courseIds = new java.util.ArrayList<>();
+                    PreparedStatement coursesPst = conn.prepareStatement("SELECT course_id FROM enrollments WHERE student_id=?");
+                    coursesPst.setInt(1, userId);
+                    ResultSet rs = coursesPst.executeQuery();
+                    while (rs.next()) courseIds.add(rs.getInt(1));
+                    rs.close();
+                    coursesPst.close();
+
+                    String query = "DELETE FROM users WHERE user_id=?";
+                    PreparedStatement pst = conn.prepareStatement(query);
+                    pst.setInt(1, userId);
+                    pst.executeUpdate();
+                    pst.close();
+
+                    // The user's enrollments and submissions are removed by the FK cascade
+                    ChangeLog.record(conn, ChangeLog.ENROLLMENTS, ChangeLog.DELETE, null, null, userId);
+                    ChangeLog.record(conn, ChangeLog.SUBMISSIONS, ChangeLog.DELETE, null, null, userId);
+                    // Ends the user's sessions on the application servers
+                    ChangeLog.record(conn, ChangeLog.USERS, ChangeLog.DELETE, userId, null, userId);
+                    ClusterBus.publish(conn, ClusterBus.SESSIONS, String.valueOf(userId));
+
+                    for (Integer courseId : courseIds) {
+                        for (Integer studentId : Waitlist.promote(conn, courseId)) {
+                            if (AppConfig.inboxFanout()) InboxFanout.backfill(conn, studentId, courseId);
+                        }
+                    }
+                    return null;
+                });
+                SearchIndex.removeCommitted(DatabaseConnection.getConnection(), SearchIndex.MESSAGE, messageIds);
 
                 showSuccess("User deleted successfully!");
                 loadUsers();
@@ -467,12 +684,13 @@ public class AdminDashboard extends JFrame {
                 teacherMap.put(name, rs.getInt("user_id"));
             }
 
-            JPanel panel = new JPanel(new GridLayout(5, 2, 5, 5));
+            JPanel panel = new JPanel(new GridLayout(6, 2, 5, 5));
             JTextField codeField = new JTextField();
             JTextField nameField = new JTextField();
             JTextArea descArea = new JTextArea(3, 20);
             JComboBox<String> teacherCombo = new JComboBox<>(teacherList.toArray(new String[0]));
             JTextField creditsField = new JTextField();
+            JTextField capacityField = new JTextField();
 
             panel.add(new JLabel("Course Code:"));
             panel.add(codeField);
@@ -484,6 +702,8 @@ public class AdminDashboard extends JFrame {
             panel.add(teacherCombo);
             panel.add(new JLabel("Credits:"));
             panel.add(creditsField);
+            panel.add(new JLabel("Seats (blank for no limit):"));
+            panel.add(capacityField);
 
             int result = JOptionPane.showConfirmDialog(this, panel, "Add New Course", JOptionPane.OK_CANCEL_OPTION);
 
@@ -491,16 +711,26 @@ public class AdminDashboard extends JFrame {
                 String selectedTeacher = (String) teacherCombo.getSelectedItem();
                 int teacherId = teacherMap.get(selectedTeacher);
 
-                String insertQuery = "INSERT INTO courses (course_code, course_name, description, teacher_id, credits) VALUES (?, ?, ?, ?, ?)";
-                PreparedStatement pst = conn.prepareStatement(insertQuery);
-                pst.setString(1, codeField.getText());
-                pst.setString(2, nameField.getText());
-                pst.setString(3, descArea.getText());
-                pst.setInt(4, teacherId);
-                pst.setInt(5, Integer.parseInt(creditsField.getText()));
-
-                pst.executeUpdate();
-                pst.close();
+                int credits = Integer.parseInt(creditsField.getText());
+                Integer capacity = parseCapacity(capacityField.getText());
+                DatabaseConnection.inTransaction(conn, c -> {
+                    String insertQuery = "INSERT INTO courses (course_code, course_name, description, teacher_id, credits, capacity) VALUES (?, ?, ?, ?, ?, ?)";
+                    PreparedStatement pst = c.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS);
+                    pst.setString(1, codeField.getText());
+                    pst.setString(2, nameField.getText());
+                    pst.setString(3, descArea.getText());
+                    pst.setInt(4, teacherId);
+                    pst.setInt(5, credits);
+                    pst.setObject(6, capacity, Types.INTEGER);
+                    pst.executeUpdate();
+
+                    ResultSet keys = pst.getGeneratedKeys();
+                    keys.next();
+                    ChangeLog.record(c, ChangeLog.COURSES, ChangeLog.INSERT, keys.getInt(1), null, null);
+                    keys.close();
+                    pst.close();
+                    return null;
+                });
 
                 showSuccess("Course added successfully!");
                 loadCourses();
@@ -515,7 +745,125 @@ public class AdminDashboard extends JFrame {
     }
 
     private void editCourse() {
-        JOptionPane.showMessageDialog(this, "Edit course functionality - similar to edit user");
+        int selectedRow = coursesTable.getSelectedRow();
+        if (selectedRow < 0) {
+            showWarning("Please select a course to edit.");
+            return;
+        }
+        int courseId = (int) courseTableModel.getValueAt(selectedRow, 0);
+
+        try {
+            Connection conn = DatabaseConnection.getConnection();
+            PreparedStatement coursePst = conn.prepareStatement(
+                    "SELECT course_code, course_name, description, teacher_id, credits, capacity FROM courses WHERE course_id=?");
+            coursePst.setInt(1, courseId);
+            ResultSet course = coursePst.executeQuery();
+            if (!course.next()) {
+                course.close();
+                coursePst.close();
+                showWarning("This course no longer exists.");
+                loadCourses();
+                return;
+            }
+
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT user_id, full_name FROM users WHERE role='teacher'");
+            java.util.List<String> teacherList = new java.util.ArrayList<>();
+            java.util.Map<String, Integer> teacherMap = new java.util.HashMap<>();
+            String currentTeacher = null;
+            while (rs.next()) {
+                String name = rs.getString("full_name");
+                teacherList.add(name);
+                teacherMap.put(name, rs.getInt("user_id"));
+                if (rs.getInt("user_id") == course.getInt("teacher_id")) currentTeacher = name;
+            }
+            rs.close();
+            stmt.close();
+
+            JPanel panel = new JPanel(new GridLayout(6, 2, 5, 5));
+            JTextField codeField = new JTextField(course.getString("course_code"));
+            JTextField nameField = new JTextField(course.getString("course_name"));
+            JTextArea descArea = new JTextArea(course.getString("description"), 3, 20);
+            JComboBox<String> teacherCombo = new JComboBox<>(teacherList.toArray(new String[0]));
+            if (currentTeacher != null) teacherCombo.setSelectedItem(currentTeacher);
+            JTextField creditsField = new JTextField(String.valueOf(course.getInt("credits")));
+            Object currentCapacity = course.getObject("capacity");
+            JTextField capacityField = new JTextField(currentCapacity == null ? "" : currentCapacity.toString());
+            course.close();
+            coursePst.close();
+
+            panel.add(new JLabel("Course Code:"));
+            panel.add(codeField);
+            panel.add(new JLabel("Course Name:"));
+            panel.add(nameField);
+            panel.add(new JLabel("Description:"));
+            panel.add(new JScrollPane(descArea));
+            panel.add(new JLabel("Teacher:"));
+            panel.add(teacherCombo);
+            panel.add(new JLabel("Credits:"));
+            panel.add(creditsField);
+            panel.add(new JLabel("Seats (blank for no limit):"));
+            panel.add(capacityField);
+
+            int result = JOptionPane.showConfirmDialog(this, panel, "Edit Course", JOptionPane.OK_CANCEL_OPTION);
+            if (result != JOptionPane.OK_OPTION) return;
+
+            Integer teacherId = teacherMap.get((String) teacherCombo.getSelectedItem());
+            int credits = Integer.parseInt(creditsField.getText());
+            Integer capacity = parseCapacity(capacityField.getText());
+            // Students already enrolled keep their seats if the limit goes down; extra seats go to the waitlist
+            int promoted = DatabaseConnection.inTransaction(conn, c -> {
+                String updateQuery = "UPDATE courses SET course_code=?, course_name=?, description=?, teacher_id=?, credits=?, capacity=? WHERE course_id=?";
+                PreparedStatement pst = c.prepareStatement(updateQuery);
+                pst.setString(1, codeField.getText());
+                pst.setString(2, nameField.getText());
+                pst.setString(3, descArea.getText());
+                pst.setObject(4, teacherId, Types.INTEGER);
+                pst.setInt(5, credits);
+                pst.setObject(6, capacity, Types.INTEGER);
+                pst.setInt(7, courseId);
+                pst.executeUpdate();
+                pst.close();
+                ChangeLog.record(c, ChangeLog.COURSES, ChangeLog.UPDATE, courseId, null, null);
+
+                java.util.List<Integer> students = Waitlist.promote(c, courseId);
+                if (AppConfig.inboxFanout()) {
+                    for (Integer studentId : students) InboxFanout.backfill(c, studentId, courseId);
+                }
+                return students.size();
+            });
+
+            showSuccess(promoted > 0
+                    ? "Course updated successfully! " + promoted + " student(s) enrolled from the waitlist."
+                    : "Course updated successfully!");
+            loadCourses();
+        } catch (NumberFormatException ex) {
+            showError("Credits and seats must be whole numbers.");
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            showError("Error: " + ex.getMessage());
+        }
+    }
+
+    // Blank means no limit
+    private static Integer parseCapacity(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) return null;
+        int capacity = Integer.parseInt(trimmed);
+        if (capacity < 0) throw new NumberFormatException("Negative capacity");
+        return capacity;
+    }
+
+    private void exportCourse() {
+        int selectedRow = coursesTable.getSelectedRow();
+        if (selectedRow < 0) {
+            showWarning("Please select a course to export.");
+            return;
+        }
+        int courseId = (int) courseTableModel.getValueAt(selectedRow, 0);
+        String courseCode = (String) courseTableModel.getValueAt(selectedRow, 1);
+        String courseName = (String) courseTableModel.getValueAt(selectedRow, 2);
+        CourseExportDialog.start(this, courseId, courseCode, courseName);
     }
 
     private void deleteCourse() {
@@ -553,31 +901,52 @@ public class AdminDashboard extends JFrame {
                     JOptionPane.WARNING_MESSAGE);
 
             if (confirm == JOptionPane.YES_OPTION) {
-                // Delete related data
-                String deleteSubmissions = "DELETE FROM submissions WHERE assignment_id IN "
-                        + "(SELECT assignment_id FROM assignments WHERE course_id=?)";
-                PreparedStatement pst1 = conn.prepareStatement(deleteSubmissions);
-                pst1.setInt(1, courseId);
-                pst1.executeUpdate();
-                pst1.close();
-
-                String deleteAssignments = "DELETE FROM assignments WHERE course_id=?";
-                PreparedStatement pst2 = conn.prepareStatement(deleteAssignments);
-                pst2.setInt(1, courseId);
-                pst2.executeUpdate();
-                pst2.close();
-
-                String deleteEnrollments = "DELETE FROM enrollments WHERE course_id=?";
-                PreparedStatement pst3 = conn.prepareStatement(deleteEnrollments);
-                pst3.setInt(1, courseId);
-                pst3.executeUpdate();
-                pst3.close();
-
-                String deleteCourse = "DELETE FROM courses WHERE course_id=?";
-                PreparedStatement pst4 = conn.prepareStatement(deleteCourse);
-                pst4.setInt(1, courseId);
-                pst4.executeUpdate();
-                pst4.close();
+                java.util.List<Integer> materialIds = new java.util.ArrayList<>();
+                java.util.List<Integer> messageIds = new java.util.ArrayList<>();
+                DatabaseConnection.inTransaction(conn, c -> {
+                    materialIds.addAll(ids(c, "SELECT material_id FROM study_materials WHERE course_id=?", courseId));
+                    messageIds.addAll(ids(c, "SELECT message_id FROM messages WHERE course_id=?", courseId));
+
+                    // Delete related data
+                    String deleteSubmissions = "DELETE FROM submissions WHERE assignment_id IN "
+                            + "(SELECT assignment_id FROM assignments WHERE course_id=?)";
+                    PreparedStatement pst1 = c.prepareStatement(deleteSubmissions);
+                    pst1.setInt(1, courseId);
+                    pst1.executeUpdate();
+                    pst1.close();
+
+                    String deleteAssignments = "DELETE FROM assignments WHERE course_id=?";
+                    PreparedStatement pst2 = c.prepareStatement(deleteAssignments);
+                    pst2.setInt(1, courseId);
+                    pst2.executeUpdate();
+                    pst2.close();
+
+                    String deleteEnrollments = "DELETE FROM enrollments WHERE course_id=?";
+                    PreparedStatement pst3 = c.prepareStatement(deleteEnrollments);
+                    pst3.setInt(1, courseId);
+                    pst3.executeUpdate();
+                    pst3.close();
+
+                    // Material files are shared between courses, only their reference counts drop here
+                    BlobStore.releaseCourse(c, courseId);
+
+                    String deleteCourse = "DELETE FROM courses WHERE course_id=?";
+                    PreparedStatement pst4 = c.prepareStatement(deleteCourse);
+                    pst4.setInt(1, courseId);
+                    pst4.executeUpdate();
+                    pst4.close();
+
+                    // Messages and materials go with the course through the FK cascade
+                    for (String table : new String[]{ChangeLog.SUBMISSIONS, ChangeLog.ASSIGNMENTS, ChangeLog.ENROLLMENTS,
+                            ChangeLog.MESSAGES, ChangeLog.STUDY_MATERIALS}) {
+                        ChangeLog.record(c, table, ChangeLog.DELETE, null, courseId, null);
+                    }
+                    ChangeLog.record(c, ChangeLog.COURSES, ChangeLog.DELETE, courseId, null, null);
+                    return null;
+                });
+                // Search entries go once the rows are gone, see SearchIndex.removeCommitted
+                SearchIndex.removeCommitted(conn, SearchIndex.MATERIAL, materialIds);
+                SearchIndex.removeCommitted(conn, SearchIndex.MESSAGE, messageIds);
 
                 showSuccess("Course deleted successfully!");
                 loadCourses();
@@ -588,6 +957,33 @@ public class AdminDashboard extends JFrame {
         }
     }
 
+    private static java.util.List<Integer> ids(Connection conn, String sql, int param) throws SQLException {
+        java.util.List<Integer> ids = new java.util.ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, param);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    // Runs on the storage job thread with its own connection; search keeps working on the old index meanwhile
+    private void rebuildSearchIndex(JButton button) {
+        button.setEnabled(false);
+        storageJobs.submit(() -> {
+            try (Connection conn = DatabaseConnection.openConnection()) {
+                SearchIndex.rebuild(conn);
+                SwingUtilities.invokeLater(() -> showSuccess("Search index rebuilt successfully!"));
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> showError("Error rebuilding search index: " + ex.getMessage()));
+            } finally {
+                SwingUtilities.invokeLater(() -> button.setEnabled(true));
+            }
+        });
+    }
+
     private JPanel createStatisticsPanel() {
         JPanel panel = new JPanel(new BorderLayout(20, 20));
         panel.setBackground(LIGHT_BG);
@@ -782,7 +1178,8 @@ public class AdminDashboard extends JFrame {
 
     private void logout() {
         this.dispose();
-        new LoginFrame().setVisible(true);
+        Session.end();
+        LoginFrame.showLogin();
     }
 
     
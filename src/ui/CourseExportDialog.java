@@ -0,0 +1,79 @@
+package ui;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+import database.DatabaseConnection;
+import storage.CourseExporter;
+
+// Asks where to save a course archive, then writes it in the background while showing progress.
+// Used by both the teacher and the admin dashboard.
+public class CourseExportDialog extends JDialog {
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JLabel statusLabel = new JLabel("Starting...");
+
+    private CourseExportDialog(JFrame owner, String courseName) {
+        super(owner, "Exporting " + courseName, false);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(BorderFactory.createEmptyBorder(15, 20, 15, 20));
+        progressBar.setStringPainted(true);
+        statusLabel.setFont(new Font("Arial", Font.PLAIN, 13));
+        panel.add(statusLabel, BorderLayout.NORTH);
+        panel.add(progressBar, BorderLayout.CENTER);
+        setContentPane(panel);
+        setSize(420, 120);
+        setLocationRelativeTo(owner);
+    }
+
+    public static void start(JFrame owner, int courseId, String courseCode, String courseName) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("ZIP archives", "zip"));
+        chooser.setSelectedFile(new File(courseCode.replaceAll("[^A-Za-z0-9._-]", "_") + "-export.zip"));
+        if (chooser.showSaveDialog(owner) != JFileChooser.APPROVE_OPTION) return;
+        File selected = chooser.getSelectedFile();
+        File target = selected.getName().toLowerCase(Locale.ROOT).endsWith(".zip") ? selected
+                : new File(selected.getParentFile(), selected.getName() + ".zip");
+
+        CourseExportDialog dialog = new CourseExportDialog(owner, courseName);
+        dialog.setVisible(true);
+
+        // Its own connection: the export holds a streaming result open for most of its run
+        Thread worker = new Thread(() -> {
+            try (Connection conn = DatabaseConnection.openConnection()) {
+                CourseExporter.Report report = CourseExporter.export(conn, courseId, target, (step, done, total) ->
+                        SwingUtilities.invokeLater(() -> dialog.showProgress(step, done, total)));
+                SwingUtilities.invokeLater(() -> {
+                    dialog.dispose();
+                    String msg = "Exported " + report.rows + " rows and " + report.files + " files to\n" +
+                                 target.getAbsolutePath() + " (" + (report.archiveBytes >> 20) + " MB).";
+                    if (report.missingFiles > 0) {
+                        msg += "\n" + report.missingFiles + " stored files were missing and are not in the archive.";
+                    }
+                    JOptionPane.showMessageDialog(owner, msg, "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+                });
+            } catch (SQLException | IOException ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> {
+                    dialog.dispose();
+                    JOptionPane.showMessageDialog(owner, "Error exporting course: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        }, "course-export");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void showProgress(String step, long done, long total) {
+        int percent = total == 0 ? 100 : (int) Math.min(100, done * 100 / total);
+        progressBar.setValue(percent);
+        statusLabel.setText(step + "  (" + done + " / " + total + ")");
+    }
+}
@@ -4,7 +4,13 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.sql.*;
+import client.LmsClient;
+import client.OfflineStore;
+import config.AppConfig;
 import database.DatabaseConnection;
+import database.UserAccounts;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class LoginFrame extends JFrame {
     private JTextField usernameField;
@@ -12,16 +18,38 @@ public class LoginFrame extends JFrame {
     private JButton loginButton;
     private JComboBox<String> roleComboBox;
 
+    private static final ExecutorService LOGIN_WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "login");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Hidden while a dashboard is open and shown again, emptied, at logout
+    private static LoginFrame instance;
+
     public LoginFrame() {
         setTitle("LMS - Login");
         setSize(450, 350);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // A lab computer in kiosk mode always shows the login screen between users
+        setDefaultCloseOperation(Session.kiosk() ? JFrame.DO_NOTHING_ON_CLOSE : JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         setResizable(false);
 
         initComponents();
     }
 
+    /** Shows the login screen, with nothing left in it from the previous user. */
+    public static void showLogin() {
+        if (instance == null) instance = new LoginFrame();
+        instance.usernameField.setText("");
+        instance.passwordField.setText("");
+        instance.roleComboBox.setSelectedIndex(0);
+        instance.loginButton.setEnabled(true);
+        instance.setLocationRelativeTo(null);
+        instance.setVisible(true);
+        instance.usernameField.requestFocusInWindow();
+    }
+
     private void initComponents() {
         JPanel mainPanel = new JPanel() {
             @Override
@@ -183,60 +211,132 @@ public class LoginFrame extends JFrame {
             return;
         }
 
+        // The password hash and the round trip run off the EDT; the button stays off meanwhile
+        loginButton.setEnabled(false);
+        String serverUrl = AppConfig.get("lms.server.url", null);
+        LOGIN_WORKER.execute(() -> {
+            try {
+                // Only the student dashboard is a thin client; teachers and admins still use MySQL
+                if (serverUrl != null && "student".equals(role)) loginThroughServer(serverUrl, username, password, role);
+                else loginToDatabase(username, password, role);
+            } finally {
+                SwingUtilities.invokeLater(() -> loginButton.setEnabled(true));
+            }
+        });
+    }
+
+    // Runs on the login thread
+    private void loginToDatabase(String username, String password, String role) {
         try {
             Connection conn = DatabaseConnection.getConnection();
-            String query = "SELECT * FROM users WHERE username = ? AND password = ? AND role = ?";
-            PreparedStatement pst = conn.prepareStatement(query);
-            pst.setString(1, username);
-            pst.setString(2, password);
-            pst.setString(3, role);
-
-            ResultSet rs = pst.executeQuery();
-
-            if (rs.next()) {
-                int userId = rs.getInt("user_id");
-                String fullName = rs.getString("full_name");
-
-                JOptionPane.showMessageDialog(this,
-                        "Welcome, " + fullName + "!",
-                        "Success",
-                        JOptionPane.INFORMATION_MESSAGE);
-
-                this.dispose();
-
-                // Open appropriate dashboard based on role
-                switch (role) {
-                    case "student":
-                        new StudentDashboard(userId, fullName).setVisible(true);
-                        break;
-                    case "teacher":
-                        new TeacherDashboard(userId, fullName).setVisible(true);
-                        break;
-                    case "admin":
-                        new AdminDashboard(userId, fullName).setVisible(true);
-                        break;
-                }
-            } else {
-                JOptionPane.showMessageDialog(this,
-                        "Invalid credentials!",
-                        "Error",
-                        JOptionPane.ERROR_MESSAGE);
+            if (conn == null) {
+                if ("student".equals(role) && openOffline(username, password)) return;
+                showLoginError("Cannot connect to the database.");
+                return;
             }
-
-            rs.close();
-            pst.close();
+            UserAccounts.Account account = UserAccounts.authenticate(conn, username, password, role);
+            if (account == null) {
+                showLoginError("Invalid credentials!");
+                return;
+            }
+            if (rememberOffline(role)) OfflineStore.rememberLogin(username, password, account.userId, account.fullName);
+            SwingUtilities.invokeLater(() -> welcome(role, account.userId, account.fullName));
         } catch (SQLException ex) {
             ex.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                    "Database error: " + ex.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
+            if ("student".equals(role) && DatabaseConnection.isConnectionFailure(ex) && openOffline(username, password)) return;
+            showLoginError("Database error: " + ex.getMessage());
         }
     }
 
-    public static void main(String[] args) {
+    // Thin-client mode: the application server checks the credentials and keeps the session.
+    // Runs on the login thread.
+    private void loginThroughServer(String serverUrl, String username, String password, String role) {
+        LmsClient client = new LmsClient(serverUrl);
+        try {
+            LmsClient.Login login = client.login(username, password, role);
+            LmsClient.setCurrent(client);
+            if (rememberOffline(role)) OfflineStore.rememberLogin(username, password, login.userId, login.fullName);
+            SwingUtilities.invokeLater(() -> welcome(role, login.userId, login.fullName));
+        } catch (LmsClient.ApiError ex) {
+            if (ex.status == 429 || ex.status == 503) {
+                // Too many logins at once; the message says when to try again
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        ex.getMessage(),
+                        "Please Wait",
+                        JOptionPane.WARNING_MESSAGE));
+                return;
+            }
+            showLoginError(ex.status == 401 ? "Invalid credentials!" : "Server error: " + ex.getMessage());
+        } catch (java.io.IOException ex) {
+            ex.printStackTrace();
+            if ("student".equals(role)) {
+                // The dashboard signs in for real once the server answers again
+                client.signInLater(username, password, role);
+                LmsClient.setCurrent(client);
+                if (openOffline(username, password)) return;
+                LmsClient.setCurrent(null);
+            }
+            showLoginError("Cannot reach the LMS server: " + ex.getMessage());
+        }
+    }
+
+    // Offline sign-in is for a student's own computer, not a shared one
+    private static boolean rememberOffline(String role) {
+        return "student".equals(role) && !Session.kiosk();
+    }
+
+    private void welcome(String role, int userId, String fullName) {
+        JOptionPane.showMessageDialog(this,
+                "Welcome, " + fullName + "!",
+                "Success",
+                JOptionPane.INFORMATION_MESSAGE);
+        openDashboard(role, userId, fullName);
+    }
+
+    private void showLoginError(String message) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                message,
+                "Error",
+                JOptionPane.ERROR_MESSAGE));
+    }
+
+    // A student who signed in on this computer before can open their saved data while the LMS is
+    // unreachable. Runs on the login thread.
+    private boolean openOffline(String username, String password) {
+        if (Session.kiosk()) return false;
+        OfflineStore.Login saved = OfflineStore.verifyLogin(username, password);
+        if (saved == null) return false;
         SwingUtilities.invokeLater(() -> {
-            new LoginFrame().setVisible(true);
+            JOptionPane.showMessageDialog(this,
+                    "The LMS cannot be reached right now.\n" +
+                    "Showing the data saved on this computer; submissions are uploaded once the connection is back.",
+                    "Offline",
+                    JOptionPane.WARNING_MESSAGE);
+            openDashboard("student", saved.userId, saved.fullName);
         });
+        return true;
+    }
+
+    private void openDashboard(String role, int userId, String fullName) {
+        setVisible(false);
+        passwordField.setText("");
+
+        // Open appropriate dashboard based on role
+        switch (role) {
+            case "student":
+                new StudentDashboard(userId, fullName).setVisible(true);
+                break;
+            case "teacher":
+                new TeacherDashboard(userId, fullName).setVisible(true);
+                break;
+            case "admin":
+                new AdminDashboard(userId, fullName).setVisible(true);
+                break;
+        }
+    }
+
+    public static void main(String[] args) {
+        Session.installLookAndFeel();
+        SwingUtilities.invokeLater(LoginFrame::showLogin);
     }
 }
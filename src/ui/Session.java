@@ -0,0 +1,87 @@
+package ui;
+
+import client.LmsClient;
+import config.AppConfig;
+
+import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One signed-in user's time at the desktop, from login to logout.
+ *
+ * In kiosk mode (lms.kiosk=true, for shared lab computers) closing a dashboard signs out instead
+ * of exiting, and the login screen can't be closed, so one JVM serves one student after another.
+ * The database connection, change feed, caches, look and feel and loaded classes carry over to
+ * the next user; what belongs to the user who left is dropped by {@link #end()}.
+ */
+public class Session {
+    private static final List<Runnable> endHooks = new ArrayList<>();
+    private static boolean lookAndFeelInstalled;
+
+    public static boolean kiosk() {
+        return AppConfig.getBoolean("lms.kiosk", false);
+    }
+
+    // Once per JVM; switching look and feel later would restyle every open window
+    public static synchronized void installLookAndFeel() {
+        if (lookAndFeelInstalled) return;
+        lookAndFeelInstalled = true;
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Closing the dashboard exits, or in kiosk mode runs its logout. */
+    public static void closeSignsOut(JFrame dashboard, Runnable logout) {
+        if (!kiosk()) {
+            dashboard.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            return;
+        }
+        dashboard.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        dashboard.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                logout.run();
+            }
+        });
+    }
+
+    /** Work that outlives the dashboard window (downloads, saved data) and must not reach the next user. */
+    public static synchronized void onEnd(Runnable hook) {
+        endHooks.add(hook);
+    }
+
+    // Called by the dashboards' logout, after the window is disposed
+    public static void end() {
+        List<Runnable> hooks;
+        synchronized (Session.class) {
+            hooks = new ArrayList<>(endHooks);
+            endHooks.clear();
+        }
+        for (Runnable hook : hooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        LmsClient client = LmsClient.current();
+        if (client != null) {
+            LmsClient.setCurrent(null);
+            new Thread(() -> {
+                try {
+                    client.logout();
+                } catch (IOException e) {
+                    // The session expires on the server by itself
+                }
+            }, "lms-logout").start();
+        }
+    }
+}
@@ -6,11 +6,30 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
 import java.sql.*;
+import client.LmsClient;
+import client.OfflineStore;
+import config.AppConfig;
+import database.ChangeLog;
 import database.DatabaseConnection;
+import database.Enrollments;
+import database.Notifications;
+import database.Waitlist;
+import search.ContentIndex;
+import search.SearchIndex;
+import storage.Compression;
+import storage.DownloadService;
+import storage.SubmissionStore;
+import sync.ChangeFeed;
+import sync.DeltaCursor;
+import sync.InboxFanout;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class StudentDashboard extends JFrame {
     private int studentId;
@@ -28,6 +47,54 @@ public class StudentDashboard extends JFrame {
     private JTable messagesTable;
     private DefaultTableModel messagesModel;
 
+    // Search boxes for the materials and messages tabs
+    private static final int SEARCH_PAGE_SIZE = 20;
+    private SearchBar materialsSearch;
+    private SearchBar messagesSearch;
+    private DownloadsPanel downloadsPanel;
+
+    // High-water marks so refreshes only fetch rows newer than what is already shown
+    private final DeltaCursor materialsCursor = new DeltaCursor();
+    private final DeltaCursor messagesCursor = new DeltaCursor();
+    private static final int MATERIAL_FILE_COLUMN = 4;
+    private static final int MATERIAL_ID_COLUMN = 5;
+    private static final int MATERIAL_PATH_COLUMN = 6;
+    private static final int MESSAGE_ID_COLUMN = 4;
+    private static final int MESSAGE_STATUS_COLUMN = 5;
+
+    // With fan-out enabled messages are read from this student's inbox rows, which carry a read flag;
+    // the server API serves the messages themselves
+    private final boolean inboxMode = AppConfig.inboxFanout() && LmsClient.current() == null;
+    private static final String UNREAD = "● New";
+    private static final String READ = "Read";
+    private JLabel unreadLabel;
+
+    // Pushes changes from other users (new messages, grades, ...) into the open tabs
+    private final ChangeFeed.Listener changeListener = this::onChanges;
+    private boolean assignmentsLoaded = false;
+
+    // Enrolled course ids, refreshed with the courses tab; search results are scoped to these
+    private final java.util.List<Integer> enrolledCourseIds = new java.util.ArrayList<>();
+
+    // Thin-client mode: the lists are read through the application server instead of the database
+    private final LmsClient client = LmsClient.current();
+
+    // The last lists shown and submissions made without a connection are kept on this computer.
+    // The dashboard starts from the saved lists; the sync thread checks the connection, uploads
+    // queued submissions and has the lists reloaded once it is back.
+    private final OfflineStore offlineStore;
+    private final ScheduledExecutorService syncJobs;
+    private volatile boolean offline = true;
+    private boolean connectionChecked = false;
+    // Unread notifications (waitlist promotions) to fetch on the next sync; thin clients check every time
+    private volatile boolean notificationsPending = true;
+    private JLabel syncLabel;
+    private static final int COURSE_ID_COLUMN = 5;
+    private static final int ASSIGNMENT_STATUS_COLUMN = 5;
+    private static final int ASSIGNMENT_ID_COLUMN = 6;
+    private static final int ASSIGNMENT_COURSE_COLUMN = 7;
+    private static final String QUEUED = "Queued (offline)";
+
     // Modern color palette - ADJUSTED FOR BETTER VISIBILITY
     private static final Color PRIMARY_COLOR = new Color(30, 144, 255);      // Dodger Blue
     private static final Color SECONDARY_COLOR = new Color(70, 130, 180);    // Steel Blue
@@ -46,18 +113,357 @@ public class StudentDashboard extends JFrame {
 
         setTitle("Student Dashboard - " + name);
         setSize(1100, 700);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        Session.closeSignsOut(this, this::logout);
         setLocationRelativeTo(null);
 
-        // Set modern look and feel
+        offlineStore = new OfflineStore(userId);
+        initComponents();
+        restoreSavedLists();
+        // Downloads keep running after the window closes; on a shared computer the next user
+        // mustn't find this student's courses and messages either
+        Session.onEnd(downloadsPanel::cancelRunning);
+        if (Session.kiosk()) Session.onEnd(offlineStore::clearSavedLists);
+        // Thin clients have no change feed; the sync thread revalidates their lists instead
+        if (client == null) ChangeFeed.get().addListener(changeListener);
+
+        syncJobs = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "student-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncJobs.scheduleWithFixedDelay(this::sync, 0, AppConfig.getInt("lms.offline.retrySeconds", 15), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void dispose() {
+        ChangeFeed.get().removeListener(changeListener);
+        syncJobs.shutdownNow();
+        super.dispose();
+    }
+
+    private void restoreSavedLists() {
+        fillRows(courseTableModel, offlineStore.load(OfflineStore.COURSES));
+        for (int row = 0; row < courseTableModel.getRowCount(); row++) {
+            enrolledCourseIds.add((Integer) courseTableModel.getValueAt(row, COURSE_ID_COLUMN));
+        }
+        fillRows(assignmentTableModel, offlineStore.load(OfflineStore.ASSIGNMENTS));
+        fillRows(materialsModel, offlineStore.load(OfflineStore.MATERIALS));
+        fillRows(messagesModel, offlineStore.load(OfflineStore.MESSAGES));
+        coursesCountLabel.setText(String.valueOf(courseTableModel.getRowCount()));
+        assignmentsCountLabel.setText(String.valueOf(assignmentTableModel.getRowCount()));
+        markQueued();
+        updateSyncLabel();
+    }
+
+    // Rows saved by an older version with other columns are skipped
+    private static void fillRows(DefaultTableModel model, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            if (row.length == model.getColumnCount()) model.addRow(row);
+        }
+    }
+
+    private static List<Object[]> rowsOf(DefaultTableModel model) {
+        List<Object[]> rows = new java.util.ArrayList<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            Object[] values = new Object[model.getColumnCount()];
+            for (int col = 0; col < values.length; col++) values[col] = model.getValueAt(row, col);
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    // Replaces the rows only if they differ, so an unchanged refresh keeps the selection
+    private static boolean replaceRows(DefaultTableModel model, List<Object[]> rows) {
+        List<Object[]> current = rowsOf(model);
+        boolean same = current.size() == rows.size();
+        for (int i = 0; same && i < rows.size(); i++) {
+            same = java.util.Arrays.equals(current.get(i), java.util.Arrays.copyOf(rows.get(i), model.getColumnCount()));
+        }
+        if (same) return false;
+        model.setRowCount(0);
+        for (Object[] row : rows) model.addRow(row);
+        return true;
+    }
+
+    // Written on the sync thread, off the EDT
+    private void saveList(String list, List<Object[]> rows) {
+        if (!syncJobs.isShutdown()) syncJobs.execute(() -> offlineStore.save(list, rows));
+    }
+
+    // Assignments with a submission waiting in the outbox
+    private void markQueued() {
+        java.util.Set<Integer> queued = new java.util.HashSet<>();
+        for (OfflineStore.Pending pending : offlineStore.pending()) queued.add(pending.assignmentId);
+        for (int row = 0; row < assignmentTableModel.getRowCount(); row++) {
+            if (queued.contains(assignmentTableModel.getValueAt(row, ASSIGNMENT_ID_COLUMN))) {
+                assignmentTableModel.setValueAt(QUEUED, row, ASSIGNMENT_STATUS_COLUMN);
+            }
+        }
+    }
+
+    private void updateSyncLabel() {
+        int queued = offlineStore.pendingCount();
+        java.util.Date savedAt = offlineStore.savedAt(OfflineStore.COURSES);
+        String saved = savedAt == null ? "" : " · saved data from " + new java.text.SimpleDateFormat("d MMM HH:mm").format(savedAt);
+        String text;
+        if (!connectionChecked) {
+            text = "🔄 Connecting…" + saved;
+        } else if (offline) {
+            text = "⚠ Offline" + saved + (queued > 0 ? " · " + queued + " queued" : "");
+        } else {
+            text = queued > 0 ? "⏳ Uploading " + queued + " queued" : "";
+        }
+        syncLabel.setText(text);
+        syncLabel.setVisible(!text.isEmpty());
+    }
+
+    // The shared connection, or null while offline; saved rows then stay on screen until the sync
+    // thread finds the database again
+    private Connection liveConnection() {
+        if (offline) return null;
+        Connection conn = DatabaseConnection.getConnection();
+        if (conn == null) goOffline();
+        return conn;
+    }
+
+    // A lost connection switches the dashboard to its saved data instead of showing an error
+    private boolean wentOffline(Exception e) {
+        if (!isConnectionLost(e)) return false;
+        goOffline();
+        return true;
+    }
+
+    private boolean isConnectionLost(Exception e) {
+        if (e instanceof SQLException sql) return DatabaseConnection.isConnectionFailure(sql);
+        return client != null && e instanceof IOException io && LmsClient.isUnreachable(io);
+    }
+
+    private void goOffline() {
+        connectionChecked = true;
+        offline = true;
+        updateSyncLabel();
+    }
+
+    private void goOnline() {
+        connectionChecked = true;
+        offline = false;
+        updateSyncLabel();
+    }
+
+    private void requestSync() {
+        if (!syncJobs.isShutdown()) syncJobs.execute(this::sync);
+    }
+
+    // Runs on the sync thread
+    private void sync() {
         try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
+            if (client != null) syncWithServer(); else syncWithDatabase();
+        } catch (RuntimeException e) {
+            // Keeps the schedule alive
             e.printStackTrace();
         }
+    }
 
-        initComponents();
+    private void syncWithDatabase() {
+        // Online with nothing queued there is nothing to do; the change feed keeps the lists live
+        if (!offline && offlineStore.pendingCount() == 0 && !notificationsPending) return;
+        int uploaded;
+        List<String> notifications;
+        try (Connection conn = DatabaseConnection.openConnection()) {
+            uploaded = uploadQueued(conn);
+            notifications = takeNotifications(conn);
+        } catch (IOException | SQLException e) {
+            SwingUtilities.invokeLater(this::goOffline);
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            boolean wasOffline = offline;
+            goOnline();
+            if (wasOffline || uploaded > 0) reloadLists();
+            showNotifications(notifications);
+        });
+    }
+
+    // Lists on screen, live or saved, are reloaded; the others load when their tab is opened
+    private void reloadLists() {
         loadEnrolledCourses();
+        refreshUnreadCount();
+        if (assignmentsLoaded || assignmentTableModel.getRowCount() > 0) viewAssignments();
+        if (!materialsSearch.isActive() && (materialsCursor.isInitialized() || materialsModel.getRowCount() > 0)) loadMaterials();
+        if (!messagesSearch.isActive() && (messagesCursor.isInitialized() || messagesModel.getRowCount() > 0)) loadMessages();
+    }
+
+    // Each refresh fetches all four lists; unchanged ones are answered with 304 Not Modified
+    private void syncWithServer() {
+        try {
+            uploadQueued(null);
+            List<String> notifications = takeNotifications(null);
+            List<Object[]> courses = new java.util.ArrayList<>();
+            for (Map<String, Object> c : client.courses()) {
+                courses.add(new Object[]{c.get("course_code"), c.get("course_name"), c.get("teacher"), intValue(c.get("credits")),
+                        c.get("grade") == null ? "N/A" : c.get("grade"), intValue(c.get("course_id"))});
+            }
+            List<Object[]> assignments = new java.util.ArrayList<>();
+            for (Map<String, Object> a : client.assignments(null)) {
+                Object marks = a.get("marks_obtained");
+                assignments.add(new Object[]{a.get("title"), a.get("course_name"), a.get("due_date"), intValue(a.get("max_marks")),
+                        marks == null ? "N/A" : intValue(marks), marks == null ? "Not Submitted" : "Submitted",
+                        intValue(a.get("assignment_id")), intValue(a.get("course_id"))});
+            }
+            List<Object[]> materials = new java.util.ArrayList<>();
+            for (Map<String, Object> m : client.materials(null)) {
+                materials.add(new Object[]{m.get("title"), m.get("course_name"), m.get("description"), m.get("upload_date"),
+                        m.get("file_name"), intValue(m.get("material_id")), null});
+            }
+            List<Object[]> messages = new java.util.ArrayList<>();
+            for (Map<String, Object> m : client.messages(null)) {
+                messages.add(new Object[]{m.get("subject"), m.get("course_name"), m.get("message_text"), m.get("sent_date"),
+                        intValue(m.get("message_id")), null});
+            }
+            SwingUtilities.invokeLater(() -> {
+                showServerLists(courses, assignments, materials, messages);
+                showNotifications(notifications);
+            });
+        } catch (LmsClient.ApiError e) {
+            if (e.status == 401) SwingUtilities.invokeLater(this::sessionEnded); else e.printStackTrace();
+        } catch (IOException | SQLException e) {
+            SwingUtilities.invokeLater(this::goOffline);
+        }
+    }
+
+    // Runs on the sync thread; conn is null in thin-client mode
+    private List<String> takeNotifications(Connection conn) throws IOException, SQLException {
+        if (client != null) return client.readNotifications();
+        if (!notificationsPending) return List.of();
+        List<String> notifications = DatabaseConnection.inTransaction(conn, c -> Notifications.take(c, studentId));
+        notificationsPending = false;
+        return notifications;
+    }
+
+    private void showNotifications(List<String> notifications) {
+        if (!notifications.isEmpty() && isDisplayable()) showInfo(String.join("\n\n", notifications));
+    }
+
+    private static Integer intValue(Object value) {
+        return value == null ? null : ((Number) value).intValue();
+    }
+
+    private void showServerLists(List<Object[]> courses, List<Object[]> assignments,
+                                 List<Object[]> materials, List<Object[]> messages) {
+        if (!isDisplayable()) return;
+        goOnline();
+        enrolledCourseIds.clear();
+        for (Object[] row : courses) enrolledCourseIds.add((Integer) row[COURSE_ID_COLUMN]);
+        if (replaceRows(courseTableModel, courses)) saveList(OfflineStore.COURSES, courses);
+        if (replaceRows(assignmentTableModel, assignments)) saveList(OfflineStore.ASSIGNMENTS, assignments);
+        if (replaceRows(materialsModel, materials)) saveList(OfflineStore.MATERIALS, materials);
+        if (replaceRows(messagesModel, messages)) saveList(OfflineStore.MESSAGES, messages);
+        coursesCountLabel.setText(String.valueOf(courseTableModel.getRowCount()));
+        assignmentsCountLabel.setText(String.valueOf(assignmentTableModel.getRowCount()));
+        markQueued();
+    }
+
+    private void sessionEnded() {
+        if (!isDisplayable()) return;
+        showWarning("Your session on the LMS server has ended. Please sign in again.");
+        logout();
+    }
+
+    /**
+     * Uploads the outbox, oldest first. Stops at the first connection failure and rethrows it; a
+     * submission refused for good (assignment deleted, no longer enrolled) is dropped with a message.
+     * Runs on the sync thread; conn is null in thin-client mode.
+     */
+    private int uploadQueued(Connection conn) throws IOException, SQLException {
+        int handled = 0;
+        for (OfflineStore.Pending pending : offlineStore.pending()) {
+            try {
+                if (client != null) {
+                    if (pending.file != null) client.submitFile(pending.assignmentId, pending.file, pending.comments);
+                    else client.submit(pending.assignmentId, pending.comments);
+                } else {
+                    uploadToDatabase(conn, pending);
+                }
+            } catch (IOException | SQLException e) {
+                if (isConnectionLost(e) || (e instanceof LmsClient.ApiError api && api.status == 401)) throw e;
+                e.printStackTrace();
+                String message = e.getMessage();
+                SwingUtilities.invokeLater(() -> showError("A submission saved while offline could not be uploaded: " + message));
+            }
+            offlineStore.remove(pending);
+            handled++;
+        }
+        return handled;
+    }
+
+    private void uploadToDatabase(Connection conn, OfflineStore.Pending pending) throws IOException, SQLException {
+        if (pending.file == null) {
+            DatabaseConnection.inTransaction(conn, c -> saveSubmission(c, pending.assignmentId, pending.courseId, pending.comments));
+            return;
+        }
+        SubmissionStore.Staged staged = SubmissionStore.get().stage(conn, pending.assignmentId, studentId, pending.file);
+        try {
+            List<File> replaced = DatabaseConnection.inTransaction(conn, c -> SubmissionStore.get().attach(c,
+                    saveSubmission(c, pending.assignmentId, pending.courseId, pending.comments).id, staged));
+            for (File old : replaced) old.delete();
+        } catch (SQLException | RuntimeException e) {
+            staged.discard();
+            throw e;
+        }
+    }
+
+    // Keeps a copy of the submission in the outbox; the sync thread uploads it once the connection is back
+    private void queueSubmission(int assignmentId, int courseId, String comments, File file) {
+        try {
+            offlineStore.queue(assignmentId, courseId, comments, file);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            showError("Could not save the submission on this computer: " + ex.getMessage());
+            return;
+        }
+        markQueued();
+        updateSyncLabel();
+        showInfo("You are offline. The submission was saved on this computer and will be uploaded\n" +
+                 "automatically when the connection is back.");
+    }
+
+    private void onChanges(List<ChangeFeed.Change> changes) {
+        boolean courses = false, assignments = false, materials = false, messages = false, inbox = false;
+        boolean notifications = false;
+        for (ChangeFeed.Change change : changes) {
+            boolean mine = change.userId != null && change.userId == studentId;
+            boolean myCourse = change.courseId != null && enrolledCourseIds.contains(change.courseId);
+            switch (change.table) {
+                case ChangeLog.ENROLLMENTS -> courses |= mine || (myCourse && change.userId == null);
+                case ChangeLog.ASSIGNMENTS -> assignments |= myCourse;
+                case ChangeLog.SUBMISSIONS -> assignments |= mine || (myCourse && change.userId == null);
+                case ChangeLog.STUDY_MATERIALS -> {
+                    materials |= myCourse;
+                    if (myCourse && ChangeLog.DELETE.equals(change.op)) materialsCursor.reset();
+                }
+                case ChangeLog.MESSAGES -> {
+                    messages |= myCourse;
+                    if (myCourse && ChangeLog.DELETE.equals(change.op)) messagesCursor.reset();
+                }
+                case ChangeLog.INBOX -> {
+                    messages |= myCourse;
+                    inbox |= myCourse;
+                }
+                case ChangeLog.NOTIFICATIONS -> notifications |= mine;
+            }
+        }
+
+        if (notifications) {
+            notificationsPending = true;
+            requestSync();
+        }
+
+        if (inbox || courses) refreshUnreadCount();
+        if (courses) loadEnrolledCourses();
+        if ((assignments || courses) && assignmentsLoaded) viewAssignments();
+        // Only lists that were opened are kept live, and search results are left alone
+        if ((materials || courses) && materialsCursor.isInitialized() && !materialsSearch.isActive()) loadMaterials();
+        if ((messages || courses) && messagesCursor.isInitialized() && !messagesSearch.isActive()) loadMessages();
     }
 
     private void initComponents() {
@@ -98,8 +504,25 @@ public class StudentDashboard extends JFrame {
         JButton logoutButton = createStyledButton("Logout", DANGER_COLOR);
         logoutButton.addActionListener(e -> logout());
 
+        // Unread message count, only tracked when messages are fanned out to inboxes
+        unreadLabel = new JLabel();
+        unreadLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        unreadLabel.setForeground(Color.WHITE);
+        unreadLabel.setVisible(inboxMode);
+
+        // Connection state and queued submissions
+        syncLabel = new JLabel();
+        syncLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        syncLabel.setForeground(Color.WHITE);
+
+        JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 20, 0));
+        rightPanel.setOpaque(false);
+        rightPanel.add(syncLabel);
+        rightPanel.add(unreadLabel);
+        rightPanel.add(logoutButton);
+
         headerPanel.add(welcomePanel, BorderLayout.WEST);
-        headerPanel.add(logoutButton, BorderLayout.EAST);
+        headerPanel.add(rightPanel, BorderLayout.EAST);
 
         // Tabbed Pane with custom styling
         JTabbedPane tabbedPane = new JTabbedPane();
@@ -148,7 +571,7 @@ public class StudentDashboard extends JFrame {
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
         // Create table model FIRST
-        String[] courseColumns = {"Course Code", "Course Name", "Teacher", "Credits", "Grade"};
+        String[] courseColumns = {"Course Code", "Course Name", "Teacher", "Credits", "Grade", "ID"};
         courseTableModel = new DefaultTableModel(courseColumns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -207,6 +630,7 @@ public class StudentDashboard extends JFrame {
 
         coursesTable = new JTable(courseTableModel);
         styleTable(coursesTable);
+        coursesTable.removeColumn(coursesTable.getColumnModel().getColumn(COURSE_ID_COLUMN));
         JScrollPane courseScrollPane = new JScrollPane(coursesTable);
         courseScrollPane.setBorder(BorderFactory.createLineBorder(new Color(220, 220, 220), 1));
 
@@ -220,7 +644,11 @@ public class StudentDashboard extends JFrame {
         JButton enrollButton = createStyledButton("➕ Enroll in Course", SUCCESS_COLOR);
         enrollButton.addActionListener(e -> enrollInCourse());
 
+        JButton dropButton = createStyledButton("➖ Drop Course", DANGER_COLOR);
+        dropButton.addActionListener(e -> dropCourse());
+
         buttonPanel.add(enrollButton);
+        buttonPanel.add(dropButton);
         tableCard.add(buttonPanel, BorderLayout.SOUTH);
 
         panel.add(statsPanel, BorderLayout.NORTH);
@@ -235,7 +663,7 @@ public class StudentDashboard extends JFrame {
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
         // Create table model FIRST
-        String[] assignmentColumns = {"Assignment", "Course", "Due Date", "Max Marks", "Obtained", "Status"};
+        String[] assignmentColumns = {"Assignment", "Course", "Due Date", "Max Marks", "Obtained", "Status", "ID", "Course ID"};
         assignmentTableModel = new DefaultTableModel(assignmentColumns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -294,6 +722,9 @@ public class StudentDashboard extends JFrame {
 
         assignmentsTable = new JTable(assignmentTableModel);
         styleTable(assignmentsTable);
+        // Ids stay in the model so a submission can be made, or queued, without looking them up
+        assignmentsTable.removeColumn(assignmentsTable.getColumnModel().getColumn(ASSIGNMENT_COURSE_COLUMN));
+        assignmentsTable.removeColumn(assignmentsTable.getColumnModel().getColumn(ASSIGNMENT_ID_COLUMN));
         JScrollPane assignmentScrollPane = new JScrollPane(assignmentsTable);
         assignmentScrollPane.setBorder(BorderFactory.createLineBorder(new Color(220, 220, 220), 1));
 
@@ -326,12 +757,15 @@ public class StudentDashboard extends JFrame {
         panel.setBackground(LIGHT_BG);
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
-        String[] cols = {"Title", "Course", "Description", "Uploaded Date", "File Path"};
+        String[] cols = {"Title", "Course", "Description", "Uploaded Date", "File", "ID", "Path"};
         materialsModel = new DefaultTableModel(cols, 0) {
             @Override public boolean isCellEditable(int r, int c) { return false; }
         };
         materialsTable = new JTable(materialsModel);
         styleTable(materialsTable);
+        // The id (for delta sync) and the stored file path stay in the model but are not shown
+        materialsTable.removeColumn(materialsTable.getColumnModel().getColumn(MATERIAL_PATH_COLUMN));
+        materialsTable.removeColumn(materialsTable.getColumnModel().getColumn(MATERIAL_ID_COLUMN));
         JScrollPane sp = new JScrollPane(materialsTable);
         sp.setBorder(BorderFactory.createLineBorder(new Color(220,220,220),1));
 
@@ -344,8 +778,19 @@ public class StudentDashboard extends JFrame {
         bottom.add(btnRefresh);
         bottom.add(btnDownload);
 
+        materialsSearch = new SearchBar(this::loadMaterials);
+        // Search runs against the database's index, which thin clients can't reach
+        materialsSearch.setVisible(client == null);
+        downloadsPanel = new DownloadsPanel();
+
+        JPanel south = new JPanel(new BorderLayout());
+        south.setBackground(LIGHT_BG);
+        south.add(downloadsPanel, BorderLayout.CENTER);
+        south.add(bottom, BorderLayout.SOUTH);
+
+        panel.add(materialsSearch, BorderLayout.NORTH);
         panel.add(sp, BorderLayout.CENTER);
-        panel.add(bottom, BorderLayout.SOUTH);
+        panel.add(south, BorderLayout.SOUTH);
 
         return panel;
     }
@@ -356,12 +801,19 @@ public class StudentDashboard extends JFrame {
         panel.setBackground(LIGHT_BG);
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
-        String[] cols = {"Subject", "Course", "Message", "Sent Date"};
+        String[] cols = {"Subject", "Course", "Message", "Sent Date", "ID", "Status"};
         messagesModel = new DefaultTableModel(cols, 0) {
             @Override public boolean isCellEditable(int r, int c) { return false; }
         };
         messagesTable = new JTable(messagesModel);
         styleTable(messagesTable);
+        if (!inboxMode) {
+            messagesTable.removeColumn(messagesTable.getColumnModel().getColumn(MESSAGE_STATUS_COLUMN));
+        }
+        messagesTable.removeColumn(messagesTable.getColumnModel().getColumn(MESSAGE_ID_COLUMN));
+        messagesTable.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) markSelectedMessageRead();
+        });
         JScrollPane sp = new JScrollPane(messagesTable);
         sp.setBorder(BorderFactory.createLineBorder(new Color(220,220,220),1));
 
@@ -371,6 +823,10 @@ public class StudentDashboard extends JFrame {
         btnRefresh.addActionListener(e -> loadMessages());
         bottom.add(btnRefresh);
 
+        messagesSearch = new SearchBar(this::loadMessages);
+        messagesSearch.setVisible(client == null);
+
+        panel.add(messagesSearch, BorderLayout.NORTH);
         panel.add(sp, BorderLayout.CENTER);
         panel.add(bottom, BorderLayout.SOUTH);
 
@@ -381,71 +837,401 @@ public class StudentDashboard extends JFrame {
         int row = materialsTable.getSelectedRow();
         if (row < 0) { JOptionPane.showMessageDialog(this, "Select a material row first."); return; }
         int modelRow = materialsTable.convertRowIndexToModel(row);
-        Object filePathObj = materialsModel.getValueAt(modelRow, 4);
+        if (client != null) {
+            downloadThroughServer(modelRow);
+            return;
+        }
+        Object filePathObj = materialsModel.getValueAt(modelRow, MATERIAL_PATH_COLUMN);
         if (filePathObj == null) { JOptionPane.showMessageDialog(this, "No file available for this material."); return; }
         String filePath = filePathObj.toString();
-        File src = new File(filePath);
+        // Follows the file to its compressed copy if it was recompressed since the list was loaded
+        File src = Compression.resolve(new File(filePath));
         if (!src.exists()) { JOptionPane.showMessageDialog(this, "File not found on server: " + filePath); return; }
 
         JFileChooser chooser = new JFileChooser();
-        chooser.setSelectedFile(new File(src.getName()));
+        chooser.setSelectedFile(new File(materialsModel.getValueAt(modelRow, MATERIAL_FILE_COLUMN).toString()));
         int res = chooser.showSaveDialog(this);
         if (res != JFileChooser.APPROVE_OPTION) return;
         File dest = chooser.getSelectedFile();
-        try (FileInputStream in = new FileInputStream(src); FileOutputStream out = new FileOutputStream(dest)) {
-            byte[] buf = new byte[4096];
-            int n;
-            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
-            JOptionPane.showMessageDialog(this, "Downloaded to: " + dest.getAbsolutePath());
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error saving file: " + ex.getMessage());
-        }
+        // Copied in the background; progress and the result show up in the downloads list
+        downloadsPanel.start(src, dest);
+    }
+
+    // Thin-client mode: the file is fetched from the server on a thread of its own
+    private void downloadThroughServer(int modelRow) {
+        if (offline) { showWarning("You are offline. Materials can be downloaded once the connection is back."); return; }
+        Object fileName = materialsModel.getValueAt(modelRow, MATERIAL_FILE_COLUMN);
+        if (fileName == null) { JOptionPane.showMessageDialog(this, "No file available for this material."); return; }
+        int materialId = (Integer) materialsModel.getValueAt(modelRow, MATERIAL_ID_COLUMN);
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(fileName.toString()));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File dest = chooser.getSelectedFile();
+
+        Thread worker = new Thread(() -> {
+            try {
+                client.downloadMaterial(materialId, dest);
+                SwingUtilities.invokeLater(() -> showSuccess("Saved to " + dest.getAbsolutePath()));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> {
+                    if (!wentOffline(ex)) showError("Download failed: " + ex.getMessage());
+                    else showWarning("The connection was lost during the download. Please try again later.");
+                });
+            }
+        }, "material-download");
+        worker.setDaemon(true);
+        worker.start();
     }
 
     private void loadMaterials() {
-        materialsModel.setRowCount(0);
-        String sql = "SELECT sm.material_id, sm.title, sm.description, sm.file_path, c.course_name, sm.upload_date " +
+        if (client != null) { requestSync(); return; }
+        Connection conn = liveConnection();
+        if (conn == null) return;
+        if (materialsSearch.isActive()) {
+            materialsCursor.reset();
+            searchMaterials(conn);
+            return;
+        }
+        materialsSearch.showPage(false);
+        if (materialsCursor.rescope(enrolledCourseIds) || !materialsCursor.isInitialized()) {
+            materialsModel.setRowCount(0);
+        }
+
+        // First load fetches everything newest-first; later refreshes only fetch rows past the mark
+        boolean delta = materialsCursor.isInitialized();
+        String sql = "SELECT sm.material_id, sm.title, sm.description, sm.file_path, sm.file_name, c.course_name, sm.upload_date " +
                      "FROM study_materials sm " +
                      "JOIN courses c ON sm.course_id = c.course_id " +
                      "JOIN enrollments e ON e.course_id = c.course_id " +
-                     "WHERE e.student_id = ? ORDER BY sm.upload_date DESC";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+                     "WHERE e.student_id = ? " +
+                     (delta ? "AND " + materialsCursor.condition("sm.upload_date", "sm.material_id") +
+                              " ORDER BY sm.upload_date ASC, sm.material_id ASC"
+                            : "ORDER BY sm.upload_date DESC, sm.material_id DESC");
+        try {
+            PreparedStatement ps = conn.prepareStatement(sql);
             ps.setInt(1, studentId);
+            if (delta) materialsCursor.bind(ps, 2);
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
-                materialsModel.addRow(new Object[]{
-                        rs.getString("title"),
-                        rs.getString("course_name"),
-                        rs.getString("description"),
-                        rs.getTimestamp("upload_date"),
-                        rs.getString("file_path")
-                });
+                // Rows in the overlap before the mark were shown by an earlier refresh
+                if (!materialsCursor.advance(rs.getTimestamp("upload_date"), rs.getInt("material_id"))) continue;
+                Object[] row = materialRow(rs);
+                if (delta) materialsModel.insertRow(0, row); else materialsModel.addRow(row);
+            }
+            rs.close();
+            ps.close();
+            materialsCursor.markInitialized();
+
+            if (materialsCursor.sweepDue()) {
+                boolean missing = sweepRows(conn, materialsModel, MATERIAL_ID_COLUMN, "study_materials", "material_id");
+                materialsCursor.sweepDone();
+                if (missing) {
+                    materialsCursor.reset();
+                    loadMaterials();
+                    return;
+                }
             }
-        } catch (SQLException e) { e.printStackTrace(); JOptionPane.showMessageDialog(this, "Error loading materials: " + e.getMessage()); }
+            saveList(OfflineStore.MATERIALS, rowsOf(materialsModel));
+        } catch (SQLException e) {
+            if (wentOffline(e)) return;
+            e.printStackTrace(); JOptionPane.showMessageDialog(this, "Error loading materials: " + e.getMessage());
+        }
+    }
+
+    private Object[] materialRow(ResultSet rs) throws SQLException {
+        String path = rs.getString("file_path");
+        // Older rows point at a file named after the upload; newer ones at a blob named by digest
+        String fileName = rs.getString("file_name");
+        if (fileName == null && path != null) fileName = Compression.logicalName(new File(path));
+        return new Object[]{
+                rs.getString("title"),
+                rs.getString("course_name"),
+                rs.getString("description"),
+                rs.getTimestamp("upload_date"),
+                fileName,
+                rs.getInt("material_id"),
+                path
+        };
     }
 
     private void loadMessages() {
-        messagesModel.setRowCount(0);
-        String sql = "SELECT m.subject, m.message_text, c.course_name, m.sent_date " +
+        if (client != null) { requestSync(); return; }
+        Connection conn = liveConnection();
+        if (conn == null) return;
+        if (messagesSearch.isActive()) {
+            messagesCursor.reset();
+            searchMessages(conn);
+            return;
+        }
+        messagesSearch.showPage(false);
+        if (messagesCursor.rescope(enrolledCourseIds) || !messagesCursor.isInitialized()) {
+            messagesModel.setRowCount(0);
+        }
+
+        boolean delta = messagesCursor.isInitialized();
+        if (inboxMode) {
+            loadInbox(conn, delta);
+            return;
+        }
+        String sql = "SELECT m.message_id, m.subject, m.message_text, c.course_name, m.sent_date " +
                      "FROM messages m " +
                      "JOIN courses c ON m.course_id = c.course_id " +
                      "JOIN enrollments e ON e.course_id = c.course_id " +
-                     "WHERE e.student_id = ? ORDER BY m.sent_date DESC";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+                     "WHERE e.student_id = ? " +
+                     (delta ? "AND " + messagesCursor.condition("m.sent_date", "m.message_id") +
+                              " ORDER BY m.sent_date ASC, m.message_id ASC"
+                            : "ORDER BY m.sent_date DESC, m.message_id DESC");
+        try {
+            PreparedStatement ps = conn.prepareStatement(sql);
             ps.setInt(1, studentId);
+            if (delta) messagesCursor.bind(ps, 2);
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
-                messagesModel.addRow(new Object[]{
+                if (!messagesCursor.advance(rs.getTimestamp("sent_date"), rs.getInt("message_id"))) continue;
+                Object[] row = {
                         rs.getString("subject"),
                         rs.getString("course_name"),
                         rs.getString("message_text"),
-                        rs.getTimestamp("sent_date")
-                });
+                        rs.getTimestamp("sent_date"),
+                        rs.getInt("message_id")
+                };
+                if (delta) messagesModel.insertRow(0, row); else messagesModel.addRow(row);
+            }
+            rs.close();
+            ps.close();
+            messagesCursor.markInitialized();
+
+            if (messagesCursor.sweepDue()) {
+                boolean missing = sweepRows(conn, messagesModel, MESSAGE_ID_COLUMN, "messages", "message_id");
+                messagesCursor.sweepDone();
+                if (missing) {
+                    messagesCursor.reset();
+                    loadMessages();
+                    return;
+                }
+            }
+            saveList(OfflineStore.MESSAGES, rowsOf(messagesModel));
+        } catch (SQLException e) {
+            if (wentOffline(e)) return;
+            e.printStackTrace(); JOptionPane.showMessageDialog(this, "Error loading messages: " + e.getMessage());
+        }
+    }
+
+    // Inbox rows are read by (student_id, sent_date) on a full load. Fan-out can deliver an older
+    // message after a newer one, so refreshes go by delivery order (delivery_seq) instead of date.
+    // Concurrent fan-out can also commit a lower delivery_seq after a higher one was read; the
+    // cursor's overlap window reads those again.
+    private void loadInbox(Connection conn, boolean delta) {
+        if (enrolledCourseIds.isEmpty()) {
+            messagesCursor.markInitialized();
+            return;
+        }
+        String sql = "SELECT i.message_id, i.delivery_seq, i.is_read, i.sent_date, m.subject, m.message_text, c.course_name " +
+                     "FROM inbox i " +
+                     "JOIN messages m ON m.message_id = i.message_id " +
+                     "JOIN courses c ON c.course_id = i.course_id " +
+                     "WHERE i.student_id = ? AND i.course_id IN (" + placeholders(enrolledCourseIds.size()) + ") " +
+                     (delta ? "AND i.delivery_seq > ? ORDER BY i.delivery_seq ASC"
+                            : "ORDER BY i.sent_date DESC, i.message_id DESC");
+        try {
+            PreparedStatement ps = conn.prepareStatement(sql);
+            int p = 1;
+            ps.setInt(p++, studentId);
+            for (Integer courseId : enrolledCourseIds) ps.setInt(p++, courseId);
+            if (delta) ps.setLong(p, messagesCursor.sequenceFloor());
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if (!messagesCursor.advanceSequence(rs.getLong("delivery_seq"), rs.getInt("message_id"))) continue;
+                Object[] row = {
+                        rs.getString("subject"),
+                        rs.getString("course_name"),
+                        rs.getString("message_text"),
+                        rs.getTimestamp("sent_date"),
+                        rs.getInt("message_id"),
+                        rs.getBoolean("is_read") ? READ : UNREAD
+                };
+                if (delta) messagesModel.insertRow(0, row); else messagesModel.addRow(row);
+            }
+            rs.close();
+            ps.close();
+            messagesCursor.markInitialized();
+
+            if (messagesCursor.sweepDue()) {
+                boolean missing = sweepRows(conn, messagesModel, MESSAGE_ID_COLUMN, "inbox", "message_id");
+                messagesCursor.sweepDone();
+                if (missing) {
+                    messagesCursor.reset();
+                    loadMessages();
+                    return;
+                }
             }
-        } catch (SQLException e) { e.printStackTrace(); JOptionPane.showMessageDialog(this, "Error loading messages: " + e.getMessage()); }
+            saveList(OfflineStore.MESSAGES, rowsOf(messagesModel));
+        } catch (SQLException e) {
+            if (wentOffline(e)) return;
+            e.printStackTrace(); JOptionPane.showMessageDialog(this, "Error loading messages: " + e.getMessage());
+        }
+    }
+
+    private void markSelectedMessageRead() {
+        int row = messagesTable.getSelectedRow();
+        if (!inboxMode || row < 0) return;
+        int modelRow = messagesTable.convertRowIndexToModel(row);
+        if (!UNREAD.equals(messagesModel.getValueAt(modelRow, MESSAGE_STATUS_COLUMN))) return;
+        Connection conn = liveConnection();
+        if (conn == null) return;
+
+        try {
+            PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE inbox SET is_read = TRUE WHERE student_id = ? AND message_id = ?");
+            ps.setInt(1, studentId);
+            ps.setInt(2, (Integer) messagesModel.getValueAt(modelRow, MESSAGE_ID_COLUMN));
+            ps.executeUpdate();
+            ps.close();
+            messagesModel.setValueAt(READ, modelRow, MESSAGE_STATUS_COLUMN);
+            refreshUnreadCount();
+        } catch (SQLException e) {
+            if (!wentOffline(e)) e.printStackTrace();
+        }
+    }
+
+    private void refreshUnreadCount() {
+        if (!inboxMode) return;
+        Connection conn = liveConnection();
+        if (conn == null) return;
+        try {
+            PreparedStatement ps = conn.prepareStatement(
+                    "SELECT COUNT(*) FROM inbox WHERE student_id = ? AND is_read = FALSE");
+            ps.setInt(1, studentId);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            int unread = rs.getInt(1);
+            rs.close();
+            ps.close();
+            unreadLabel.setText(unread == 0 ? "📩 No unread messages" : "📩 " + unread + " unread");
+        } catch (SQLException e) {
+            if (!wentOffline(e)) e.printStackTrace();
+        }
+    }
+
+    // Removes rows whose id no longer exists; only ids are fetched, not the full rows. Returns true
+    // if the table holds rows the list is missing, which then needs a full reload.
+    private boolean sweepRows(Connection conn, DefaultTableModel model, int idColumn,
+                              String table, String idName) throws SQLException {
+        java.util.Set<Integer> live = new java.util.HashSet<>();
+        if (!enrolledCourseIds.isEmpty()) {
+            boolean perStudent = "inbox".equals(table);
+            String sql = "SELECT " + idName + " FROM " + table +
+                         " WHERE course_id IN (" + placeholders(enrolledCourseIds.size()) + ")" +
+                         (perStudent ? " AND student_id = ?" : "");
+            PreparedStatement ps = conn.prepareStatement(sql);
+            for (int i = 0; i < enrolledCourseIds.size(); i++) ps.setInt(i + 1, enrolledCourseIds.get(i));
+            if (perStudent) ps.setInt(enrolledCourseIds.size() + 1, studentId);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) live.add(rs.getInt(1));
+            rs.close();
+            ps.close();
+        }
+        for (int row = model.getRowCount() - 1; row >= 0; row--) {
+            Integer id = (Integer) model.getValueAt(row, idColumn);
+            if (!live.remove(id)) model.removeRow(row);
+        }
+        return !live.isEmpty();
+    }
+
+    private void searchMaterials(Connection conn) {
+        materialsModel.setRowCount(0);
+        try {
+            // Title/description matches rank first, followed by matches inside the files themselves
+            int wanted = (materialsSearch.page + 1) * SEARCH_PAGE_SIZE + 1;
+            java.util.LinkedHashSet<Integer> ranked = new java.util.LinkedHashSet<>(SearchIndex.search(conn,
+                    SearchIndex.MATERIAL, materialsSearch.query(), enrolledCourseIds, wanted, 0));
+            try {
+                ranked.addAll(ContentIndex.get().search(materialsSearch.query(), enrolledCourseIds, wanted));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            List<Integer> all = new java.util.ArrayList<>(ranked);
+            int from = Math.min(materialsSearch.page * SEARCH_PAGE_SIZE, all.size());
+            List<Integer> ids = all.subList(from, Math.min(from + SEARCH_PAGE_SIZE, all.size()));
+            boolean hasMore = all.size() > from + SEARCH_PAGE_SIZE;
+
+            if (!ids.isEmpty()) {
+                String sql = "SELECT sm.material_id, sm.title, sm.description, sm.file_path, sm.file_name, c.course_name, sm.upload_date " +
+                             "FROM study_materials sm " +
+                             "JOIN courses c ON sm.course_id = c.course_id " +
+                             "WHERE sm.material_id IN (" + placeholders(ids.size()) + ")";
+                PreparedStatement ps = conn.prepareStatement(sql);
+                for (int i = 0; i < ids.size(); i++) ps.setInt(i + 1, ids.get(i));
+                ResultSet rs = ps.executeQuery();
+
+                Map<Integer, Object[]> rows = new HashMap<>();
+                while (rs.next()) {
+                    rows.put(rs.getInt("material_id"), materialRow(rs));
+                }
+                rs.close();
+                ps.close();
+
+                // Keep the ranking order returned by the index
+                for (Integer id : ids) {
+                    if (rows.containsKey(id)) materialsModel.addRow(rows.get(id));
+                }
+            }
+            materialsSearch.showPage(hasMore);
+        } catch (SQLException e) {
+            if (wentOffline(e)) return;
+            e.printStackTrace(); JOptionPane.showMessageDialog(this, "Error searching materials: " + e.getMessage());
+        }
+    }
+
+    private void searchMessages(Connection conn) {
+        messagesModel.setRowCount(0);
+        try {
+            List<Integer> ids = SearchIndex.search(conn, SearchIndex.MESSAGE, messagesSearch.query(),
+                    enrolledCourseIds, SEARCH_PAGE_SIZE + 1, messagesSearch.page * SEARCH_PAGE_SIZE);
+            boolean hasMore = ids.size() > SEARCH_PAGE_SIZE;
+            if (hasMore) ids = ids.subList(0, SEARCH_PAGE_SIZE);
+
+            if (!ids.isEmpty()) {
+                String sql = "SELECT m.message_id, m.subject, m.message_text, c.course_name, m.sent_date " +
+                             "FROM messages m " +
+                             "JOIN courses c ON m.course_id = c.course_id " +
+                             "WHERE m.message_id IN (" + placeholders(ids.size()) + ")";
+                PreparedStatement ps = conn.prepareStatement(sql);
+                for (int i = 0; i < ids.size(); i++) ps.setInt(i + 1, ids.get(i));
+                ResultSet rs = ps.executeQuery();
+
+                Map<Integer, Object[]> rows = new HashMap<>();
+                while (rs.next()) {
+                    rows.put(rs.getInt("message_id"), new Object[]{
+                            rs.getString("subject"),
+                            rs.getString("course_name"),
+                            rs.getString("message_text"),
+                            rs.getTimestamp("sent_date"),
+                            rs.getInt("message_id")
+                    });
+                }
+                rs.close();
+                ps.close();
+
+                for (Integer id : ids) {
+                    if (rows.containsKey(id)) messagesModel.addRow(rows.get(id));
+                }
+            }
+            messagesSearch.showPage(hasMore);
+        } catch (SQLException e) {
+            if (wentOffline(e)) return;
+            e.printStackTrace(); JOptionPane.showMessageDialog(this, "Error searching messages: " + e.getMessage());
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
     }
 
     private JPanel createStatCard(String title, String value, Color color, String icon) {
@@ -545,11 +1331,13 @@ public class StudentDashboard extends JFrame {
     }
 
     private void loadEnrolledCourses() {
+        if (client != null) { requestSync(); return; }
+        Connection conn = liveConnection();
+        if (conn == null) return;
         courseTableModel.setRowCount(0);
 
         try {
-            Connection conn = DatabaseConnection.getConnection();
-            String query = "SELECT c.course_code, c.course_name, u.full_name, c.credits, e.grade " +
+            String query = "SELECT c.course_id, c.course_code, c.course_name, u.full_name, c.credits, e.grade " +
                           "FROM enrollments e " +
                           "JOIN courses c ON e.course_id = c.course_id " +
                           "JOIN users u ON c.teacher_id = u.user_id " +
@@ -558,13 +1346,16 @@ public class StudentDashboard extends JFrame {
             pst.setInt(1, studentId);
 
             ResultSet rs = pst.executeQuery();
+            enrolledCourseIds.clear();
             while (rs.next()) {
+                enrolledCourseIds.add(rs.getInt("course_id"));
                 courseTableModel.addRow(new Object[]{
                     rs.getString("course_code"),
                     rs.getString("course_name"),
                     rs.getString("full_name"),
                     rs.getInt("credits"),
-                    rs.getString("grade") == null ? "N/A" : rs.getString("grade")
+                    rs.getString("grade") == null ? "N/A" : rs.getString("grade"),
+                    rs.getInt("course_id")
                 });
             }
 
@@ -575,70 +1366,230 @@ public class StudentDashboard extends JFrame {
 
             rs.close();
             pst.close();
+            saveList(OfflineStore.COURSES, rowsOf(courseTableModel));
         } catch (SQLException ex) {
+            if (wentOffline(ex)) return;
             ex.printStackTrace();
             showError("Error loading courses: " + ex.getMessage());
         }
     }
 
     private void enrollInCourse() {
+        if (offline) {
+            showWarning("You are offline. Enrolling needs a connection to the LMS.");
+            return;
+        }
+        if (client != null) {
+            enrollThroughServer();
+            return;
+        }
+        Connection conn = liveConnection();
+        if (conn == null) return;
         try {
-            Connection conn = DatabaseConnection.getConnection();
-            String query = "SELECT course_id, course_code, course_name FROM courses " +
-                          "WHERE course_id NOT IN (SELECT course_id FROM enrollments WHERE student_id = ?)";
+            String query = "SELECT c.course_id, c.course_code, c.course_name, " +
+                          "c.capacity - (SELECT COUNT(*) FROM enrollments e WHERE e.course_id = c.course_id) AS seats_left " +
+                          "FROM courses c " +
+                          "WHERE c.course_id NOT IN (SELECT course_id FROM enrollments WHERE student_id = ?)";
             PreparedStatement pst = conn.prepareStatement(query);
             pst.setInt(1, studentId);
 
             ResultSet rs = pst.executeQuery();
-            java.util.List<String> courseList = new java.util.ArrayList<>();
-            java.util.Map<String, Integer> courseMap = new java.util.HashMap<>();
+            java.util.Map<String, Integer> courseMap = new java.util.LinkedHashMap<>();
 
             while (rs.next()) {
-                String display = rs.getString("course_code") + " - " + rs.getString("course_name");
-                courseList.add(display);
+                String display = rs.getString("course_code") + " - " + rs.getString("course_name")
+                        + seatsText(rs.getObject("seats_left"));
                 courseMap.put(display, rs.getInt("course_id"));
             }
+            rs.close();
+            pst.close();
+
+            Integer courseId = chooseCourse(courseMap);
+            if (courseId != null) {
+                // The seat count is checked again with the course locked; the list may be out of date
+                Enrollments.Outcome outcome = DatabaseConnection.inTransaction(conn, c -> {
+                    Enrollments.Outcome o = Enrollments.enroll(c, courseId, studentId);
+                    if (o == Enrollments.Outcome.ENROLLED && inboxMode) InboxFanout.backfill(c, studentId, courseId);
+                    return o;
+                });
+                if (outcome == Enrollments.Outcome.FULL) {
+                    offerWaitlist(courseId);
+                    return;
+                }
+                if (outcome != Enrollments.Outcome.ENROLLED) {
+                    showWarning(outcome == Enrollments.Outcome.NO_COURSE
+                            ? "This course no longer exists." : "You are already enrolled in this course.");
+                    loadEnrolledCourses();
+                    return;
+                }
 
-            if (courseList.isEmpty()) {
-                showInfo("No courses available for enrollment.");
+                showSuccess("Successfully enrolled in course!");
+                loadEnrolledCourses();
+            }
+        } catch (SQLException ex) {
+            if (wentOffline(ex)) {
+                showWarning("The connection to the LMS was lost. Please try again later.");
                 return;
             }
+            ex.printStackTrace();
+            showError("Error: " + ex.getMessage());
+        }
+    }
 
-            String selected = (String) JOptionPane.showInputDialog(this,
-                "Select a course to enroll:",
-                "Enroll in Course",
-                JOptionPane.QUESTION_MESSAGE,
-                null,
-                courseList.toArray(),
-                courseList.get(0));
+    private void enrollThroughServer() {
+        try {
+            java.util.Map<String, Integer> courseMap = new java.util.LinkedHashMap<>();
+            for (Map<String, Object> c : client.availableCourses()) {
+                courseMap.put(c.get("course_code") + " - " + c.get("course_name") + seatsText(c.get("seats_left")),
+                        intValue(c.get("course_id")));
+            }
+            Integer courseId = chooseCourse(courseMap);
+            if (courseId == null) return;
+            try {
+                client.enroll(courseId);
+            } catch (LmsClient.ApiError ex) {
+                // 409: full or already enrolled; 429: too many enrollments at once, try again later
+                if (ex.status != 409 && ex.status != 429) throw ex;
+                if (ex.status == 409 && ex.getMessage().equals("Course is full")) offerWaitlist(courseId);
+                else showWarning(ex.getMessage());
+                return;
+            }
+            showSuccess("Successfully enrolled in course!");
+            requestSync();
+        } catch (IOException ex) {
+            if (wentOffline(ex)) {
+                showWarning("The connection to the LMS was lost. Please try again later.");
+                return;
+            }
+            ex.printStackTrace();
+            showError("Error: " + ex.getMessage());
+        }
+    }
 
-            if (selected != null) {
-                int courseId = courseMap.get(selected);
-                String insertQuery = "INSERT INTO enrollments (student_id, course_id) VALUES (?, ?)";
-                PreparedStatement insertPst = conn.prepareStatement(insertQuery);
-                insertPst.setInt(1, studentId);
-                insertPst.setInt(2, courseId);
-                insertPst.executeUpdate();
-                insertPst.close();
+    private void offerWaitlist(int courseId) {
+        int choice = JOptionPane.showConfirmDialog(this,
+            "This course is full. Join the waitlist?\nYou will be enrolled automatically when a seat opens up.",
+            "Course Full", JOptionPane.YES_NO_OPTION);
+        if (choice != JOptionPane.YES_OPTION) return;
+        try {
+            int position;
+            if (client != null) {
+                position = client.joinWaitlist(courseId);
+            } else {
+                Connection conn = liveConnection();
+                if (conn == null) return;
+                Waitlist.Joined joined = DatabaseConnection.inTransaction(conn, c -> {
+                    Waitlist.Joined j = Waitlist.join(c, courseId, studentId);
+                    if (j.outcome == Enrollments.Outcome.ENROLLED && inboxMode) InboxFanout.backfill(c, studentId, courseId);
+                    return j;
+                });
+                if (joined.outcome == Enrollments.Outcome.ALREADY_ENROLLED) {
+                    showWarning("You are already enrolled in this course.");
+                    return;
+                }
+                if (joined.outcome == Enrollments.Outcome.NO_COURSE) {
+                    showWarning("This course no longer exists.");
+                    return;
+                }
+                position = joined.position;
+            }
+            if (position == 0) {
+                showSuccess("A seat just opened up. Successfully enrolled in course!");
+                if (client != null) requestSync(); else loadEnrolledCourses();
+            } else {
+                showInfo("You are number " + position + " on the waitlist.");
+            }
+        } catch (LmsClient.ApiError ex) {
+            showWarning(ex.getMessage());
+        } catch (IOException | SQLException ex) {
+            if (wentOffline(ex)) {
+                showWarning("The connection to the LMS was lost. Please try again later.");
+                return;
+            }
+            ex.printStackTrace();
+            showError("Error: " + ex.getMessage());
+        }
+    }
 
-                showSuccess("Successfully enrolled in course!");
+    private void dropCourse() {
+        int row = coursesTable.getSelectedRow();
+        if (row < 0) {
+            showWarning("Please select a course to drop.");
+            return;
+        }
+        if (offline) {
+            showWarning("You are offline. Dropping a course needs a connection to the LMS.");
+            return;
+        }
+        int modelRow = coursesTable.convertRowIndexToModel(row);
+        int courseId = (Integer) courseTableModel.getValueAt(modelRow, COURSE_ID_COLUMN);
+        String courseName = (String) courseTableModel.getValueAt(modelRow, 1);
+        int confirm = JOptionPane.showConfirmDialog(this,
+            "Are you sure you want to drop " + courseName + "?\nYour seat will go to the next student on the waitlist.",
+            "Confirm Drop", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        try {
+            if (client != null) {
+                client.drop(courseId);
+                requestSync();
+            } else {
+                Connection conn = liveConnection();
+                if (conn == null) return;
+                DatabaseConnection.inTransaction(conn, c -> {
+                    if (!Enrollments.drop(c, courseId, studentId)) return null;
+                    // The freed seat goes to the waitlist in the same transaction
+                    for (Integer promoted : Waitlist.promote(c, courseId)) {
+                        if (inboxMode) InboxFanout.backfill(c, promoted, courseId);
+                    }
+                    return null;
+                });
                 loadEnrolledCourses();
             }
-
-            rs.close();
-            pst.close();
-        } catch (SQLException ex) {
+            showSuccess("Course dropped.");
+        } catch (IOException | SQLException ex) {
+            if (wentOffline(ex)) {
+                showWarning("The connection to the LMS was lost. Please try again later.");
+                return;
+            }
             ex.printStackTrace();
             showError("Error: " + ex.getMessage());
         }
     }
 
+    // " (n seats left)" for a course with a limit, nothing otherwise
+    private static String seatsText(Object seatsLeft) {
+        if (seatsLeft == null) return "";
+        int seats = Math.max(0, ((Number) seatsLeft).intValue());
+        return seats == 0 ? " (full)" : " (" + seats + (seats == 1 ? " seat" : " seats") + " left)";
+    }
+
+    // Asks which of the listed courses to enroll in; null if there are none or the student cancels
+    private Integer chooseCourse(java.util.Map<String, Integer> courseMap) {
+        if (courseMap.isEmpty()) {
+            showInfo("No courses available for enrollment.");
+            return null;
+        }
+        Object[] courseList = courseMap.keySet().toArray();
+        String selected = (String) JOptionPane.showInputDialog(this,
+            "Select a course to enroll:",
+            "Enroll in Course",
+            JOptionPane.QUESTION_MESSAGE,
+            null,
+            courseList,
+            courseList[0]);
+        return selected == null ? null : courseMap.get(selected);
+    }
+
     private void viewAssignments() {
+        assignmentsLoaded = true;
+        if (client != null) { requestSync(); return; }
+        Connection conn = liveConnection();
+        if (conn == null) return;
         assignmentTableModel.setRowCount(0);
 
         try {
-            Connection conn = DatabaseConnection.getConnection();
-            String query = "SELECT a.assignment_id, a.title, c.course_name, a.due_date, " +
+            String query = "SELECT a.assignment_id, a.course_id, a.title, c.course_name, a.due_date, " +
                           "a.max_marks, s.marks_obtained " +
                           "FROM assignments a " +
                           "JOIN courses c ON a.course_id = c.course_id " +
@@ -658,7 +1609,9 @@ public class StudentDashboard extends JFrame {
                     rs.getDate("due_date"),
                     rs.getInt("max_marks"),
                     rs.getObject("marks_obtained") == null ? "N/A" : rs.getInt("marks_obtained"),
-                    status
+                    status,
+                    rs.getInt("assignment_id"),
+                    rs.getInt("course_id")
                 });
             }
 
@@ -669,7 +1622,10 @@ public class StudentDashboard extends JFrame {
 
             rs.close();
             pst.close();
+            saveList(OfflineStore.ASSIGNMENTS, rowsOf(assignmentTableModel));
+            markQueued();
         } catch (SQLException ex) {
+            if (wentOffline(ex)) return;
             ex.printStackTrace();
             showError("Error loading assignments: " + ex.getMessage());
         }
@@ -683,10 +1639,12 @@ public class StudentDashboard extends JFrame {
         }
 
         String assignmentTitle = (String) assignmentTableModel.getValueAt(selectedRow, 0);
-        String courseName = (String) assignmentTableModel.getValueAt(selectedRow, 1);
-        String status = (String) assignmentTableModel.getValueAt(selectedRow, 5);
+        Object maxMarks = assignmentTableModel.getValueAt(selectedRow, 3);
+        String status = (String) assignmentTableModel.getValueAt(selectedRow, ASSIGNMENT_STATUS_COLUMN);
+        int assignmentId = (Integer) assignmentTableModel.getValueAt(selectedRow, ASSIGNMENT_ID_COLUMN);
+        int courseId = (Integer) assignmentTableModel.getValueAt(selectedRow, ASSIGNMENT_COURSE_COLUMN);
 
-        if ("Submitted".equals(status)) {
+        if ("Submitted".equals(status) || QUEUED.equals(status)) {
             int confirm = JOptionPane.showConfirmDialog(this,
                 "You have already submitted this assignment.\nDo you want to resubmit?",
                 "Already Submitted",
@@ -696,116 +1654,202 @@ public class StudentDashboard extends JFrame {
             }
         }
 
+        JPanel panel = new JPanel(new GridLayout(3, 2, 10, 10));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JLabel fileLabel = new JLabel("File Upload:");
+        JButton chooseFileButton = createStyledButton("Choose File", SECONDARY_COLOR);
+        JLabel selectedFileLabel = new JLabel("No file selected");
+        selectedFileLabel.setForeground(TEXT_SECONDARY);
+
+        JLabel commentsLabel = new JLabel("Comments:");
+        JTextArea commentsArea = new JTextArea(3, 20);
+        commentsArea.setLineWrap(true);
+        commentsArea.setWrapStyleWord(true);
+        JScrollPane commentsScroll = new JScrollPane(commentsArea);
+
+        final String[] selectedFilePath = {null};
+        chooseFileButton.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+            int result = fileChooser.showOpenDialog(this);
+            if (result == JFileChooser.APPROVE_OPTION) {
+                selectedFilePath[0] = fileChooser.getSelectedFile().getAbsolutePath();
+                selectedFileLabel.setText(fileChooser.getSelectedFile().getName());
+                selectedFileLabel.setForeground(SUCCESS_COLOR);
+            }
+        });
+
+        panel.add(fileLabel);
+        JPanel filePanel = new JPanel(new BorderLayout(5, 0));
+        filePanel.add(chooseFileButton, BorderLayout.WEST);
+        filePanel.add(selectedFileLabel, BorderLayout.CENTER);
+        panel.add(filePanel);
+
+        panel.add(commentsLabel);
+        panel.add(commentsScroll);
+
+        JLabel infoLabel = new JLabel("<html><b>Assignment:</b> " + assignmentTitle +
+                                     "<br><b>Max Marks:</b> " + maxMarks + "</html>");
+        panel.add(new JLabel());
+        panel.add(infoLabel);
+
+        int result = JOptionPane.showConfirmDialog(this,
+            panel,
+            "Submit Assignment",
+            JOptionPane.OK_CANCEL_OPTION,
+            JOptionPane.PLAIN_MESSAGE);
+
+        if (result == JOptionPane.OK_OPTION) {
+            String comments = commentsArea.getText();
+            File file = selectedFilePath[0] != null ? new File(selectedFilePath[0]) : null;
+            if (offline) {
+                queueSubmission(assignmentId, courseId, comments, file);
+            } else if (client != null) {
+                requestSubmitThroughServer(assignmentId, courseId, comments, file);
+            } else if (file != null) {
+                submitWithFile(assignmentId, courseId, comments, file);
+            } else {
+                submitText(assignmentId, courseId, comments);
+            }
+        }
+    }
+
+    private void submitText(int assignmentId, int courseId, String comments) {
+        Connection conn = liveConnection();
+        if (conn == null) {
+            queueSubmission(assignmentId, courseId, comments, null);
+            return;
+        }
         try {
-            Connection conn = DatabaseConnection.getConnection();
-
-            String getAssignmentQuery = "SELECT a.assignment_id, a.max_marks " +
-                                       "FROM assignments a " +
-                                       "JOIN courses c ON a.course_id = c.course_id " +
-                                       "WHERE a.title = ? AND c.course_name = ?";
-            PreparedStatement pst = conn.prepareStatement(getAssignmentQuery);
-            pst.setString(1, assignmentTitle);
-            pst.setString(2, courseName);
-            ResultSet rs = pst.executeQuery();
+            boolean resubmitted = DatabaseConnection.inTransaction(conn, c ->
+                    saveSubmission(c, assignmentId, courseId, comments).resubmitted);
+            showSuccess(resubmitted ? "Assignment resubmitted successfully!" : "Assignment submitted successfully!");
+            viewAssignments();
+        } catch (SQLException ex) {
+            if (wentOffline(ex)) {
+                queueSubmission(assignmentId, courseId, comments, null);
+                return;
+            }
+            ex.printStackTrace();
+            showError("Error submitting assignment: " + ex.getMessage());
+        }
+    }
 
-            if (rs.next()) {
-                int assignmentId = rs.getInt("assignment_id");
-                int maxMarks = rs.getInt("max_marks");
-
-                JPanel panel = new JPanel(new GridLayout(3, 2, 10, 10));
-                panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-
-                JLabel fileLabel = new JLabel("File Upload:");
-                JButton chooseFileButton = createStyledButton("Choose File", SECONDARY_COLOR);
-                JLabel selectedFileLabel = new JLabel("No file selected");
-                selectedFileLabel.setForeground(TEXT_SECONDARY);
-
-                JLabel commentsLabel = new JLabel("Comments:");
-                JTextArea commentsArea = new JTextArea(3, 20);
-                commentsArea.setLineWrap(true);
-                commentsArea.setWrapStyleWord(true);
-                JScrollPane commentsScroll = new JScrollPane(commentsArea);
-
-                final String[] selectedFilePath = {null};
-                chooseFileButton.addActionListener(e -> {
-                    JFileChooser fileChooser = new JFileChooser();
-                    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-                    int result = fileChooser.showOpenDialog(this);
-                    if (result == JFileChooser.APPROVE_OPTION) {
-                        selectedFilePath[0] = fileChooser.getSelectedFile().getAbsolutePath();
-                        selectedFileLabel.setText(fileChooser.getSelectedFile().getName());
-                        selectedFileLabel.setForeground(SUCCESS_COLOR);
+    // Thin-client mode: uploaded on the sync thread, so it can't overtake queued submissions
+    private void requestSubmitThroughServer(int assignmentId, int courseId, String comments, File file) {
+        syncJobs.execute(() -> {
+            try {
+                Map<String, Object> saved = file != null ? client.submitFile(assignmentId, file, comments)
+                                                         : client.submit(assignmentId, comments);
+                String message = (Boolean.TRUE.equals(saved.get("resubmitted")) ? "Assignment resubmitted successfully!"
+                        : "Assignment submitted successfully!") + (file != null ? "\nFile: " + file.getName() : "");
+                SwingUtilities.invokeLater(() -> showSuccess(message));
+                requestSync();
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    if (wentOffline(ex)) {
+                        queueSubmission(assignmentId, courseId, comments, file);
+                        return;
                     }
+                    ex.printStackTrace();
+                    showError("Error submitting assignment: " + ex.getMessage());
                 });
+            }
+        });
+    }
 
-                panel.add(fileLabel);
-                JPanel filePanel = new JPanel(new BorderLayout(5, 0));
-                filePanel.add(chooseFileButton, BorderLayout.WEST);
-                filePanel.add(selectedFileLabel, BorderLayout.CENTER);
-                panel.add(filePanel);
-
-                panel.add(commentsLabel);
-                panel.add(commentsScroll);
-
-                JLabel infoLabel = new JLabel("<html><b>Assignment:</b> " + assignmentTitle +
-                                             "<br><b>Max Marks:</b> " + maxMarks + "</html>");
-                panel.add(new JLabel());
-                panel.add(infoLabel);
-
-                int result = JOptionPane.showConfirmDialog(this,
-                    panel,
-                    "Submit Assignment",
-                    JOptionPane.OK_CANCEL_OPTION,
-                    JOptionPane.PLAIN_MESSAGE);
-
-                if (result == JOptionPane.OK_OPTION) {
-                    String checkSubmission = "SELECT submission_id FROM submissions " +
-                                            "WHERE assignment_id = ? AND student_id = ?";
-                    PreparedStatement checkPst = conn.prepareStatement(checkSubmission);
-                    checkPst.setInt(1, assignmentId);
-                    checkPst.setInt(2, studentId);
-                    ResultSet checkRs = checkPst.executeQuery();
-
-                    if (checkRs.next()) {
-                        int submissionId = checkRs.getInt("submission_id");
-                        String updateQuery = "UPDATE submissions SET submission_date = NOW(), " +
-                                            "feedback = ? WHERE submission_id = ?";
-                        PreparedStatement updatePst = conn.prepareStatement(updateQuery);
-                        updatePst.setString(1, commentsArea.getText());
-                        updatePst.setInt(2, submissionId);
-                        updatePst.executeUpdate();
-                        updatePst.close();
-
-                        showSuccess("Assignment resubmitted successfully!" +
-                                   (selectedFilePath[0] != null ? "\nFile: " + selectedFilePath[0] : ""));
-                    } else {
-                        String insertQuery = "INSERT INTO submissions (assignment_id, student_id, feedback) " +
-                                            "VALUES (?, ?, ?)";
-                        PreparedStatement insertPst = conn.prepareStatement(insertQuery);
-                        insertPst.setInt(1, assignmentId);
-                        insertPst.setInt(2, studentId);
-                        insertPst.setString(3, commentsArea.getText());
-                        insertPst.executeUpdate();
-                        insertPst.close();
-
-                        showSuccess("Assignment submitted successfully!" +
-                                   (selectedFilePath[0] != null ? "\nFile: " + selectedFilePath[0] : ""));
-                    }
+    private static class SavedSubmission {
+        final int id;
+        final boolean resubmitted;
 
-                    checkRs.close();
-                    checkPst.close();
-                    viewAssignments();
-                }
-            } else {
-                showError("Assignment not found!");
-            }
+        SavedSubmission(int id, boolean resubmitted) {
+            this.id = id;
+            this.resubmitted = resubmitted;
+        }
+    }
 
-            rs.close();
-            pst.close();
+    // Inserts or updates this student's submission row; call inside a transaction
+    private SavedSubmission saveSubmission(Connection c, int assignmentId, int courseId, String comments) throws SQLException {
+        String checkSubmission = "SELECT submission_id FROM submissions " +
+                                "WHERE assignment_id = ? AND student_id = ?";
+        PreparedStatement checkPst = c.prepareStatement(checkSubmission);
+        checkPst.setInt(1, assignmentId);
+        checkPst.setInt(2, studentId);
+        ResultSet checkRs = checkPst.executeQuery();
+        boolean exists = checkRs.next();
+        int submissionId;
+
+        if (exists) {
+            submissionId = checkRs.getInt("submission_id");
+            String updateQuery = "UPDATE submissions SET submission_date = NOW(), " +
+                                "feedback = ? WHERE submission_id = ?";
+            PreparedStatement updatePst = c.prepareStatement(updateQuery);
+            updatePst.setString(1, comments);
+            updatePst.setInt(2, submissionId);
+            updatePst.executeUpdate();
+            updatePst.close();
+
+            ChangeLog.record(c, ChangeLog.SUBMISSIONS, ChangeLog.UPDATE, submissionId, courseId, studentId);
+        } else {
+            String insertQuery = "INSERT INTO submissions (assignment_id, student_id, feedback) " +
+                                "VALUES (?, ?, ?)";
+            PreparedStatement insertPst = c.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS);
+            insertPst.setInt(1, assignmentId);
+            insertPst.setInt(2, studentId);
+            insertPst.setString(3, comments);
+            insertPst.executeUpdate();
+
+            ResultSet keys = insertPst.getGeneratedKeys();
+            keys.next();
+            submissionId = keys.getInt(1);
+            ChangeLog.record(c, ChangeLog.SUBMISSIONS, ChangeLog.INSERT, submissionId, courseId, studentId);
+            keys.close();
+            insertPst.close();
+        }
 
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-            showError("Error submitting assignment: " + ex.getMessage());
+        checkRs.close();
+        checkPst.close();
+        return new SavedSubmission(submissionId, exists);
+    }
+
+    // The file is streamed into the submission store on its I/O pool with a connection of its own,
+    // and the submission row is only saved once the file is on disk.
+    private void submitWithFile(int assignmentId, int courseId, String comments, File file) {
+        try {
+            SubmissionStore.get().submit(() -> {
+                SubmissionStore.Staged[] staged = {null};
+                try (Connection conn = DatabaseConnection.openConnection()) {
+                    staged[0] = SubmissionStore.get().stage(conn, assignmentId, studentId, file);
+                    List<File> replaced = new java.util.ArrayList<>();
+                    SavedSubmission saved = DatabaseConnection.inTransaction(conn, c -> {
+                        SavedSubmission s = saveSubmission(c, assignmentId, courseId, comments);
+                        replaced.addAll(SubmissionStore.get().attach(c, s.id, staged[0]));
+                        return s;
+                    });
+                    for (File old : replaced) old.delete();
+
+                    long kb = Math.max(1, staged[0].size / 1024);
+                    SwingUtilities.invokeLater(() -> {
+                        showSuccess((saved.resubmitted ? "Assignment resubmitted successfully!" : "Assignment submitted successfully!") +
+                                   "\nFile: " + file.getName() + " (" + kb + " KB)");
+                        viewAssignments();
+                    });
+                } catch (IOException | SQLException ex) {
+                    if (staged[0] != null) staged[0].discard();
+                    SwingUtilities.invokeLater(() -> {
+                        if (wentOffline(ex)) {
+                            queueSubmission(assignmentId, courseId, comments, file);
+                            return;
+                        }
+                        ex.printStackTrace();
+                        showError("Error submitting assignment: " + ex.getMessage());
+                    });
+                }
+                return null;
+            });
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            showWarning("Too many uploads are in progress right now. Please try again in a moment.");
         }
     }
 
@@ -827,6 +1871,141 @@ public class StudentDashboard extends JFrame {
 
     private void logout() {
         this.dispose();
-        new LoginFrame().setVisible(true);
+        Session.end();
+        LoginFrame.showLogin();
+    }
+
+    // Running and finished downloads, shown under the materials table once the first one starts
+    private class DownloadsPanel extends JPanel {
+        private final JPanel rows = new JPanel();
+        private final Map<DownloadService.Download, JPanel> rowPanels = new HashMap<>();
+
+        DownloadsPanel() {
+            super(new BorderLayout(5, 5));
+            setBackground(CARD_BG);
+            setBorder(BorderFactory.createTitledBorder("Downloads"));
+            rows.setLayout(new BoxLayout(rows, BoxLayout.Y_AXIS));
+            rows.setBackground(CARD_BG);
+
+            JButton clearButton = createStyledButton("Clear Finished", SECONDARY_COLOR);
+            clearButton.addActionListener(e -> clearFinished());
+            JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+            actions.setBackground(CARD_BG);
+            actions.add(clearButton);
+
+            JScrollPane scroll = new JScrollPane(rows);
+            scroll.setPreferredSize(new Dimension(100, 110));
+            scroll.setBorder(null);
+            add(scroll, BorderLayout.CENTER);
+            add(actions, BorderLayout.EAST);
+            setVisible(false);
+        }
+
+        void start(File source, File target) {
+            JLabel nameLabel = new JLabel(target.getName());
+            nameLabel.setPreferredSize(new Dimension(260, 25));
+            JProgressBar progress = new JProgressBar(0, 100);
+            progress.setStringPainted(true);
+            progress.setString("Queued");
+            JButton cancelButton = new JButton("Cancel");
+
+            JPanel row = new JPanel(new BorderLayout(10, 0));
+            row.setBackground(CARD_BG);
+            row.setBorder(BorderFactory.createEmptyBorder(3, 5, 3, 5));
+            row.add(nameLabel, BorderLayout.WEST);
+            row.add(progress, BorderLayout.CENTER);
+            row.add(cancelButton, BorderLayout.EAST);
+
+            DownloadService.Download download = DownloadService.get().start(source, target, d -> {
+                switch (d.state()) {
+                    case QUEUED -> progress.setString("Queued");
+                    case RUNNING -> {
+                        progress.setValue(d.percent());
+                        progress.setString(d.percent() + "%");
+                    }
+                    case DONE -> {
+                        progress.setValue(100);
+                        progress.setString("Saved to " + d.target.getAbsolutePath());
+                    }
+                    case FAILED -> progress.setString("Failed: " + d.error().getMessage());
+                    case CANCELLED -> progress.setString("Cancelled");
+                }
+                cancelButton.setEnabled(!d.isFinished());
+            });
+            cancelButton.addActionListener(e -> download.cancel());
+
+            rowPanels.put(download, row);
+            rows.add(row);
+            setVisible(true);
+            revalidate();
+        }
+
+        void cancelRunning() {
+            for (DownloadService.Download download : rowPanels.keySet()) {
+                if (!download.isFinished()) download.cancel();
+            }
+        }
+
+        private void clearFinished() {
+            rowPanels.entrySet().removeIf(entry -> {
+                if (!entry.getKey().isFinished()) return false;
+                rows.remove(entry.getValue());
+                return true;
+            });
+            setVisible(!rowPanels.isEmpty());
+            revalidate();
+            repaint();
+        }
+    }
+
+    // Search box with paging shown above the materials and messages tables
+    private class SearchBar extends JPanel {
+        private final JTextField field = new JTextField(28);
+        private final JButton prevButton = createStyledButton("◀ Prev", SECONDARY_COLOR);
+        private final JButton nextButton = createStyledButton("Next ▶", SECONDARY_COLOR);
+        private final JLabel pageLabel = new JLabel();
+        private int page = 0;
+
+        SearchBar(Runnable reload) {
+            super(new FlowLayout(FlowLayout.LEFT, 10, 5));
+            setBackground(LIGHT_BG);
+            field.setFont(new Font("Arial", Font.PLAIN, 15));
+
+            JButton searchButton = createStyledButton("🔍 Search", PRIMARY_COLOR);
+            JButton clearButton = createStyledButton("Clear", SECONDARY_COLOR);
+            pageLabel.setForeground(TEXT_SECONDARY);
+
+            searchButton.addActionListener(e -> { page = 0; reload.run(); });
+            field.addActionListener(e -> { page = 0; reload.run(); });
+            clearButton.addActionListener(e -> { field.setText(""); page = 0; reload.run(); });
+            prevButton.addActionListener(e -> { if (page > 0) { page--; reload.run(); } });
+            nextButton.addActionListener(e -> { page++; reload.run(); });
+
+            add(field);
+            add(searchButton);
+            add(clearButton);
+            add(prevButton);
+            add(pageLabel);
+            add(nextButton);
+            showPage(false);
+        }
+
+        String query() {
+            return field.getText().trim();
+        }
+
+        boolean isActive() {
+            return !query().isEmpty();
+        }
+
+        void showPage(boolean hasMore) {
+            boolean active = isActive();
+            prevButton.setVisible(active);
+            nextButton.setVisible(active);
+            pageLabel.setVisible(active);
+            prevButton.setEnabled(page > 0);
+            nextButton.setEnabled(hasMore);
+            pageLabel.setText("Page " + (page + 1));
+        }
     }
 }
@@ -10,14 +10,21 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import config.AppConfig;
+import database.ChangeLog;
 import database.DatabaseConnection;
+import search.ContentIndex;
+import search.SearchIndex;
+import sync.ChangeFeed;
+import storage.BlobStore;
+import storage.BulkUpload;
+import sync.InboxFanout;
 
 public class TeacherDashboard extends JFrame {
     private int teacherId;
@@ -36,8 +43,20 @@ public class TeacherDashboard extends JFrame {
     private JTextField tfMaterialFilePath;
     private JButton btnChooseMaterialFile;
     private JButton btnUploadMaterial;
-    private File selectedMaterialFile;
+    private File[] selectedMaterialFiles;
+    private JProgressBar pbUpload;
+    private final ExecutorService uploadWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "material-upload");
+        t.setDaemon(true);
+        return t;
+    });
     private final File materialsDir = new File("materials");
+    private static final int MATERIAL_INSERT_BATCH = 1000;
+
+    // Course ids taught by this teacher, used to pick relevant changes from the feed
+    private final java.util.Set<Integer> myCourseIds = new java.util.HashSet<>();
+    private final ChangeFeed.Listener changeListener = this::onChanges;
+    private boolean studentsLoaded = false;
 
     private JComboBox<CourseItem> cbMessageCourses;
     private JTextField tfMessageSubject;
@@ -60,21 +79,41 @@ public class TeacherDashboard extends JFrame {
 
         setTitle("Teacher Dashboard - " + name);
         setSize(1100, 700);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        Session.closeSignsOut(this, this::logout);
         setLocationRelativeTo(null);
 
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
         if (!materialsDir.exists()) {
             materialsDir.mkdirs();
         }
 
         initComponents();
         loadMyCourses();
+        ChangeFeed.get().addListener(changeListener);
+        // Starting the fan-out worker also finishes messages left pending by an earlier session
+        if (AppConfig.inboxFanout()) InboxFanout.get();
+    }
+
+    @Override
+    public void dispose() {
+        ChangeFeed.get().removeListener(changeListener);
+        // An upload already started still finishes; the thread ends after it
+        uploadWorker.shutdown();
+        super.dispose();
+    }
+
+    // Enrollment changes in this teacher's courses update the counts and the student list
+    private void onChanges(List<ChangeFeed.Change> changes) {
+        boolean enrollmentsChanged = false;
+        for (ChangeFeed.Change change : changes) {
+            if (ChangeLog.ENROLLMENTS.equals(change.table)
+                    && (change.courseId == null || myCourseIds.contains(change.courseId))) {
+                enrollmentsChanged = true;
+            }
+        }
+        if (enrollmentsChanged) {
+            loadMyCourses();
+            if (studentsLoaded) viewEnrolledStudents();
+        }
     }
 
     private void initComponents() {
@@ -199,12 +238,15 @@ public class TeacherDashboard extends JFrame {
 
         JButton createAssignmentButton = createStyledButton("➕ Create Assignment", PRIMARY_COLOR);
         JButton gradeButton = createStyledButton("📊 Grade Submissions", WARNING_COLOR);
+        JButton exportButton = createStyledButton("📦 Export Course", SECONDARY_COLOR);
 
         createAssignmentButton.addActionListener(e -> createAssignment());
         gradeButton.addActionListener(e -> gradeSubmissions());
+        exportButton.addActionListener(e -> exportCourse());
 
         buttonPanel.add(createAssignmentButton);
         buttonPanel.add(gradeButton);
+        buttonPanel.add(exportButton);
         tableCard.add(buttonPanel, BorderLayout.SOUTH);
 
         panel.add(statsPanel, BorderLayout.NORTH);
@@ -303,7 +345,7 @@ public class TeacherDashboard extends JFrame {
         fileRow.setBackground(LIGHT_BG);
         tfMaterialFilePath = new JTextField();
         tfMaterialFilePath.setEditable(false);
-        btnChooseMaterialFile = new JButton("Choose File");
+        btnChooseMaterialFile = new JButton("Choose Files");
         btnChooseMaterialFile.addActionListener(this::onChooseMaterialFile);
         fileRow.add(tfMaterialFilePath, BorderLayout.CENTER);
         fileRow.add(btnChooseMaterialFile, BorderLayout.EAST);
@@ -313,6 +355,11 @@ public class TeacherDashboard extends JFrame {
         btnUploadMaterial.addActionListener(e -> onUploadMaterial());
         gbc.gridx = 1; gbc.gridy = y++; form.add(btnUploadMaterial, gbc);
 
+        pbUpload = new JProgressBar(0, 100);
+        pbUpload.setStringPainted(true);
+        pbUpload.setVisible(false);
+        gbc.gridx = 1; gbc.gridy = y++; form.add(pbUpload, gbc);
+
         panel.add(form, BorderLayout.NORTH);
 
         loadCoursesIntoCombo(cbMaterialsCourses); // populate course choices
@@ -358,47 +405,182 @@ public class TeacherDashboard extends JFrame {
     private void onChooseMaterialFile(ActionEvent ev) {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileFilter(new FileNameExtensionFilter("Documents and PDFs", "pdf", "doc", "docx", "ppt", "pptx", "txt"));
+        // Several files, or whole folders, can be uploaded in one go
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setMultiSelectionEnabled(true);
         int res = chooser.showOpenDialog(this);
         if (res == JFileChooser.APPROVE_OPTION) {
-            selectedMaterialFile = chooser.getSelectedFile();
-            tfMaterialFilePath.setText(selectedMaterialFile.getAbsolutePath());
+            selectedMaterialFiles = chooser.getSelectedFiles();
+            tfMaterialFilePath.setText(isSingleFile(selectedMaterialFiles)
+                    ? selectedMaterialFiles[0].getAbsolutePath()
+                    : selectedMaterialFiles.length + " items selected");
         }
     }
 
+    private static boolean isSingleFile(File[] selection) {
+        return selection.length == 1 && selection[0].isFile();
+    }
+
     private void onUploadMaterial() {
         CourseItem course = (CourseItem) cbMaterialsCourses.getSelectedItem();
         if (course == null) { JOptionPane.showMessageDialog(this, "Please select a course."); return; }
+        if (selectedMaterialFiles == null || selectedMaterialFiles.length == 0) {
+            JOptionPane.showMessageDialog(this, "Please choose a file to upload.");
+            return;
+        }
+        // For several files the title is optional and each material is named after its file
         String title = tfMaterialTitle.getText().trim();
-        if (title.isEmpty()) { JOptionPane.showMessageDialog(this, "Please enter a title."); return; }
-        if (selectedMaterialFile == null) { JOptionPane.showMessageDialog(this, "Please choose a file to upload."); return; }
+        boolean single = isSingleFile(selectedMaterialFiles);
+        if (single && title.isEmpty()) { JOptionPane.showMessageDialog(this, "Please enter a title."); return; }
+
+        File[] selection = selectedMaterialFiles;
+        String description = taMaterialDesc.getText().trim();
+        btnUploadMaterial.setEnabled(false);
+        pbUpload.setValue(0);
+        pbUpload.setString("Checking files...");
+        pbUpload.setVisible(true);
+
+        // Hashing, copying and the insert all run off the EDT; the form stays usable
+        uploadWorker.submit(() -> {
+            try {
+                List<File> files = BulkUpload.expand(selection);
+                if (files.isEmpty()) {
+                    SwingUtilities.invokeLater(() -> {
+                        uploadFinished();
+                        JOptionPane.showMessageDialog(this, "No files found in the selection.");
+                    });
+                    return;
+                }
 
-        try {
-            String safeName = System.currentTimeMillis() + "_" + selectedMaterialFile.getName();
-            File dest = new File(materialsDir, safeName);
-            Files.copy(selectedMaterialFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            String dbPath = dest.getAbsolutePath();
-
-            try (Connection conn = DatabaseConnection.getConnection()) {
-                String sql = "INSERT INTO study_materials (course_id, title, description, file_path, uploaded_by) VALUES (?, ?, ?, ?, ?)";
-                PreparedStatement ps = conn.prepareStatement(sql);
-                ps.setInt(1, course.id);
-                ps.setString(2, title);
-                ps.setString(3, taMaterialDesc.getText().trim());
-                ps.setString(4, dbPath);
-                ps.setInt(5, teacherId);
-                ps.executeUpdate();
+                // Identical content is stored once; a repeat upload only adds a reference
+                List<BulkUpload.Item> items = BulkUpload.run(files, (filesDone, fileCount, bytesDone, totalBytes) ->
+                        SwingUtilities.invokeLater(() -> showUploadProgress(filesDone, fileCount, bytesDone, totalBytes)));
+                List<BulkUpload.Item> stored = new ArrayList<>();
+                List<BulkUpload.Item> failed = new ArrayList<>();
+                for (BulkUpload.Item item : items) (item.blob() != null ? stored : failed).add(item);
+
+                // Rows are only written once their blobs are complete and verified
+                List<Integer> materialIds = stored.isEmpty() ? List.of()
+                        : insertMaterials(course, stored, single ? title : null, title, description);
+                for (int i = 0; i < stored.size(); i++) {
+                    BulkUpload.Item item = stored.get(i);
+                    ContentIndex.get().submit(materialIds.get(i), course.id, item.blob().file, item.source.getName());
+                }
+
+                SwingUtilities.invokeLater(() -> {
+                    uploadFinished();
+                    if (failed.isEmpty()) {
+                        JOptionPane.showMessageDialog(this, stored.size() == 1 ? "Material uploaded successfully."
+                                : stored.size() + " materials uploaded successfully.");
+                        // reset form
+                        tfMaterialTitle.setText("");
+                        taMaterialDesc.setText("");
+                        tfMaterialFilePath.setText("");
+                        selectedMaterialFiles = null;
+                    } else {
+                        StringBuilder msg = new StringBuilder("Uploaded " + stored.size() + " of " + items.size() +
+                                " files. These failed:\n");
+                        for (int i = 0; i < Math.min(failed.size(), 10); i++) {
+                            msg.append(failed.get(i).source.getName()).append(": ")
+                               .append(describe(failed.get(i).error())).append("\n");
+                        }
+                        if (failed.size() > 10) msg.append("... and ").append(failed.size() - 10).append(" more\n");
+                        msg.append("Upload them again to continue where they stopped.");
+                        JOptionPane.showMessageDialog(this, msg.toString());
+                    }
+                });
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> {
+                    uploadFinished();
+                    JOptionPane.showMessageDialog(this, "Error uploading material: " + ex.getMessage() +
+                            "\nUpload the same files again; stored files are not copied a second time.");
+                });
             }
+        });
+    }
 
-            JOptionPane.showMessageDialog(this, "Material uploaded successfully.");
-            // reset form
-            tfMaterialTitle.setText("");
-            taMaterialDesc.setText("");
-            tfMaterialFilePath.setText("");
-            selectedMaterialFile = null;
-        } catch (IOException | SQLException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error uploading material: " + ex.getMessage());
+    /**
+     * Records the stored files as materials in one transaction: a multi-row INSERT, one batch
+     * of blob references and one change_log row for the course. Returns the new ids in item order.
+     */
+    private List<Integer> insertMaterials(CourseItem course, List<BulkUpload.Item> items, String fixedTitle,
+                                          String titlePrefix, String description) throws SQLException {
+        List<String> titles = new ArrayList<>();
+        for (BulkUpload.Item item : items) {
+            titles.add(fixedTitle != null ? fixedTitle : materialTitle(titlePrefix, item.source.getName()));
         }
+        try (Connection conn = DatabaseConnection.openConnection()) {
+            List<Integer> materialIds = DatabaseConnection.inTransaction(conn, c -> {
+                List<BlobStore.Blob> blobs = new ArrayList<>();
+                List<Integer> ids = new ArrayList<>();
+                // Very large selections are split to stay under the statement's placeholder limit
+                for (int from = 0; from < items.size(); from += MATERIAL_INSERT_BATCH) {
+                    List<BulkUpload.Item> batch = items.subList(from, Math.min(items.size(), from + MATERIAL_INSERT_BATCH));
+                    StringBuilder sql = new StringBuilder(
+                            "INSERT INTO study_materials (course_id, title, description, file_path, file_name, blob_digest, uploaded_by, upload_date) VALUES ");
+                    for (int i = 0; i < batch.size(); i++) sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, NOW())");
+
+                    try (PreparedStatement ps = c.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+                        int p = 1;
+                        for (int i = 0; i < batch.size(); i++) {
+                            BulkUpload.Item item = batch.get(i);
+                            String fileName = item.source.getName();
+                            blobs.add(item.blob());
+                            ps.setInt(p++, course.id);
+                            ps.setString(p++, titles.get(from + i));
+                            ps.setString(p++, description);
+                            ps.setString(p++, item.blob().file.getAbsolutePath());
+                            ps.setString(p++, fileName);
+                            ps.setString(p++, item.blob().digest);
+                            ps.setInt(p++, teacherId);
+                        }
+                        ps.executeUpdate();
+                        try (ResultSet keys = ps.getGeneratedKeys()) {
+                            while (keys.next()) ids.add(keys.getInt(1));
+                        }
+                    }
+                }
+                if (ids.size() != items.size()) throw new SQLException("Expected " + items.size() + " material ids, got " + ids.size());
+
+                BlobStore.addReferences(c, blobs);
+                // One row for the whole batch; a single upload keeps its row id
+                ChangeLog.record(c, ChangeLog.STUDY_MATERIALS, ChangeLog.INSERT, ids.size() == 1 ? ids.get(0) : null, course.id, null);
+                return ids;
+            });
+
+            List<SearchIndex.Document> documents = new ArrayList<>();
+            for (int i = 0; i < materialIds.size(); i++) {
+                documents.add(new SearchIndex.Document(SearchIndex.MATERIAL, materialIds.get(i), course.id, titles.get(i), description));
+            }
+            SearchIndex.indexCommitted(conn, documents);
+            return materialIds;
+        }
+    }
+
+    // "Week 3 - slides" for a prefix, otherwise the file name without its extension
+    private static String materialTitle(String prefix, String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        return prefix.isEmpty() ? base : prefix + " - " + base;
+    }
+
+    // Some exceptions carry no message of their own
+    private static String describe(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private void showUploadProgress(int filesDone, int fileCount, long bytesDone, long totalBytes) {
+        int percent = totalBytes == 0 ? 100 : (int) (bytesDone * 100 / totalBytes);
+        pbUpload.setValue(percent);
+        String mb = (bytesDone >> 20) + " / " + (totalBytes >> 20) + " MB";
+        pbUpload.setString(fileCount == 1 ? percent + "%  (" + mb + ")"
+                : percent + "%  (" + filesDone + " / " + fileCount + " files, " + mb + ")");
+    }
+
+    private void uploadFinished() {
+        btnUploadMaterial.setEnabled(true);
+        pbUpload.setVisible(false);
     }
 
     private void onSendMessage() {
@@ -408,14 +590,29 @@ public class TeacherDashboard extends JFrame {
         String msg = taMessageBody.getText().trim();
         if (subject.isEmpty() || msg.isEmpty()) { JOptionPane.showMessageDialog(this, "Subject and message cannot be empty."); return; }
 
-        try (Connection conn = DatabaseConnection.getConnection()) {
-            String sql = "INSERT INTO messages (course_id, sender_id, subject, message_text) VALUES (?, ?, ?, ?)";
-            PreparedStatement ps = conn.prepareStatement(sql);
-            ps.setInt(1, course.id);
-            ps.setInt(2, teacherId);
-            ps.setString(3, subject);
-            ps.setString(4, msg);
-            ps.executeUpdate();
+        try {
+            int messageId = DatabaseConnection.inTransaction(conn -> {
+                String sql = "INSERT INTO messages (course_id, sender_id, subject, message_text, sent_date) VALUES (?, ?, ?, ?, NOW())";
+                PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                ps.setInt(1, course.id);
+                ps.setInt(2, teacherId);
+                ps.setString(3, subject);
+                ps.setString(4, msg);
+                ps.executeUpdate();
+
+                ResultSet keys = ps.getGeneratedKeys();
+                keys.next();
+                int id = keys.getInt(1);
+                keys.close();
+                ps.close();
+
+                ChangeLog.record(conn, ChangeLog.MESSAGES, ChangeLog.INSERT, id, course.id, null);
+                return id;
+            });
+            SearchIndex.indexCommitted(DatabaseConnection.getConnection(),
+                    List.of(new SearchIndex.Document(SearchIndex.MESSAGE, messageId, course.id, subject, msg)));
+            // Inbox rows are written in the background once the message itself is committed
+            if (AppConfig.inboxFanout()) InboxFanout.get().submit(messageId);
             JOptionPane.showMessageDialog(this, "Message sent.");
             tfMessageSubject.setText("");
             taMessageBody.setText("");
@@ -550,7 +747,7 @@ public class TeacherDashboard extends JFrame {
 
         try {
             Connection conn = DatabaseConnection.getConnection();
-            String query = "SELECT c.course_code, c.course_name, c.credits, " +
+            String query = "SELECT c.course_id, c.course_code, c.course_name, c.credits, " +
                     "COUNT(e.student_id) as student_count " +
                     "FROM courses c " +
                     "LEFT JOIN enrollments e ON c.course_id = e.course_id " +
@@ -560,7 +757,9 @@ public class TeacherDashboard extends JFrame {
             pst.setInt(1, teacherId);
 
             ResultSet rs = pst.executeQuery();
+            myCourseIds.clear();
             while (rs.next()) {
+                myCourseIds.add(rs.getInt("course_id"));
                 courseTableModel.addRow(new Object[]{
                         rs.getString("course_code"),
                         rs.getString("course_name"),
@@ -582,6 +781,7 @@ public class TeacherDashboard extends JFrame {
     }
 
     private void viewEnrolledStudents() {
+        studentsLoaded = true;
         studentTableModel.setRowCount(0);
 
         try {
@@ -664,16 +864,25 @@ public class TeacherDashboard extends JFrame {
                 String selectedCourse = (String) courseCombo.getSelectedItem();
                 int courseId = courseMap.get(selectedCourse);
 
-                String insertQuery = "INSERT INTO assignments (course_id, title, description, due_date, max_marks) " +
-                        "VALUES (?, ?, ?, ?, ?)";
-                PreparedStatement insertPst = conn.prepareStatement(insertQuery);
-                insertPst.setInt(1, courseId);
-                insertPst.setString(2, titleField.getText());
-                insertPst.setString(3, descArea.getText());
-                insertPst.setString(4, dueDateField.getText());
-                insertPst.setInt(5, Integer.parseInt(maxMarksField.getText()));
-                insertPst.executeUpdate();
-                insertPst.close();
+                int maxMarks = Integer.parseInt(maxMarksField.getText());
+                DatabaseConnection.inTransaction(conn, c -> {
+                    String insertQuery = "INSERT INTO assignments (course_id, title, description, due_date, max_marks) " +
+                            "VALUES (?, ?, ?, ?, ?)";
+                    PreparedStatement insertPst = c.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS);
+                    insertPst.setInt(1, courseId);
+                    insertPst.setString(2, titleField.getText());
+                    insertPst.setString(3, descArea.getText());
+                    insertPst.setString(4, dueDateField.getText());
+                    insertPst.setInt(5, maxMarks);
+                    insertPst.executeUpdate();
+
+                    ResultSet keys = insertPst.getGeneratedKeys();
+                    keys.next();
+                    ChangeLog.record(c, ChangeLog.ASSIGNMENTS, ChangeLog.INSERT, keys.getInt(1), courseId, null);
+                    keys.close();
+                    insertPst.close();
+                    return null;
+                });
 
                 showSuccess("Assignment created successfully!");
             }
@@ -736,12 +945,17 @@ public class TeacherDashboard extends JFrame {
                         try {
                             int marksObtained = Integer.parseInt(marks);
                             if (marksObtained >= 0 && marksObtained <= maxMarks) {
-                                String updateQuery = "UPDATE submissions SET marks_obtained = ? WHERE submission_id = ?";
-                                PreparedStatement updatePst = conn.prepareStatement(updateQuery);
-                                updatePst.setInt(1, marksObtained);
-                                updatePst.setInt(2, submissionId);
-                                updatePst.executeUpdate();
-                                updatePst.close();
+                                DatabaseConnection.inTransaction(conn, c -> {
+                                    String updateQuery = "UPDATE submissions SET marks_obtained = ? WHERE submission_id = ?";
+                                    PreparedStatement updatePst = c.prepareStatement(updateQuery);
+                                    updatePst.setInt(1, marksObtained);
+                                    updatePst.setInt(2, submissionId);
+                                    updatePst.executeUpdate();
+                                    updatePst.close();
+
+                                    recordSubmissionChange(c, submissionId);
+                                    return null;
+                                });
 
                                 showSuccess("Grade updated successfully!");
                                 model.setValueAt(marksObtained, selectedRow, 5);
@@ -773,6 +987,51 @@ public class TeacherDashboard extends JFrame {
         }
     }
 
+    private void exportCourse() {
+        int selectedRow = coursesTable.getSelectedRow();
+        if (selectedRow < 0) {
+            showWarning("Please select a course to export.");
+            return;
+        }
+        String courseCode = (String) courseTableModel.getValueAt(selectedRow, 0);
+        String courseName = (String) courseTableModel.getValueAt(selectedRow, 1);
+
+        try {
+            Connection conn = DatabaseConnection.getConnection();
+            PreparedStatement ps = conn.prepareStatement("SELECT course_id FROM courses WHERE course_code = ? AND teacher_id = ?");
+            ps.setString(1, courseCode);
+            ps.setInt(2, teacherId);
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next()) {
+                rs.close();
+                ps.close();
+                showError("Course not found.");
+                return;
+            }
+            int courseId = rs.getInt("course_id");
+            rs.close();
+            ps.close();
+            CourseExportDialog.start(this, courseId, courseCode, courseName);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            showError("Error exporting course: " + ex.getMessage());
+        }
+    }
+
+    private void recordSubmissionChange(Connection conn, int submissionId) throws SQLException {
+        String sql = "SELECT s.student_id, a.course_id FROM submissions s " +
+                "JOIN assignments a ON s.assignment_id = a.assignment_id WHERE s.submission_id = ?";
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setInt(1, submissionId);
+        ResultSet rs = ps.executeQuery();
+        if (rs.next()) {
+            ChangeLog.record(conn, ChangeLog.SUBMISSIONS, ChangeLog.UPDATE, submissionId,
+                    rs.getInt("course_id"), rs.getInt("student_id"));
+        }
+        rs.close();
+        ps.close();
+    }
+
     private void showSuccess(String message) {
         JOptionPane.showMessageDialog(this, message, "Success", JOptionPane.INFORMATION_MESSAGE);
     }
@@ -791,7 +1050,8 @@ public class TeacherDashboard extends JFrame {
 
     private void logout() {
         this.dispose();
-        new LoginFrame().setVisible(true);
+        Session.end();
+        LoginFrame.showLogin();
     }
 
     // small helper class for course combo boxes